@@ -0,0 +1,92 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.gui.controllers;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+import net.eliosoft.elios.gui.models.DMXMonitorModel;
+import net.eliosoft.elios.gui.views.DMXMonitorView;
+
+/**
+ * The controller of the DMX monitor view. The monitor only runs while its
+ * view is showing.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DMXMonitorController {
+
+    private final DMXMonitorModel monitorModel;
+    private final DMXMonitorView monitorView;
+
+    /**
+     * The constructor of the DMXMonitorController class.
+     *
+     * @param monitorModel
+     *            the dmx monitor model associated with this Controller
+     * @param monitorView
+     *            the view associated with this Controller
+     */
+    public DMXMonitorController(final DMXMonitorModel monitorModel,
+            final DMXMonitorView monitorView) {
+        this.monitorModel = monitorModel;
+        this.monitorView = monitorView;
+
+        this.initListeners();
+    }
+
+    private void initListeners() {
+        this.monitorView.addInOutRadioActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(final ActionEvent actionEvent) {
+                monitorModel.setInputEnabled(actionEvent.getActionCommand()
+                        .equals("input"));
+            }
+        });
+
+        this.monitorView.addSubnetsActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(final ActionEvent actionEvent) {
+                monitorModel.setMonitoredSubnets(monitorView
+                        .getSelectedFirstSubnet(), monitorView
+                        .getSelectedSubnetsCount());
+            }
+        });
+
+        this.monitorView.getViewComponent().addHierarchyListener(
+                new HierarchyListener() {
+
+                    @Override
+                    public void hierarchyChanged(final HierarchyEvent e) {
+                        if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                            if (monitorView.getViewComponent().isShowing()) {
+                                monitorModel.start();
+                            } else {
+                                monitorModel.stop();
+                            }
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.gui.controllers;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+import net.eliosoft.elios.gui.models.InputStatsTableModel;
+import net.eliosoft.elios.gui.views.InputStatsView;
+
+/**
+ * The controller of the input statistics view. The statistics are only
+ * refreshed while the view is showing.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class InputStatsController {
+
+    private final InputStatsTableModel statsModel;
+    private final InputStatsView statsView;
+
+    /**
+     * The constructor of the InputStatsController class.
+     *
+     * @param statsModel
+     *            the input statistics model associated with this Controller
+     * @param statsView
+     *            the view associated with this Controller
+     */
+    public InputStatsController(final InputStatsTableModel statsModel,
+            final InputStatsView statsView) {
+        this.statsModel = statsModel;
+        this.statsView = statsView;
+
+        this.initListeners();
+    }
+
+    private void initListeners() {
+        this.statsView.addResetButtonListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(final ActionEvent actionEvent) {
+                statsModel.reset();
+            }
+        });
+
+        this.statsView.getViewComponent().addHierarchyListener(
+                new HierarchyListener() {
+
+                    @Override
+                    public void hierarchyChanged(final HierarchyEvent e) {
+                        if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                            if (statsView.getViewComponent().isShowing()) {
+                                statsModel.start();
+                            } else {
+                                statsModel.stop();
+                            }
+                        }
+                    }
+                });
+    }
+}
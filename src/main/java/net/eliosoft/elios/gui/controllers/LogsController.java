@@ -57,5 +57,15 @@ public class LogsController {
                 remoteModel.getLogsListModel().clearLogsList();
             }
         });
+
+        this.logsView.addFilterListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                remoteModel.getLogsListModel().setFilter(
+                        logsView.getSelectedMinLevel(),
+                        logsView.getSelectedLoggerName(),
+                        logsView.getSearchText());
+            }
+        });
     }
 }
@@ -95,6 +95,22 @@ public class PrefsController {
                     }
                 });
 
+        this.prefsView.addEnableUnicastCheckBoxListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                remoteModel.setUnicastEnabled(((JCheckBox) e.getSource())
+                        .isSelected());
+            }
+        });
+
+        this.prefsView.addEnableMergeCheckBoxListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                remoteModel.setMergeEnabled(((JCheckBox) e.getSource())
+                        .isSelected());
+            }
+        });
+
         this.prefsView.addLangComboListener(new ActionListener() {
             @Override
             public void actionPerformed(final ActionEvent e) {
@@ -19,16 +19,23 @@
 
 package net.eliosoft.elios.gui.models;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.swing.AbstractListModel;
 
 import net.eliosoft.elios.server.Cue;
 import net.eliosoft.elios.server.CuesManager;
 import net.eliosoft.elios.server.events.CueAddedEvent;
 import net.eliosoft.elios.server.events.CueRemovedEvent;
+import net.eliosoft.elios.server.events.CuesReloadedEvent;
 import net.eliosoft.elios.server.listeners.CuesManagerListener;
 
 /**
- * A {@code ListModel} that wrap a CuesList.
+ * A {@code ListModel} that wrap a CuesList. The model keeps its own copy of
+ * the sorted list of the cues manager, only used on the event dispatch
+ * thread and updated from the events of the manager, so that the list always
+ * matches the interval events it fires.
  *
  * @author Jeremie GASTON-RAOUL
  */
@@ -38,36 +45,62 @@ public class CuesListModel extends AbstractListModel {
 
     private final CuesManager cuesManager;
 
+    // the cues sorted by name, only used on the event dispatch thread
+    private List<Cue> cues;
+
     /**
      * @param cuesMngr
      */
     public CuesListModel(final CuesManager cuesMngr) {
         this.cuesManager = cuesMngr;
-        this.cuesManager
-                .addCuesManagerChangedListener(new CuesManagerListener() {
-
-                    @Override
-                    public void cueRemoved(final CueRemovedEvent event) {
-                        fireContentsChanged(this, 0, cuesManager.getCues()
-                                .size());
-                    }
-
-                    @Override
-                    public void cueAdded(final CueAddedEvent event) {
-                        fireContentsChanged(this, 0, cuesManager.getCues()
-                                .size());
-                    }
-                });
+        // the copy and the subscription are done under the lock of the
+        // manager so that no change is missed or received twice
+        synchronized (this.cuesManager) {
+            this.cuesManager
+                    .addCuesManagerChangedListener(new CuesManagerListener() {
+
+                        @Override
+                        public void cueRemoved(final CueRemovedEvent event) {
+                            cues.remove(event.getIndex());
+                            fireIntervalRemoved(CuesListModel.this,
+                                    event.getIndex(), event.getIndex());
+                        }
+
+                        @Override
+                        public void cueAdded(final CueAddedEvent event) {
+                            cues.add(event.getIndex(), event.getCue());
+                            fireIntervalAdded(CuesListModel.this,
+                                    event.getIndex(), event.getIndex());
+                        }
+
+                        @Override
+                        public void cuesReloaded(
+                                final CuesReloadedEvent event) {
+                            int oldSize = cues.size();
+                            cues = new ArrayList<Cue>();
+                            if (oldSize > 0) {
+                                fireIntervalRemoved(CuesListModel.this, 0,
+                                        oldSize - 1);
+                            }
+                            cues = new ArrayList<Cue>(event.getCues());
+                            if (!cues.isEmpty()) {
+                                fireIntervalAdded(CuesListModel.this, 0,
+                                        cues.size() - 1);
+                            }
+                        }
+                    });
+            this.cues = this.cuesManager.getCues();
+        }
     }
 
     @Override
     public Cue getElementAt(final int index) {
-        return cuesManager.getCues().get(index);
+        return cues.get(index);
     }
 
     @Override
     public int getSize() {
-        return cuesManager.getCues().size();
+        return cues.size();
     }
 
     /**
@@ -78,8 +111,6 @@ public class CuesListModel extends AbstractListModel {
      */
     public void addCue(final Cue cue) {
         cuesManager.addCue(cue);
-        int index = cuesManager.getCues().size() - 1;
-        this.fireIntervalAdded(this, index, index);
     }
 
     /**
@@ -89,9 +120,7 @@ public class CuesListModel extends AbstractListModel {
      *            the cue to remove
      */
     public void removeCue(final Cue cue) {
-        int index = cuesManager.getCues().indexOf(cue);
         cuesManager.removeCue(cue.getName());
-        this.fireIntervalRemoved(this, index, index);
     }
 
     /**
@@ -0,0 +1,288 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.gui.models;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.DmxFrame;
+
+/**
+ * This is the model of the DMX monitor, which shows several universes at
+ * once. The frames of the monitored universes are checked on the event
+ * dispatch thread by a timer and the listeners are only told about the
+ * universes whose frame changed since the last check.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DMXMonitorModel {
+
+    /**
+     * The number of universes in a subnet.
+     */
+    public static final int UNIVERSES_PER_SUBNET = 16;
+
+    /**
+     * The number of subnets.
+     */
+    public static final int SUBNETS_COUNT = 16;
+
+    /**
+     * The maximum number of monitored subnets.
+     */
+    public static final int MAX_MONITORED_SUBNETS = 4;
+
+    private static final int REFRESH_DELAY = 40;
+
+    /**
+     * Listener of the changes of the monitored frames.
+     */
+    public interface Listener {
+        /**
+         * Called when the monitored universes changed. All the universes are
+         * then reported by {@link #frameChanged(int, DmxFrame, DmxFrame)}
+         * with no previous frame.
+         */
+        void universesChanged();
+
+        /**
+         * Called when a monitored universe has a new frame.
+         *
+         * @param row
+         *            the index of the universe in the monitored ones
+         * @param oldFrame
+         *            the frame shown before, null if none was shown
+         * @param newFrame
+         *            the frame to show
+         */
+        void frameChanged(int row, DmxFrame oldFrame, DmxFrame newFrame);
+    }
+
+    private final ArtNetServerManager artNetServerManager;
+
+    private final Timer framesUpdater;
+
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    // all the fields below are only used on the event dispatch thread
+    private boolean inputEnabled = false;
+    private int firstSubnet = 0;
+    private int subnetsCount = MAX_MONITORED_SUBNETS;
+    private DmxFrame[] frames = new DmxFrame[subnetsCount
+            * UNIVERSES_PER_SUBNET];
+
+    /**
+     * Default constructor of the class. The monitor is stopped until
+     * {@link #start()} is called.
+     *
+     * @param serverManager
+     *            the server manager used by the model
+     */
+    public DMXMonitorModel(final ArtNetServerManager serverManager) {
+        this.artNetServerManager = serverManager;
+        framesUpdater = new Timer(REFRESH_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                refresh();
+            }
+        });
+        framesUpdater.setCoalesce(true);
+    }
+
+    /**
+     * Starts the check of the monitored frames.
+     */
+    public void start() {
+        refresh();
+        framesUpdater.start();
+    }
+
+    /**
+     * Stops the check of the monitored frames, while the monitor is hidden.
+     */
+    public void stop() {
+        framesUpdater.stop();
+    }
+
+    /**
+     * dispose the model before closing the application.
+     */
+    public void dispose() {
+        stop();
+        listeners.clear();
+    }
+
+    private void refresh() {
+        for (int row = 0; row < frames.length; row++) {
+            DmxFrame newFrame = inputEnabled ? artNetServerManager
+                    .getInputFrame(getSubnet(row), getUniverse(row))
+                    : artNetServerManager.getOutputFrame(getSubnet(row),
+                            getUniverse(row));
+            DmxFrame oldFrame = frames[row];
+            if (newFrame != oldFrame) {
+                frames[row] = newFrame;
+                for (Listener listener : listeners) {
+                    listener.frameChanged(row, oldFrame, newFrame);
+                }
+            }
+        }
+    }
+
+    private void resetFrames() {
+        frames = new DmxFrame[subnetsCount * UNIVERSES_PER_SUBNET];
+        for (Listener listener : listeners) {
+            listener.universesChanged();
+        }
+        if (framesUpdater.isRunning()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Adds a listener of the monitored frames.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener of the monitored frames.
+     *
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the frame shown for a monitored universe.
+     *
+     * @param row
+     *            the index of the universe in the monitored ones
+     * @return the frame, null if none was shown yet
+     */
+    public DmxFrame getFrame(final int row) {
+        return frames[row];
+    }
+
+    /**
+     * Returns the number of monitored universes.
+     *
+     * @return the number of universes
+     */
+    public int getUniversesCount() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the first monitored subnet.
+     *
+     * @return the first subnet
+     */
+    public int getFirstSubnet() {
+        return firstSubnet;
+    }
+
+    /**
+     * Returns the number of monitored subnets.
+     *
+     * @return the number of subnets
+     */
+    public int getSubnetsCount() {
+        return subnetsCount;
+    }
+
+    /**
+     * Sets the monitored subnets, all their universes being monitored. The
+     * number of subnets is reduced if there are not enough subnets after the
+     * first one.
+     *
+     * @param firstSubnet
+     *            the first subnet, between 0 and 15
+     * @param subnetsCount
+     *            the number of subnets, between 1 and 4
+     */
+    public void setMonitoredSubnets(final int firstSubnet,
+            final int subnetsCount) {
+        if (firstSubnet < 0 || firstSubnet >= SUBNETS_COUNT) {
+            throw new IllegalArgumentException("invalid subnet "
+                    + firstSubnet);
+        }
+        if (subnetsCount < 1 || subnetsCount > MAX_MONITORED_SUBNETS) {
+            throw new IllegalArgumentException("invalid subnets count "
+                    + subnetsCount);
+        }
+        this.firstSubnet = firstSubnet;
+        this.subnetsCount = Math.min(subnetsCount, SUBNETS_COUNT
+                - firstSubnet);
+        resetFrames();
+    }
+
+    /**
+     * Gets the status of input enabling.
+     *
+     * @return true if input is monitored, false if output is monitored
+     */
+    public boolean isInputEnabled() {
+        return inputEnabled;
+    }
+
+    /**
+     * Set the status of input enabling.
+     *
+     * @param inputEnabled
+     *            the status of input enabling
+     */
+    public void setInputEnabled(final boolean inputEnabled) {
+        this.inputEnabled = inputEnabled;
+        resetFrames();
+    }
+
+    /**
+     * Returns the subnet of a monitored universe.
+     *
+     * @param row
+     *            the index of the universe in the monitored ones
+     * @return the subnet
+     */
+    public int getSubnet(final int row) {
+        return firstSubnet + row / UNIVERSES_PER_SUBNET;
+    }
+
+    /**
+     * Returns the universe of a monitored universe in its subnet.
+     *
+     * @param row
+     *            the index of the universe in the monitored ones
+     * @return the universe
+     */
+    public int getUniverse(final int row) {
+        return row % UNIVERSES_PER_SUBNET;
+    }
+}
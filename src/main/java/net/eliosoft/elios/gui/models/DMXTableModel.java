@@ -1,12 +1,18 @@
 package net.eliosoft.elios.gui.models;
 
-import javax.swing.SwingWorker;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
 import javax.swing.table.DefaultTableModel;
 
 import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.DmxFrame;
 
 /**
- * This is the model of the DMX input table.
+ * This is the model of the DMX input table. The displayed universe is checked
+ * on the event dispatch thread by a timer : nothing is done while the frame
+ * is the same, and only the cells whose value changed are updated otherwise.
  *
  * @author Jeremie GASTON-RAOUL
  */
@@ -15,19 +21,30 @@ public class DMXTableModel extends DefaultTableModel {
     private static final long serialVersionUID = -3171182606809834583L;
     private static final int COLUMN_COUNT = 16;
     private static final int ROW_COUNT = 512 / COLUMN_COUNT;
+    private static final int REFRESH_DELAY = 40;
+    private static final int DMX_VALUES_COUNT = 256;
     private static final Integer[] ROW_HEADERS;
+    private static final Integer[] VALUES;
 
     private final ArtNetServerManager artNetServerManager;
 
-    private final SwingWorker<Void, byte[]> dmxArrayUpdater;
+    private final Timer dmxArrayUpdater;
+
+    private volatile boolean inputEnabled = false;
 
-    private boolean inputEnabled = false;
+    // the frame displayed by the table, only used on the event dispatch
+    // thread so that every cell shows the same frame
+    private DmxFrame frame;
 
     static {
         ROW_HEADERS = new Integer[ROW_COUNT];
         for (int i = 0; i < ROW_COUNT; i++) {
             ROW_HEADERS[i] = i * COLUMN_COUNT;
         }
+        VALUES = new Integer[DMX_VALUES_COUNT];
+        for (int i = 0; i < DMX_VALUES_COUNT; i++) {
+            VALUES[i] = i;
+        }
     }
 
     /**
@@ -38,19 +55,48 @@ public class DMXTableModel extends DefaultTableModel {
      */
     public DMXTableModel(final ArtNetServerManager serverManager) {
         this.artNetServerManager = serverManager;
-        dmxArrayUpdater = new SwingWorker<Void, byte[]>() {
-
+        this.frame = serverManager.getCurrentOutputFrame();
+        dmxArrayUpdater = new Timer(REFRESH_DELAY, new ActionListener() {
             @Override
-            protected Void doInBackground() throws Exception {
-                while (true) {
-                    fireTableDataChanged();
-                    Thread.sleep(40);
-                }
+            public void actionPerformed(final ActionEvent e) {
+                refresh();
             }
+        });
+        dmxArrayUpdater.setCoalesce(true);
+        dmxArrayUpdater.start();
+    }
 
-        };
+    /**
+     * Displays the current frame, firing an update for each changed cell.
+     */
+    private void refresh() {
+        DmxFrame newFrame = inputEnabled ? artNetServerManager
+                .getCurrentInputFrame() : artNetServerManager
+                .getCurrentOutputFrame();
+        if (newFrame == frame) {
+            return;
+        }
+        DmxFrame oldFrame = frame;
+        frame = newFrame;
 
-        dmxArrayUpdater.execute();
+        int changedCount = 0;
+        for (int channel = 0; channel < ROW_COUNT * COLUMN_COUNT; channel++) {
+            if (oldFrame.getValue(channel) != newFrame.getValue(channel)) {
+                changedCount++;
+            }
+        }
+        if (changedCount > ROW_COUNT) {
+            // a single event repaints the whole table
+            fireTableRowsUpdated(0, ROW_COUNT - 1);
+            return;
+        }
+        for (int channel = 0; changedCount > 0; channel++) {
+            if (oldFrame.getValue(channel) != newFrame.getValue(channel)) {
+                fireTableCellUpdated(channel / COLUMN_COUNT, channel
+                        % COLUMN_COUNT);
+                changedCount--;
+            }
+        }
     }
 
     @Override
@@ -70,12 +116,7 @@ public class DMXTableModel extends DefaultTableModel {
 
     @Override
     public Integer getValueAt(final int row, final int column) {
-        int index = column + row * COLUMN_COUNT;
-        int intValue = inputEnabled ? ((Byte) artNetServerManager
-                .getCurrentInputDmxArray()[index]).intValue()
-                : ((Byte) artNetServerManager.getCurrentOutputDmxArray()[index])
-                        .intValue();
-        return intValue < 0 ? intValue + 256 : intValue;
+        return VALUES[frame.getValue(column + row * COLUMN_COUNT)];
     }
 
     @Override
@@ -96,7 +137,7 @@ public class DMXTableModel extends DefaultTableModel {
      * dispose the model before closing the application.
      */
     public void dispose() {
-        dmxArrayUpdater.cancel(true);
+        dmxArrayUpdater.stop();
     }
 
     /**
@@ -0,0 +1,168 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.gui.models;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import net.eliosoft.elios.server.ArtNetInputMonitor;
+import net.eliosoft.elios.server.ArtNetInputMonitor.SourceStats;
+
+/**
+ * This is the model of the table of the ArtNet input statistics, a row per
+ * source and universe. The statistics are read once per second by a timer
+ * on the event dispatch thread, so that a row shows values read at the same
+ * time.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class InputStatsTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 4129630851874052717L;
+
+    /** The column of the address of the source, null if unknown. */
+    public static final int SOURCE_COLUMN = 0;
+    /** The column of the subnet/universe of the packets. */
+    public static final int UNIVERSE_COLUMN = 1;
+    /** The column of the number of received packets. */
+    public static final int PACKETS_COLUMN = 2;
+    /** The column of the packet rate, in Hz. */
+    public static final int RATE_COLUMN = 3;
+    /** The column of the number of lost packets. */
+    public static final int LOST_COLUMN = 4;
+    /** The column of the number of packets out of order. */
+    public static final int OUT_OF_ORDER_COLUMN = 5;
+    /** The column of the jitter, in milliseconds. */
+    public static final int JITTER_COLUMN = 6;
+    /** The column of the time since the last packet, in milliseconds. */
+    public static final int LAST_SEEN_COLUMN = 7;
+
+    private static final Class<?>[] COLUMN_CLASSES = { String.class,
+            String.class, Long.class, Double.class, Long.class, Long.class,
+            Double.class, Long.class };
+
+    private static final int REFRESH_DELAY = 1000;
+
+    private final ArtNetInputMonitor inputMonitor;
+
+    private final Timer statsUpdater;
+
+    // the values shown by the table, only used on the event dispatch thread
+    private Object[][] rows = new Object[0][];
+
+    /**
+     * Default constructor of the class.
+     *
+     * @param inputMonitor
+     *            the monitor of the ArtNet input
+     */
+    public InputStatsTableModel(final ArtNetInputMonitor inputMonitor) {
+        this.inputMonitor = inputMonitor;
+        statsUpdater = new Timer(REFRESH_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                refresh();
+            }
+        });
+        statsUpdater.setCoalesce(true);
+    }
+
+    /**
+     * Starts the refresh of the statistics, while they are shown.
+     */
+    public void start() {
+        refresh();
+        statsUpdater.start();
+    }
+
+    /**
+     * Stops the refresh of the statistics, while they are hidden.
+     */
+    public void stop() {
+        statsUpdater.stop();
+    }
+
+    /**
+     * dispose the model before closing the application.
+     */
+    public void dispose() {
+        stop();
+    }
+
+    /**
+     * Forgets all the sources and their statistics.
+     */
+    public void reset() {
+        inputMonitor.reset();
+        refresh();
+    }
+
+    private void refresh() {
+        List<SourceStats> sourcesStats = inputMonitor.getSourcesStats();
+        long now = System.currentTimeMillis();
+        Object[][] newRows = new Object[sourcesStats.size()][];
+        for (int row = 0; row < newRows.length; row++) {
+            SourceStats stats = sourcesStats.get(row);
+            newRows[row] = new Object[] {
+                    stats.getSource() == null ? null : stats.getSource()
+                            .getHostAddress(),
+                    stats.getSubnet() + "/" + stats.getUniverse(),
+                    stats.getPacketsCount(), stats.getPacketRate(),
+                    stats.getLostPacketsCount(),
+                    stats.getOutOfOrderPacketsCount(), stats.getJitter(),
+                    Math.max(0, now - stats.getLastSeen()) };
+        }
+
+        boolean sameRowsCount = newRows.length == rows.length;
+        rows = newRows;
+        if (!sameRowsCount) {
+            fireTableDataChanged();
+        } else if (rows.length > 0) {
+            // keeps the selection of the user
+            fireTableRowsUpdated(0, rows.length - 1);
+        }
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_CLASSES.length;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    @Override
+    public Object getValueAt(final int row, final int column) {
+        return rows[row][column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+}
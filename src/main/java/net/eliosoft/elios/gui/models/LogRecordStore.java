@@ -0,0 +1,362 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.gui.models;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A compact store of the last log records. The records are not kept : their
+ * formatted message, time, level and logger are written in chunks of
+ * arrays, the levels and the logger names being shared by all the records.
+ * Each record gets a sequence number, and the oldest chunk is removed when
+ * the store is full.
+ *
+ * Each chunk knows the levels and loggers of its records, so a search can
+ * skip the chunks that have no matching record.
+ *
+ * This class is not thread safe, it is used on the event dispatch thread.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+class LogRecordStore {
+
+    /**
+     * number of records in a chunk.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    private final SimpleFormatter formatter = new SimpleFormatter();
+
+    private final int maxChunksCount;
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+    // sequence number of the first stored record and of the next one
+    private long firstSequence = 0;
+    private long nextSequence = 0;
+
+    private final List<Level> levels = new ArrayList<Level>();
+    private final HashMap<Level, Integer> levelIndexes = new HashMap<Level, Integer>();
+    private final List<String> loggerNames = new ArrayList<String>();
+    private final HashMap<String, Integer> loggerIndexes = new HashMap<String, Integer>();
+
+    /**
+     * The records of a chunk, in columns.
+     */
+    private static final class Chunk {
+        private final long[] millis = new long[CHUNK_SIZE];
+        private final byte[] levels = new byte[CHUNK_SIZE];
+        private final short[] loggers = new short[CHUNK_SIZE];
+        private final String[] messages = new String[CHUNK_SIZE];
+        private int size;
+        // the levels and loggers of the records of the chunk
+        private int levelsMask;
+        private final BitSet loggersSet = new BitSet();
+    }
+
+    /**
+     * Constructs a store.
+     *
+     * @param maxRecordsCount
+     *            the number of records kept, rounded up to a whole number of
+     *            chunks
+     */
+    LogRecordStore(final int maxRecordsCount) {
+        this.maxChunksCount = Math.max(1, (maxRecordsCount + CHUNK_SIZE - 1)
+                / CHUNK_SIZE);
+    }
+
+    /**
+     * Adds a record at the end of the store, removing the oldest chunk if the
+     * store is full.
+     *
+     * @param record
+     *            the record to add
+     * @return the number of removed records
+     */
+    int add(final LogRecord record) {
+        int removed = 0;
+        Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.size == CHUNK_SIZE) {
+            if (chunks.size() == maxChunksCount) {
+                removed = chunks.remove(0).size;
+                firstSequence += removed;
+            }
+            chunk = new Chunk();
+            chunks.add(chunk);
+        }
+
+        int level = intern(levels, levelIndexes, record.getLevel());
+        int logger = intern(loggerNames, loggerIndexes,
+                record.getLoggerName() == null ? "" : record.getLoggerName());
+        String message = formatter.formatMessage(record);
+        if (record.getThrown() != null) {
+            // the stack trace is not kept
+            message = message + " : " + record.getThrown();
+        }
+
+        int index = chunk.size++;
+        chunk.millis[index] = record.getMillis();
+        chunk.levels[index] = (byte) level;
+        chunk.loggers[index] = (short) logger;
+        chunk.messages[index] = message;
+        chunk.levelsMask |= 1 << level;
+        chunk.loggersSet.set(logger);
+        nextSequence++;
+        return removed;
+    }
+
+    private static <T> int intern(final List<T> values,
+            final HashMap<T, Integer> indexes, final T value) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = values.size();
+            values.add(value);
+            indexes.put(value, index);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Removes all the records. The sequence numbers go on.
+     */
+    void clear() {
+        chunks.clear();
+        firstSequence = nextSequence;
+    }
+
+    /**
+     * Returns the sequence number of the first stored record.
+     *
+     * @return the sequence number
+     */
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * Returns the sequence number of the next added record.
+     *
+     * @return the sequence number
+     */
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Returns the names of the loggers of the records added since the store
+     * was created.
+     *
+     * @return the logger names
+     */
+    List<String> getLoggerNames() {
+        return loggerNames;
+    }
+
+    /**
+     * Builds a log record from a stored one.
+     *
+     * @param sequence
+     *            the sequence number of the record
+     * @return a new log record
+     */
+    LogRecord get(final long sequence) {
+        Chunk chunk = chunkOf(sequence);
+        int index = indexOf(sequence);
+        LogRecord record = new LogRecord(levels.get(chunk.levels[index]),
+                chunk.messages[index]);
+        record.setMillis(chunk.millis[index]);
+        record.setLoggerName(loggerNames.get(chunk.loggers[index]));
+        record.setSequenceNumber(sequence);
+        return record;
+    }
+
+    /**
+     * Adds to a list the sequence numbers of the matching records.
+     *
+     * @param from
+     *            the sequence number of the first record to check
+     * @param filter
+     *            the filter of the records
+     * @param matches
+     *            the list receiving the sequence numbers
+     */
+    void search(final long from, final Filter filter,
+            final SequenceList matches) {
+        int minLevel = filter.minLevel == null ? Integer.MIN_VALUE
+                : filter.minLevel.intValue();
+        int levelsMask = 0;
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i).intValue() >= minLevel) {
+                levelsMask |= 1 << i;
+            }
+        }
+        Integer loggerIndex = null;
+        if (filter.loggerName != null) {
+            loggerIndex = loggerIndexes.get(filter.loggerName);
+            if (loggerIndex == null) {
+                return;
+            }
+        }
+        String text = filter.text == null ? null : filter.text.toLowerCase();
+
+        long sequence = Math.max(from, firstSequence);
+        while (sequence < nextSequence) {
+            Chunk chunk = chunkOf(sequence);
+            int index = indexOf(sequence);
+            if ((chunk.levelsMask & levelsMask) == 0
+                    || (loggerIndex != null && !chunk.loggersSet
+                            .get(loggerIndex))) {
+                // no matching record in the chunk
+                sequence += chunk.size - index;
+                continue;
+            }
+            for (; index < chunk.size; index++, sequence++) {
+                if ((levelsMask & (1 << chunk.levels[index])) != 0
+                        && (loggerIndex == null || chunk.loggers[index] == loggerIndex)
+                        && (text == null || chunk.messages[index]
+                                .toLowerCase().contains(text))) {
+                    matches.add(sequence);
+                }
+            }
+        }
+    }
+
+    private Chunk chunkOf(final long sequence) {
+        return chunks.get((int) ((sequence - firstSequence) / CHUNK_SIZE));
+    }
+
+    private int indexOf(final long sequence) {
+        return (int) ((sequence - firstSequence) % CHUNK_SIZE);
+    }
+
+    /**
+     * A filter of the records. The null criteria match all the records.
+     */
+    static final class Filter {
+        private final Level minLevel;
+        private final String loggerName;
+        private final String text;
+
+        /**
+         * Constructs a filter.
+         *
+         * @param minLevel
+         *            the lowest level of the matching records
+         * @param loggerName
+         *            the logger of the matching records
+         * @param text
+         *            a text contained in the messages of the matching
+         *            records, case is ignored
+         */
+        Filter(final Level minLevel, final String loggerName,
+                final String text) {
+            this.minLevel = minLevel;
+            this.loggerName = loggerName;
+            this.text = text == null || text.length() == 0 ? null : text;
+        }
+
+        /**
+         * Tells if the filter matches all the records.
+         *
+         * @return true if no criteria is set
+         */
+        boolean isEmpty() {
+            return minLevel == null && loggerName == null && text == null;
+        }
+    }
+
+    /**
+     * A growable list of sequence numbers, whose first values can be removed
+     * cheaply.
+     */
+    static final class SequenceList {
+        private long[] values = new long[CHUNK_SIZE];
+        private int first = 0;
+        private int size = 0;
+
+        /**
+         * Adds a value at the end of the list.
+         *
+         * @param value
+         *            the value to add
+         */
+        void add(final long value) {
+            if (first + size == values.length) {
+                long[] grown = size * 2 > values.length ? new long[values.length * 2]
+                        : values;
+                System.arraycopy(values, first, grown, 0, size);
+                values = grown;
+                first = 0;
+            }
+            values[first + size++] = value;
+        }
+
+        /**
+         * Removes the values lower than the given one.
+         *
+         * @param min
+         *            the lowest value kept
+         * @return the number of removed values
+         */
+        int removeBefore(final long min) {
+            int removed = 0;
+            while (size > 0 && values[first] < min) {
+                first++;
+                size--;
+                removed++;
+            }
+            return removed;
+        }
+
+        /**
+         * Removes all the values.
+         */
+        void clear() {
+            first = 0;
+            size = 0;
+        }
+
+        /**
+         * Returns a value of the list.
+         *
+         * @param index
+         *            the index of the value
+         * @return the value
+         */
+        long get(final int index) {
+            return values[first + index];
+        }
+
+        /**
+         * Returns the number of values.
+         *
+         * @return the size of the list
+         */
+        int size() {
+            return size;
+        }
+    }
+}
@@ -19,16 +19,26 @@
 
 package net.eliosoft.elios.gui.models;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractListModel;
 
+import net.eliosoft.elios.main.AsyncLogHandler;
+
 /**
- * A {@code ListModel} that wrap one or more {@code java.util.Logger}.
+ * A {@code ListModel} that wrap one or more {@code java.util.Logger}. The
+ * records are received through an {@link AsyncLogHandler}, so logging never
+ * waits for the interface, and only the last records are kept in a
+ * {@link LogRecordStore}. The elements of the list are built when they are
+ * asked for, so only the shown rows are built.
+ *
+ * The list can be filtered by level, logger and text. The matching records
+ * are indexed when the filter is set, then each new record is checked once
+ * when it is added.
  *
  * @author Jeremie GASTON-RAOUL
  * @author Alexandre COLLIGNON
@@ -37,16 +47,56 @@ public class LogsListModel extends AbstractListModel {
 
     private static final long serialVersionUID = -3782927318483496410L;
 
-    /** list of logs. **/
-    private List<LogRecord> logs;
+    /**
+     * default number of records kept in the list.
+     */
+    public static final int DEFAULT_MAX_RECORDS_COUNT = 100000;
+
+    private final transient LogRecordStore store;
+
+    private transient LogRecordStore.Filter filter = new LogRecordStore.Filter(
+            null, null, null);
+    // sequence numbers of the matching records, unused without filter
+    private final transient LogRecordStore.SequenceList matches = new LogRecordStore.SequenceList();
+
+    private final transient AsyncLogHandler handler = new AsyncLogHandler(
+            new AsyncLogHandler.Listener() {
+                @Override
+                public void logRecordsPublished(final List<LogRecord> records,
+                        final long droppedCount) {
+                    addLogRecords(records);
+                    if (droppedCount > 0) {
+                        // reported last so that it stays visible
+                        addLogRecords(Collections.singletonList(new LogRecord(
+                                Level.WARNING, droppedCount
+                                        + " log records dropped")));
+                    }
+                }
+            });
 
     /**
-     * Constructs a {@code LogsListModel} that wraps the
-     * {@code java.util.Logger} given in argument.
+     * Constructs a {@code LogsListModel} keeping the default number of
+     * records.
      *
      */
     public LogsListModel() {
-        logs = new ArrayList<LogRecord>();
+        this(DEFAULT_MAX_RECORDS_COUNT);
+    }
+
+    /**
+     * Constructs a {@code LogsListModel} keeping the given number of
+     * records.
+     *
+     * @param maxRecordsCount
+     *            the number of records kept, the oldest are removed by
+     *            chunks of {@value LogRecordStore#CHUNK_SIZE}
+     */
+    public LogsListModel(final int maxRecordsCount) {
+        if (maxRecordsCount < 1) {
+            throw new IllegalArgumentException(
+                    "at least one record must be kept");
+        }
+        store = new LogRecordStore(maxRecordsCount);
     }
 
     /**
@@ -56,43 +106,106 @@ public class LogsListModel extends AbstractListModel {
      *            {@code java.util.Logger} to wrap
      */
     public void addLogger(final Logger logger) {
-        logger.addHandler(new Handler() {
-
-            @Override
-            public void publish(final LogRecord record) {
-                addLogRecord(record);
-            }
-
-            @Override
-            public void flush() {
-                // nothing
-            }
-
-            @Override
-            public void close() {
-                logger.info(logger.getName() + " is closing");
-            }
-        });
+        logger.addHandler(handler);
+    }
+
+    /**
+     * Returns the handler receiving the records of the wrapped loggers.
+     *
+     * @return the handler
+     */
+    public AsyncLogHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Adds log records at the end of the list, removing the oldest ones if
+     * needed.
+     *
+     * @param logRecords
+     *            the log records to add
+     */
+    private void addLogRecords(final List<LogRecord> logRecords) {
+        if (logRecords.isEmpty()) {
+            return;
+        }
+        int oldSize = getSize();
+        long from = store.getNextSequence();
+        int removed = 0;
+        for (LogRecord logRecord : logRecords) {
+            removed += store.add(logRecord);
+        }
+        if (!filter.isEmpty()) {
+            removed = matches.removeBefore(store.getFirstSequence());
+            store.search(Math.max(from, store.getFirstSequence()), filter,
+                    matches);
+        }
+        removed = Math.min(removed, oldSize);
+        if (removed > 0) {
+            this.fireIntervalRemoved(this, 0, removed - 1);
+        }
+        int size = getSize();
+        if (size > oldSize - removed) {
+            this.fireIntervalAdded(this, oldSize - removed, size - 1);
+        }
+    }
+
+    /**
+     * Filters the list. The null criteria match all the records.
+     *
+     * @param minLevel
+     *            the lowest level of the shown records
+     * @param loggerName
+     *            the name of the logger of the shown records
+     * @param text
+     *            a text contained in the messages of the shown records,
+     *            case is ignored
+     */
+    public void setFilter(final Level minLevel, final String loggerName,
+            final String text) {
+        int oldSize = getSize();
+        filter = new LogRecordStore.Filter(minLevel, loggerName, text);
+        matches.clear();
+        if (!filter.isEmpty()) {
+            store.search(store.getFirstSequence(), filter, matches);
+        }
+        if (oldSize > 0) {
+            this.fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (getSize() > 0) {
+            this.fireIntervalAdded(this, 0, getSize() - 1);
+        }
     }
 
     /**
-     * Adds a log record in the list.
+     * Returns the names of the loggers that have logged records.
      *
-     * @param logRecord
-     *            the log record to add
+     * @return the logger names
      */
-    private void addLogRecord(final LogRecord logRecord) {
-        logs.add(logRecord);
-        this.fireIntervalAdded(this, logs.size() - 1, logs.size() - 1);
+    public List<String> getLoggerNames() {
+        return Collections.unmodifiableList(store.getLoggerNames());
+    }
+
+    /**
+     * Returns the last record, whatever the filter.
+     *
+     * @return the last record, null if the list is empty
+     */
+    public LogRecord getLastLogRecord() {
+        if (store.getNextSequence() == store.getFirstSequence()) {
+            return null;
+        }
+        return store.get(store.getNextSequence() - 1);
     }
 
     /**
      * Removes all log records of the list.
      */
     public void clearLogsList() {
-        int lastSize = logs.size();
+        int lastSize = getSize();
+        store.clear();
+        matches.clear();
         if (lastSize > 0) {
-            logs.clear();
             this.fireIntervalRemoved(this, 0, lastSize - 1);
         }
     }
@@ -102,7 +215,10 @@ public class LogsListModel extends AbstractListModel {
      */
     @Override
     public Object getElementAt(final int index) {
-        return logs.get(index);
+        if (filter.isEmpty()) {
+            return store.get(store.getFirstSequence() + index);
+        }
+        return store.get(matches.get(index));
     }
 
     /**
@@ -110,6 +226,9 @@ public class LogsListModel extends AbstractListModel {
      */
     @Override
     public int getSize() {
-        return logs.size();
+        if (filter.isEmpty()) {
+            return (int) (store.getNextSequence() - store.getFirstSequence());
+        }
+        return matches.size();
     }
 }
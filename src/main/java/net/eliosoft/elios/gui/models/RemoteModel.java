@@ -19,12 +19,15 @@
 
 package net.eliosoft.elios.gui.models;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.swing.ComboBoxModel;
@@ -47,6 +50,10 @@ import net.eliosoft.elios.server.ArtNetServerManager;
 import net.eliosoft.elios.server.BadSyntaxException;
 import net.eliosoft.elios.server.Cue;
 import net.eliosoft.elios.server.CuesManager;
+import net.eliosoft.elios.server.DmxMergeSource;
+import net.eliosoft.elios.server.DmxMerger;
+import net.eliosoft.elios.server.DmxRefreshEngine;
+import net.eliosoft.elios.server.EventBus;
 import net.eliosoft.elios.server.HttpServerManager;
 import net.eliosoft.elios.server.events.AdditiveModeValueChangedEvent;
 import net.eliosoft.elios.server.events.SubnetValueChangedEvent;
@@ -68,13 +75,39 @@ public class RemoteModel {
     private SpinnerNumberModel universeSpinnerModel;
     private SpinnerNumberModel subnetSpinnerModel;
     private SpinnerNumberModel httpPortSpinnerModel;
+    private SpinnerNumberModel refreshRateSpinnerModel;
+    private SpinnerNumberModel keepAliveIntervalSpinnerModel;
+    private SpinnerNumberModel localPrioritySpinnerModel;
+    private SpinnerNumberModel sourceTimeoutSpinnerModel;
+    private SpinnerNumberModel fadeInTimeSpinnerModel;
+    private SpinnerNumberModel fadeOutTimeSpinnerModel;
     private ComboBoxModel broadcastAddressComboModel;
+    private ComboBoxModel mergeModeComboModel;
 
     private StringBuilder commandLine;
     private boolean httpServerEnabled;
+    private boolean unicastEnabled;
+    private boolean mergeEnabled;
     private boolean additiveModeEnabled;
 
-    private List<RemoteModelListener> remoteModelChangedListeners;
+    // the topics of the events of the remote model
+    private final EventBus.Topic<CommandLineValueChangedEvent> commandLineChanged = new EventBus.Topic<CommandLineValueChangedEvent>(
+            "command line changed");
+    private final EventBus.Topic<ArtNetStartedEvent> artNetStarted = new EventBus.Topic<ArtNetStartedEvent>(
+            "artnet started");
+    private final EventBus.Topic<ArtNetStoppedEvent> artNetStopped = new EventBus.Topic<ArtNetStoppedEvent>(
+            "artnet stopped");
+    private final EventBus.Topic<HttpStartedEvent> httpStarted = new EventBus.Topic<HttpStartedEvent>(
+            "http started");
+    private final EventBus.Topic<HttpStoppedEvent> httpStopped = new EventBus.Topic<HttpStoppedEvent>(
+            "http stopped");
+    private final EventBus.Topic<AdditiveModeValueChangedEvent> additiveModeChanged = new EventBus.Topic<AdditiveModeValueChangedEvent>(
+            "remote additive mode changed");
+
+    private final EventBus eventBus = EventBus.getInstance();
+
+    // the subscriptions of each listener
+    private final Map<RemoteModelListener, List<EventBus.Subscription<?>>> listenersSubscriptions = new HashMap<RemoteModelListener, List<EventBus.Subscription<?>>>();
 
     private final ArtNetServerManager artNetServerManager;
     private final HttpServerManager httpServerManager;
@@ -87,6 +120,15 @@ public class RemoteModel {
     private static final int MAX_SUBNET = 15;
     private static final int MIN_UNIVERSE = 0;
     private static final int MAX_UNIVERSE = 15;
+    private static final int MIN_KEEP_ALIVE_INTERVAL = 100;
+    private static final int MAX_KEEP_ALIVE_INTERVAL = 10000;
+    private static final int KEEP_ALIVE_INTERVAL_STEP = 100;
+    private static final int MIN_SOURCE_TIMEOUT = 1000;
+    private static final int MAX_SOURCE_TIMEOUT = 60000;
+    private static final int SOURCE_TIMEOUT_STEP = 500;
+    private static final double MAX_FADE_TIME = 600;
+    private static final double FADE_TIME_STEP = 0.5;
+    private static final int MILLIS_PER_SECOND = 1000;
 
     private final Logger logger = LoggersManager.getInstance().getLogger(
             RemoteModel.class.getCanonicalName());
@@ -165,11 +207,33 @@ public class RemoteModel {
         this.httpPortSpinnerModel = new SpinnerNumberModel(
                 HttpServerManager.DEFAULT_HTTP_PORT, RemoteModel.MIN_PORT,
                 RemoteModel.MAX_PORT, 1);
+        this.refreshRateSpinnerModel = new SpinnerNumberModel(
+                DmxRefreshEngine.DEFAULT_REFRESH_RATE,
+                DmxRefreshEngine.MIN_REFRESH_RATE,
+                DmxRefreshEngine.MAX_REFRESH_RATE, 1);
+        this.keepAliveIntervalSpinnerModel = new SpinnerNumberModel(
+                ArtNetServerManager.DEFAULT_KEEP_ALIVE_INTERVAL,
+                RemoteModel.MIN_KEEP_ALIVE_INTERVAL,
+                RemoteModel.MAX_KEEP_ALIVE_INTERVAL,
+                RemoteModel.KEEP_ALIVE_INTERVAL_STEP);
+        this.localPrioritySpinnerModel = new SpinnerNumberModel(
+                DmxMergeSource.DEFAULT_PRIORITY, DmxMergeSource.MIN_PRIORITY,
+                DmxMergeSource.MAX_PRIORITY, 1);
+        this.sourceTimeoutSpinnerModel = new SpinnerNumberModel(
+                DmxMerger.DEFAULT_SOURCE_TIMEOUT,
+                RemoteModel.MIN_SOURCE_TIMEOUT,
+                RemoteModel.MAX_SOURCE_TIMEOUT,
+                RemoteModel.SOURCE_TIMEOUT_STEP);
+        this.fadeInTimeSpinnerModel = new SpinnerNumberModel(0.0, 0.0,
+                RemoteModel.MAX_FADE_TIME, RemoteModel.FADE_TIME_STEP);
+        this.fadeOutTimeSpinnerModel = new SpinnerNumberModel(0.0, 0.0,
+                RemoteModel.MAX_FADE_TIME, RemoteModel.FADE_TIME_STEP);
         this.broadcastAddressComboModel = new DefaultComboBoxModel(
                 BroadCastAddress.values());
+        this.mergeModeComboModel = new DefaultComboBoxModel(
+                DmxMerger.MergeMode.values());
 
         this.commandLine = new StringBuilder();
-        this.remoteModelChangedListeners = new ArrayList<RemoteModelListener>();
         this.initModelsListeners();
     }
 
@@ -192,6 +256,41 @@ public class RemoteModel {
                     }
                 });
 
+        this.mergeModeComboModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalRemoved(final ListDataEvent e) {
+            }
+
+            @Override
+            public void intervalAdded(final ListDataEvent e) {
+            }
+
+            @Override
+            public void contentsChanged(final ListDataEvent e) {
+                artNetServerManager
+                        .setMergeMode((DmxMerger.MergeMode) mergeModeComboModel
+                                .getSelectedItem());
+            }
+        });
+
+        this.localPrioritySpinnerModel.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(final ChangeEvent e) {
+                artNetServerManager
+                        .setLocalPriority((Integer) localPrioritySpinnerModel
+                                .getValue());
+            }
+        });
+
+        this.sourceTimeoutSpinnerModel.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(final ChangeEvent e) {
+                artNetServerManager
+                        .setSourceTimeout((Integer) sourceTimeoutSpinnerModel
+                                .getValue());
+            }
+        });
+
         this.subnetSpinnerModel.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(final ChangeEvent e) {
@@ -208,6 +307,25 @@ public class RemoteModel {
             }
         });
 
+        this.refreshRateSpinnerModel.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(final ChangeEvent e) {
+                artNetServerManager
+                        .setRefreshRate((Integer) refreshRateSpinnerModel
+                                .getValue());
+            }
+        });
+
+        this.keepAliveIntervalSpinnerModel
+                .addChangeListener(new ChangeListener() {
+                    @Override
+                    public void stateChanged(final ChangeEvent e) {
+                        artNetServerManager
+                                .setKeepAliveInterval((Integer) keepAliveIntervalSpinnerModel
+                                        .getValue());
+                    }
+                });
+
         this.httpPortSpinnerModel.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(final ChangeEvent e) {
@@ -222,13 +340,17 @@ public class RemoteModel {
                     @Override
                     public void universeValueChanged(
                             final UniverseValueChangedEvent event) {
-                        universeSpinnerModel.setValue(event.getUniverse());
+                        // the current value, the events of older changes
+                        // may come after the spinner was changed again
+                        universeSpinnerModel.setValue(artNetServerManager
+                                .getUniverse());
                     }
 
                     @Override
                     public void subnetValueChanged(
                             final SubnetValueChangedEvent event) {
-                        subnetSpinnerModel.setValue(event.getSubnet());
+                        subnetSpinnerModel.setValue(artNetServerManager
+                                .getSubnet());
                     }
 
                     @Override
@@ -330,47 +452,29 @@ public class RemoteModel {
     }
 
     private void fireArtNetStarted() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            ArtNetStartedEvent e = new ArtNetStartedEvent();
-            listener.artNetStarted(e);
-        }
+        eventBus.publish(artNetStarted, new ArtNetStartedEvent());
     }
 
     private void fireArtNetStopped() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            ArtNetStoppedEvent e = new ArtNetStoppedEvent();
-            listener.artNetStopped(e);
-        }
+        eventBus.publish(artNetStopped, new ArtNetStoppedEvent());
     }
 
     private void fireHttpStarted() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            HttpStartedEvent e = new HttpStartedEvent();
-            listener.httpStarted(e);
-        }
+        eventBus.publish(httpStarted, new HttpStartedEvent());
     }
 
     private void fireHttpStopped() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            HttpStoppedEvent e = new HttpStoppedEvent();
-            listener.httpStopped(e);
-        }
+        eventBus.publish(httpStopped, new HttpStoppedEvent());
     }
 
     private void fireCommandLineValueChanged() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            CommandLineValueChangedEvent e = new CommandLineValueChangedEvent(
-                    this.getCommandLineValue());
-            listener.commandLineValueChanged(e);
-        }
+        eventBus.publish(commandLineChanged, new CommandLineValueChangedEvent(
+                this.getCommandLineValue()));
     }
 
     private void fireAdditiveModeValueChanged() {
-        for (RemoteModelListener listener : this.remoteModelChangedListeners) {
-            AdditiveModeValueChangedEvent e = new AdditiveModeValueChangedEvent(
-                    this.isAdditiveModeEnabled());
-            listener.additiveModeValueChanged(e);
-        }
+        eventBus.publish(additiveModeChanged,
+                new AdditiveModeValueChangedEvent(this.isAdditiveModeEnabled()));
     }
 
     /**
@@ -427,6 +531,69 @@ public class RemoteModel {
         return this.httpPortSpinnerModel;
     }
 
+    /**
+     * Gets the model of the refresh rate.
+     *
+     * @return the refresh rate spinner model
+     */
+    public SpinnerModel getRefreshRateSpinnerModel() {
+        return this.refreshRateSpinnerModel;
+    }
+
+    /**
+     * Gets the model of the keep-alive interval.
+     *
+     * @return the keep-alive interval spinner model
+     */
+    public SpinnerModel getKeepAliveIntervalSpinnerModel() {
+        return this.keepAliveIntervalSpinnerModel;
+    }
+
+    /**
+     * Returns the local priority spinner model.
+     *
+     * @return the local priority spinner model
+     */
+    public SpinnerModel getLocalPrioritySpinnerModel() {
+        return this.localPrioritySpinnerModel;
+    }
+
+    /**
+     * Returns the source timeout spinner model.
+     *
+     * @return the source timeout spinner model
+     */
+    public SpinnerModel getSourceTimeoutSpinnerModel() {
+        return this.sourceTimeoutSpinnerModel;
+    }
+
+    /**
+     * Returns the spinner model of the fade in time of the stored cues.
+     *
+     * @return the fade in time spinner model, in seconds
+     */
+    public SpinnerModel getFadeInTimeSpinnerModel() {
+        return this.fadeInTimeSpinnerModel;
+    }
+
+    /**
+     * Returns the spinner model of the fade out time of the stored cues.
+     *
+     * @return the fade out time spinner model, in seconds
+     */
+    public SpinnerModel getFadeOutTimeSpinnerModel() {
+        return this.fadeOutTimeSpinnerModel;
+    }
+
+    /**
+     * Returns the merge mode combo model.
+     *
+     * @return the merge mode combo model
+     */
+    public ComboBoxModel getMergeModeComboModel() {
+        return this.mergeModeComboModel;
+    }
+
     /**
      * Gets the model of the broadcast address.
      *
@@ -455,6 +622,50 @@ public class RemoteModel {
         this.httpServerEnabled = httpServerEnabled;
     }
 
+    /**
+     * Give the status of the unicast to the discovered nodes.
+     *
+     * @return true if unicast is enabled, false if every universe is
+     *         broadcasted
+     */
+    public boolean isUnicastEnabled() {
+        return this.unicastEnabled;
+    }
+
+    /**
+     * Enable or disable the unicast to the discovered nodes.
+     *
+     * @param unicastEnabled
+     *            true to enable the unicast, false to broadcast every
+     *            universe
+     */
+    public void setUnicastEnabled(final boolean unicastEnabled) {
+        this.unicastEnabled = unicastEnabled;
+        artNetServerManager.setUnicastEnabled(this.unicastEnabled);
+    }
+
+    /**
+     * Give the status of the merge of the ArtNet input with the output.
+     *
+     * @return true if the merge is enabled, false if only the local values
+     *         are sent
+     */
+    public boolean isMergeEnabled() {
+        return this.mergeEnabled;
+    }
+
+    /**
+     * Enable or disable the merge of the ArtNet input with the output.
+     *
+     * @param mergeEnabled
+     *            true to enable the merge, false to send the local values
+     *            only
+     */
+    public void setMergeEnabled(final boolean mergeEnabled) {
+        this.mergeEnabled = mergeEnabled;
+        artNetServerManager.setMergeEnabled(this.mergeEnabled);
+    }
+
     /**
      * Give the status of the additive mode enabling.
      *
@@ -476,13 +687,67 @@ public class RemoteModel {
     }
 
     /**
-     * Adds an element to the list of listener of the remote model.
+     * Adds an element to the list of listener of the remote model. The
+     * listener is called on the event dispatch thread.
      *
      * @param listener
      *            the listener to add
      */
     public void addRemoteModelChangedListener(final RemoteModelListener listener) {
-        this.remoteModelChangedListeners.add(listener);
+        List<EventBus.Subscription<?>> subscriptions = new ArrayList<EventBus.Subscription<?>>();
+        subscriptions.add(eventBus.subscribe(commandLineChanged,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<CommandLineValueChangedEvent>() {
+                    @Override
+                    public void eventPublished(
+                            final CommandLineValueChangedEvent event) {
+                        listener.commandLineValueChanged(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(artNetStarted,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<ArtNetStartedEvent>() {
+                    @Override
+                    public void eventPublished(final ArtNetStartedEvent event) {
+                        listener.artNetStarted(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(artNetStopped,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<ArtNetStoppedEvent>() {
+                    @Override
+                    public void eventPublished(final ArtNetStoppedEvent event) {
+                        listener.artNetStopped(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(httpStarted,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<HttpStartedEvent>() {
+                    @Override
+                    public void eventPublished(final HttpStartedEvent event) {
+                        listener.httpStarted(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(httpStopped,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<HttpStoppedEvent>() {
+                    @Override
+                    public void eventPublished(final HttpStoppedEvent event) {
+                        listener.httpStopped(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(additiveModeChanged,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<AdditiveModeValueChangedEvent>() {
+                    @Override
+                    public void eventPublished(
+                            final AdditiveModeValueChangedEvent event) {
+                        listener.additiveModeValueChanged(event);
+                    }
+                }));
+        synchronized (this.listenersSubscriptions) {
+            this.listenersSubscriptions.put(listener, subscriptions);
+        }
     }
 
     /**
@@ -493,7 +758,15 @@ public class RemoteModel {
      */
     public void removeRemoteModelChangedListener(
             final RemoteModelListener listener) {
-        this.remoteModelChangedListeners.remove(listener);
+        List<EventBus.Subscription<?>> subscriptions;
+        synchronized (this.listenersSubscriptions) {
+            subscriptions = this.listenersSubscriptions.remove(listener);
+        }
+        if (subscriptions != null) {
+            for (EventBus.Subscription<?> subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
     }
 
     /**
@@ -541,6 +814,51 @@ public class RemoteModel {
         return getSelectedIntValue(httpPortSpinnerModel);
     }
 
+    /**
+     * Returns the refresh rate.
+     *
+     * @return the refresh rate in Hz
+     */
+    public int getRefreshRate() {
+        return getSelectedIntValue(refreshRateSpinnerModel);
+    }
+
+    /**
+     * Returns the keep-alive interval.
+     *
+     * @return the keep-alive interval in milliseconds
+     */
+    public int getKeepAliveInterval() {
+        return getSelectedIntValue(keepAliveIntervalSpinnerModel);
+    }
+
+    /**
+     * Returns the priority of the local output in the merge.
+     *
+     * @return the local priority
+     */
+    public int getLocalPriority() {
+        return getSelectedIntValue(localPrioritySpinnerModel);
+    }
+
+    /**
+     * Returns the timeout of the ArtNet input in the merge.
+     *
+     * @return the source timeout in milliseconds
+     */
+    public int getSourceTimeout() {
+        return getSelectedIntValue(sourceTimeoutSpinnerModel);
+    }
+
+    /**
+     * Returns the merge mode.
+     *
+     * @return the merge mode
+     */
+    public DmxMerger.MergeMode getMergeMode() {
+        return (DmxMerger.MergeMode) mergeModeComboModel.getSelectedItem();
+    }
+
     /**
      * Returns the broadcast address.
      *
@@ -611,6 +929,56 @@ public class RemoteModel {
         httpPortSpinnerModel.setValue(httpPort);
     }
 
+    /**
+     * Sets the refresh rate.
+     *
+     * @param refreshRate
+     *            the refresh rate in Hz
+     */
+    public void setRefreshRate(final int refreshRate) {
+        refreshRateSpinnerModel.setValue(refreshRate);
+    }
+
+    /**
+     * Sets the keep-alive interval.
+     *
+     * @param keepAliveInterval
+     *            the keep-alive interval in milliseconds
+     */
+    public void setKeepAliveInterval(final int keepAliveInterval) {
+        keepAliveIntervalSpinnerModel.setValue(keepAliveInterval);
+    }
+
+    /**
+     * Sets the priority of the local output in the merge.
+     *
+     * @param localPriority
+     *            the local priority
+     */
+    public void setLocalPriority(final int localPriority) {
+        localPrioritySpinnerModel.setValue(localPriority);
+    }
+
+    /**
+     * Sets the timeout of the ArtNet input in the merge.
+     *
+     * @param sourceTimeout
+     *            the source timeout in milliseconds
+     */
+    public void setSourceTimeout(final int sourceTimeout) {
+        sourceTimeoutSpinnerModel.setValue(sourceTimeout);
+    }
+
+    /**
+     * Sets the merge mode.
+     *
+     * @param mergeMode
+     *            the merge mode
+     */
+    public void setMergeMode(final DmxMerger.MergeMode mergeMode) {
+        mergeModeComboModel.setSelectedItem(mergeMode);
+    }
+
     /**
      * set the value of the broadcast address.
      *
@@ -674,7 +1042,14 @@ public class RemoteModel {
      */
     public void storeCue(final String cueName) {
         cuesListModel.addCue(new Cue(cueName, artNetServerManager
-                .getCurrentOutputDmxArray()));
+                .getCurrentOutputDmxArray(),
+                getFadeTime(fadeInTimeSpinnerModel),
+                getFadeTime(fadeOutTimeSpinnerModel)));
+    }
+
+    private int getFadeTime(final SpinnerModel model) {
+        return (int) Math.round(((Number) model.getValue()).doubleValue()
+                * MILLIS_PER_SECOND);
     }
 
     /**
@@ -684,7 +1059,10 @@ public class RemoteModel {
      *            the cue to load
      */
     public void loadCue(final Cue cue) {
-        artNetServerManager.setCurrentOutputDmxArray(cue.getDmxArray());
+        artNetServerManager.fadeOutputDmxArray(
+                artNetServerManager.getSubnet(),
+                artNetServerManager.getUniverse(), cue.getDmxArray(),
+                cue.getFadeInTime(), cue.getFadeOutTime());
         artNetServerManager.sendDmxCommand();
         logger.info("Cue [" + cue.getName() + "] sent");
     }
@@ -699,6 +1077,33 @@ public class RemoteModel {
         cuesListModel.removeCue(cue);
     }
 
+    /**
+     * Opens the given show file, the changes of the cues are then saved as
+     * they are made.
+     *
+     * @param file
+     *            the show file
+     * @return the file to which an unreadable show file was moved, null if
+     *         the show was read
+     * @throws IOException
+     *             if the show file can not be written
+     * @see CuesManager#openShow(File)
+     */
+    public File openShow(final File file) throws IOException {
+        return cuesManager.openShow(file);
+    }
+
+    /**
+     * Closes the opened show file.
+     *
+     * @throws IOException
+     *             if the show file can not be written
+     * @see CuesManager#closeShow()
+     */
+    public void closeShow() throws IOException {
+        cuesManager.closeShow();
+    }
+
     /**
      * Persists the current cues to the given {@link OutputStream}.
      *
@@ -717,9 +1122,11 @@ public class RemoteModel {
      *
      * @param stream
      *            {@link InputStream} from which the cues must be load
+     * @throws IOException
+     *             if the stream can not be decoded
      * @see CuesManager#persist(OutputStream)
      */
-    public void load(final InputStream stream) {
+    public void load(final InputStream stream) throws IOException {
         cuesManager.load(stream);
     }
 }
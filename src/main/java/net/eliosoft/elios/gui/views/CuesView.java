@@ -24,14 +24,17 @@ import java.awt.Component;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.text.MessageFormat;
 
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.event.ListSelectionEvent;
@@ -55,6 +58,8 @@ public class CuesView implements ViewInterface {
     private final JButton loadButton;
     private final JButton removeButton;
     private final JList cuesList;
+    private final JSpinner fadeInTimeSpinner;
+    private final JSpinner fadeOutTimeSpinner;
 
     /**
      * The constructor of the class.
@@ -93,7 +98,14 @@ public class CuesView implements ViewInterface {
                 super.getListCellRendererComponent(list, value, index,
                         isSelected, cellHasFocus);
                 Cue cue = (Cue) value;
-                setText(cue.getName());
+                if (cue.getFadeInTime() == 0 && cue.getFadeOutTime() == 0) {
+                    setText(cue.getName());
+                } else {
+                    setText(MessageFormat.format(
+                            Messages.getString("cuesview.cuewithfades"), //$NON-NLS-1$
+                            cue.getName(), cue.getFadeInTime() / 1000.0,
+                            cue.getFadeOutTime() / 1000.0));
+                }
 
                 return this;
             }
@@ -130,7 +142,22 @@ public class CuesView implements ViewInterface {
                                 .getResource("/net/eliosoft/elios/gui/views/edit-delete.png")));
         removeButton.setEnabled(false);
 
+        fadeInTimeSpinner = new JSpinner(
+                this.remoteModel.getFadeInTimeSpinnerModel());
+        fadeOutTimeSpinner = new JSpinner(
+                this.remoteModel.getFadeOutTimeSpinnerModel());
+        JLabel fadeInTimeLabel = new JLabel(
+                Messages.getString("cuesview.fadein")); //$NON-NLS-1$
+        fadeInTimeLabel.setLabelFor(fadeInTimeSpinner);
+        JLabel fadeOutTimeLabel = new JLabel(
+                Messages.getString("cuesview.fadeout")); //$NON-NLS-1$
+        fadeOutTimeLabel.setLabelFor(fadeOutTimeSpinner);
+
         JPanel buttonsPanel = new JPanel();
+        buttonsPanel.add(fadeInTimeLabel);
+        buttonsPanel.add(fadeInTimeSpinner);
+        buttonsPanel.add(fadeOutTimeLabel);
+        buttonsPanel.add(fadeOutTimeSpinner);
         buttonsPanel.add(storeButton);
         buttonsPanel.add(loadButton);
         buttonsPanel.add(removeButton);
@@ -0,0 +1,308 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.gui.views;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
+import javax.swing.ToolTipManager;
+
+import net.eliosoft.elios.gui.models.DMXMonitorModel;
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.DmxFrame;
+
+/**
+ * The view of the DMX monitor. Each monitored universe is shown as a line of
+ * 512 cells, painted in an image whose pixels are written directly : only the
+ * cells whose value changed are written and repainted.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DMXMonitorView implements ViewInterface {
+
+    private static final int CELL_WIDTH = 2;
+    private static final int CELL_HEIGHT = 10;
+    private static final int ROW_HEIGHT = CELL_HEIGHT + 2;
+    private static final int LABEL_MARGIN = 6;
+    private static final int SCROLL_INCREMENT = ROW_HEIGHT * 2;
+
+    private static final int BACKGROUND_RGB = 0xE6E6E6;
+
+    // the color of the cells for each DMX value, same scale as the DMX table
+    private static final int[] CELL_RGBS = new int[256];
+
+    static {
+        for (int value = 0; value < CELL_RGBS.length; value++) {
+            int nonBlueLevel = 255 - value * 4 / 5;
+            CELL_RGBS[value] = (nonBlueLevel << 16) | (nonBlueLevel << 8)
+                    | 255;
+        }
+    }
+
+    private final DMXMonitorModel monitorModel;
+    private final JPanel monitorPanel = new JPanel(new BorderLayout());
+    private final JRadioButton inRadio;
+    private final JRadioButton outRadio;
+    private final JComboBox firstSubnetCombo;
+    private final JComboBox subnetsCountCombo;
+
+    /**
+     * The constructor of the DMX monitor view.
+     *
+     * @param monitorModel
+     *            the DMXMonitorModel used by the view
+     */
+    public DMXMonitorView(final DMXMonitorModel monitorModel) {
+        this.monitorModel = monitorModel;
+
+        ButtonGroup inOutRadioGroup = new ButtonGroup();
+        JPanel controlsPanel = new JPanel();
+        inRadio = new JRadioButton(Messages.getString("dmxview.inputradio"),
+                monitorModel.isInputEnabled());
+        inRadio.setActionCommand("input");
+        outRadio = new JRadioButton(Messages.getString("dmxview.outputradio"),
+                !monitorModel.isInputEnabled());
+        outRadio.setActionCommand("output");
+        inOutRadioGroup.add(inRadio);
+        inOutRadioGroup.add(outRadio);
+        controlsPanel.add(inRadio);
+        controlsPanel.add(outRadio);
+
+        Integer[] subnets = new Integer[DMXMonitorModel.SUBNETS_COUNT];
+        for (int i = 0; i < subnets.length; i++) {
+            subnets[i] = i;
+        }
+        firstSubnetCombo = new JComboBox(subnets);
+        firstSubnetCombo.setSelectedItem(monitorModel.getFirstSubnet());
+        Integer[] counts = new Integer[DMXMonitorModel.MAX_MONITORED_SUBNETS];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = i + 1;
+        }
+        subnetsCountCombo = new JComboBox(counts);
+        subnetsCountCombo.setSelectedItem(monitorModel.getSubnetsCount());
+        controlsPanel.add(new JLabel(Messages
+                .getString("dmxmonitorview.firstsubnet")));
+        controlsPanel.add(firstSubnetCombo);
+        controlsPanel.add(new JLabel(Messages
+                .getString("dmxmonitorview.subnetscount")));
+        controlsPanel.add(subnetsCountCombo);
+        this.monitorPanel.add(controlsPanel, BorderLayout.NORTH);
+
+        Heatmap heatmap = new Heatmap();
+        monitorModel.addListener(heatmap);
+        JScrollPane scrollPane = new JScrollPane(heatmap);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(SCROLL_INCREMENT);
+        scrollPane.setPreferredSize(new Dimension(200, 200));
+        this.monitorPanel.add(scrollPane, BorderLayout.CENTER);
+    }
+
+    /**
+     * The component painting the monitored universes.
+     */
+    private class Heatmap extends JComponent implements
+            DMXMonitorModel.Listener {
+        private static final long serialVersionUID = -2459206410418474571L;
+
+        private final int labelWidth;
+        private BufferedImage image;
+        private int[] pixels;
+
+        Heatmap() {
+            FontMetrics metrics = monitorPanel.getFontMetrics(monitorPanel
+                    .getFont());
+            labelWidth = metrics.stringWidth("15/15") + LABEL_MARGIN * 2;
+            setOpaque(true);
+            setBackground(new Color(BACKGROUND_RGB));
+            ToolTipManager.sharedInstance().registerComponent(this);
+            universesChanged();
+        }
+
+        @Override
+        public void universesChanged() {
+            int width = ArtNetServerManager.DMX_CHANNELS_COUNT * CELL_WIDTH;
+            int height = monitorModel.getUniversesCount() * ROW_HEIGHT;
+            image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+                    .getData();
+            Arrays.fill(pixels, BACKGROUND_RGB);
+            setPreferredSize(new Dimension(labelWidth + width, height));
+            revalidate();
+            repaint();
+        }
+
+        @Override
+        public void frameChanged(final int row, final DmxFrame oldFrame,
+                final DmxFrame newFrame) {
+            int imageWidth = image.getWidth();
+            int firstChanged = -1;
+            int lastChanged = -1;
+            for (int channel = 0; channel < ArtNetServerManager.DMX_CHANNELS_COUNT; channel++) {
+                int value = newFrame.getValue(channel);
+                if (oldFrame != null && oldFrame.getValue(channel) == value) {
+                    continue;
+                }
+                int rgb = CELL_RGBS[value];
+                int offset = row * ROW_HEIGHT * imageWidth + channel
+                        * CELL_WIDTH;
+                for (int y = 0; y < CELL_HEIGHT; y++) {
+                    Arrays.fill(pixels, offset, offset + CELL_WIDTH, rgb);
+                    offset += imageWidth;
+                }
+                if (firstChanged < 0) {
+                    firstChanged = channel;
+                }
+                lastChanged = channel;
+            }
+            if (firstChanged >= 0) {
+                repaint(labelWidth + firstChanged * CELL_WIDTH, row
+                        * ROW_HEIGHT, (lastChanged - firstChanged + 1)
+                        * CELL_WIDTH, CELL_HEIGHT);
+            }
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip.x < labelWidth) {
+                g.setColor(getBackground());
+                g.fillRect(clip.x, clip.y, labelWidth - clip.x, clip.height);
+                g.setColor(getForeground());
+                FontMetrics metrics = g.getFontMetrics();
+                int firstRow = Math.max(0, clip.y / ROW_HEIGHT);
+                int lastRow = Math.min(monitorModel.getUniversesCount() - 1,
+                        (clip.y + clip.height) / ROW_HEIGHT);
+                for (int row = firstRow; row <= lastRow; row++) {
+                    g.drawString(monitorModel.getSubnet(row) + "/"
+                            + monitorModel.getUniverse(row), LABEL_MARGIN, row
+                            * ROW_HEIGHT + (CELL_HEIGHT + metrics.getAscent())
+                            / 2 - 1);
+                }
+            }
+            g.drawImage(image, labelWidth, 0, null);
+            int imageRight = labelWidth + image.getWidth();
+            if (clip.x + clip.width > imageRight) {
+                g.setColor(getBackground());
+                g.fillRect(imageRight, clip.y, clip.x + clip.width
+                        - imageRight, clip.height);
+            }
+            if (clip.y + clip.height > image.getHeight()) {
+                g.setColor(getBackground());
+                g.fillRect(clip.x, image.getHeight(), clip.width, clip.y
+                        + clip.height - image.getHeight());
+            }
+        }
+
+        @Override
+        public String getToolTipText(final MouseEvent event) {
+            // built only when a tooltip is shown
+            int row = event.getY() / ROW_HEIGHT;
+            int channel = (event.getX() - labelWidth) / CELL_WIDTH;
+            if (event.getX() < labelWidth
+                    || channel >= ArtNetServerManager.DMX_CHANNELS_COUNT
+                    || row >= monitorModel.getUniversesCount()
+                    || monitorModel.getFrame(row) == null) {
+                return null;
+            }
+            int value = monitorModel.getFrame(row).getValue(channel);
+            int percentValue = (int) Math.ceil(value * 100 / 255.0);
+            return MessageFormat.format(Messages
+                    .getString("dmxmonitorview.tooltipmessage"), monitorModel
+                    .getSubnet(row), monitorModel.getUniverse(row),
+                    channel + 1, value, percentValue);
+        }
+    }
+
+    /**
+     * Add an action listener to in and out radio buttons.
+     *
+     * @param actionListener
+     *            the listener to add
+     */
+    public void addInOutRadioActionListener(final ActionListener actionListener) {
+        inRadio.addActionListener(actionListener);
+        outRadio.addActionListener(actionListener);
+    }
+
+    /**
+     * Add an action listener to the first subnet and the subnets count
+     * combo boxes.
+     *
+     * @param actionListener
+     *            the listener to add
+     */
+    public void addSubnetsActionListener(final ActionListener actionListener) {
+        firstSubnetCombo.addActionListener(actionListener);
+        subnetsCountCombo.addActionListener(actionListener);
+    }
+
+    /**
+     * Returns the selected first subnet.
+     *
+     * @return the first subnet
+     */
+    public int getSelectedFirstSubnet() {
+        return ((Integer) firstSubnetCombo.getSelectedItem()).intValue();
+    }
+
+    /**
+     * Returns the selected number of subnets.
+     *
+     * @return the number of subnets
+     */
+    public int getSelectedSubnetsCount() {
+        return ((Integer) subnetsCountCombo.getSelectedItem()).intValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getLocalizedTitle() {
+        return Messages.getString("dmxmonitorview.title");
+    }
+
+    /**
+     * Returns the monitor panel of the view.
+     *
+     * @return the monitor panel
+     */
+    @Override
+    public JComponent getViewComponent() {
+        return this.monitorPanel;
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
 import java.text.MessageFormat;
 import java.util.Enumeration;
 
@@ -19,6 +20,7 @@ import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import javax.swing.border.Border;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -34,6 +36,24 @@ import net.eliosoft.elios.gui.models.RemoteModel;
  */
 public class DMXView implements ViewInterface {
 
+    // the background of the cells for each DMX value
+    private static final Color[] CELL_COLORS = new Color[256];
+
+    private static final Color HEADER_COLOR = new Color(230, 230, 230);
+    private static final Border CORNER_HEADER_BORDER = BorderFactory
+            .createMatteBorder(1, 1, 1, 1, Color.LIGHT_GRAY);
+    private static final Border COLUMN_HEADER_BORDER = BorderFactory
+            .createMatteBorder(1, 0, 1, 1, Color.LIGHT_GRAY);
+    private static final Border ROW_HEADER_BORDER = BorderFactory
+            .createMatteBorder(0, 1, 1, 1, Color.LIGHT_GRAY);
+
+    static {
+        for (int value = 0; value < CELL_COLORS.length; value++) {
+            int nonBlueLevel = 255 - value * 4 / 5;
+            CELL_COLORS[value] = new Color(nonBlueLevel, nonBlueLevel, 255);
+        }
+    }
+
     private final DMXTableModel dmxTableModel;
     private final JPanel dmxPanel = new JPanel(new BorderLayout());
     private final int cellWidth = dmxPanel.getFontMetrics(dmxPanel.getFont())
@@ -80,22 +100,37 @@ public class DMXView implements ViewInterface {
                 setHorizontalAlignment(SwingConstants.CENTER);
                 setFont(getFont().deriveFont(getFont().getStyle() ^ Font.BOLD));
                 if ((row == 0 && column == -1) || (row == -1 && column == 0)) {
-                    setBorder(BorderFactory.createMatteBorder(1, 1, 1, 1,
-                            Color.LIGHT_GRAY));
+                    setBorder(CORNER_HEADER_BORDER);
                 } else if (row == -1) {
-                    setBorder(BorderFactory.createMatteBorder(1, 0, 1, 1,
-                            Color.LIGHT_GRAY));
+                    setBorder(COLUMN_HEADER_BORDER);
                 } else if (column == -1) {
-                    setBorder(BorderFactory.createMatteBorder(0, 1, 1, 1,
-                            Color.LIGHT_GRAY));
+                    setBorder(ROW_HEADER_BORDER);
                 }
 
-                setBackground(new Color(230, 230, 230));
+                setBackground(HEADER_COLOR);
                 return this;
             }
         };
 
-        final JTable dmxTable = new JTable(this.dmxTableModel);
+        final JTable dmxTable = new JTable(this.dmxTableModel) {
+            private static final long serialVersionUID = 2936522581460317548L;
+
+            @Override
+            public String getToolTipText(final MouseEvent event) {
+                // built only when a tooltip is shown
+                int row = rowAtPoint(event.getPoint());
+                int column = columnAtPoint(event.getPoint());
+                if (row < 0 || column < 0) {
+                    return null;
+                }
+                int value = dmxTableModel.getValueAt(row, column).intValue();
+                int channel = row * getColumnCount() + column + 1;
+                int percentValue = (int) Math.ceil(value * 100 / 255.0);
+                return MessageFormat.format(Messages
+                        .getString("dmxview.tooltipmessage"), channel, value,
+                        percentValue);
+            }
+        };
         dmxTable.setEnabled(false);
         dmxTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         dmxTable.getTableHeader().setReorderingAllowed(false);
@@ -112,6 +147,10 @@ public class DMXView implements ViewInterface {
                 new DefaultTableCellRenderer() {
                     private static final long serialVersionUID = 8556900685268227709L;
 
+                    {
+                        setHorizontalAlignment(SwingConstants.CENTER);
+                    }
+
                     @Override
                     public Component getTableCellRendererComponent(
                             final JTable table, final Object value,
@@ -119,15 +158,7 @@ public class DMXView implements ViewInterface {
                             final int row, final int column) {
                         super.getTableCellRendererComponent(table, value,
                                 isSelected, hasFocus, row, column);
-                        int nonBlueLevel = 255 - ((Integer) value).intValue() * 4 / 5;
-                        setBackground(new Color(nonBlueLevel, nonBlueLevel, 255));
-                        int channel = row * table.getColumnCount() + column + 1;
-                        int percentValue = (int) Math.ceil(((Integer) value)
-                                .intValue() * 100 / 255.0);
-                        setToolTipText(MessageFormat.format(
-                                Messages.getString("dmxview.tooltipmessage"),
-                                channel, value, percentValue));
-                        setHorizontalAlignment(SwingConstants.CENTER);
+                        setBackground(CELL_COLORS[((Integer) value).intValue()]);
                         return this;
                     }
                 });
@@ -0,0 +1,164 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.gui.views;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionListener;
+
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableColumnModel;
+
+import net.eliosoft.elios.gui.models.InputStatsTableModel;
+
+/**
+ * The view of the ArtNet input statistics. This class displays, for each
+ * source and universe received by the server, the packet rate, the lost
+ * packets, the packets out of order, the jitter and the time since the last
+ * packet.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class InputStatsView implements ViewInterface {
+
+    private static final String[] COLUMN_KEYS = { "inputstatsview.source",
+            "inputstatsview.universe", "inputstatsview.packets",
+            "inputstatsview.rate", "inputstatsview.lost",
+            "inputstatsview.outoforder", "inputstatsview.jitter",
+            "inputstatsview.lastseen" };
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    private final JPanel statsPanel = new JPanel(new BorderLayout());
+    private final JButton resetButton;
+
+    /**
+     * The constructor of the input statistics view.
+     *
+     * @param statsModel
+     *            the InputStatsTableModel used by the view
+     */
+    public InputStatsView(final InputStatsTableModel statsModel) {
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        this.resetButton = new JButton(
+                Messages.getString("inputstatsview.reset"),
+                new ImageIcon(
+                        InputStatsView.class
+                                .getResource("/net/eliosoft/elios/gui/views/edit-clear.png"))); //$NON-NLS-1$
+        buttonPanel.add(this.resetButton);
+        this.statsPanel.add(buttonPanel, BorderLayout.NORTH);
+
+        JTable statsTable = new JTable(statsModel);
+        statsTable.getTableHeader().setReorderingAllowed(false);
+        TableColumnModel columns = statsTable.getColumnModel();
+        for (int column = 0; column < COLUMN_KEYS.length; column++) {
+            columns.getColumn(column).setHeaderValue(
+                    Messages.getString(COLUMN_KEYS[column]));
+        }
+
+        columns.getColumn(InputStatsTableModel.SOURCE_COLUMN).setCellRenderer(
+                new DefaultTableCellRenderer() {
+                    private static final long serialVersionUID = -2408436290166823715L;
+
+                    @Override
+                    protected void setValue(final Object value) {
+                        setText(value == null ? Messages
+                                .getString("inputstatsview.unknownsource")
+                                : value.toString());
+                    }
+                });
+        statsTable.setDefaultRenderer(Double.class,
+                new DefaultTableCellRenderer() {
+                    private static final long serialVersionUID = 6853902451637416209L;
+
+                    {
+                        setHorizontalAlignment(SwingConstants.RIGHT);
+                    }
+
+                    @Override
+                    protected void setValue(final Object value) {
+                        setText(String.format("%.1f", value));
+                    }
+                });
+        columns.getColumn(InputStatsTableModel.LAST_SEEN_COLUMN)
+                .setCellRenderer(new DefaultTableCellRenderer() {
+                    private static final long serialVersionUID = -5169287035548140328L;
+
+                    {
+                        setHorizontalAlignment(SwingConstants.RIGHT);
+                    }
+
+                    @Override
+                    protected void setValue(final Object value) {
+                        setText(String.format("%.1f", ((Long) value)
+                                .longValue()
+                                / MILLIS_PER_SECOND));
+                    }
+                });
+
+        this.statsPanel.add(new JScrollPane(statsTable), BorderLayout.CENTER);
+    }
+
+    /**
+     * Adds an action listener to the reset button.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addResetButtonListener(final ActionListener listener) {
+        this.resetButton.addActionListener(listener);
+    }
+
+    /**
+     * Removes an action listener from the reset button.
+     *
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeResetButtonListener(final ActionListener listener) {
+        this.resetButton.removeActionListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getLocalizedTitle() {
+        return Messages.getString("inputstatsview.title");
+    }
+
+    /**
+     * Returns the statistics panel of the view.
+     *
+     * @return the statistics panel
+     */
+    @Override
+    public JComponent getViewComponent() {
+        return this.statsPanel;
+    }
+}
@@ -94,14 +94,10 @@ public class LogsLineView implements ViewInterface {
      * Update the label according to the current LogRecord.
      */
     private void updateLabel() {
-        if (remoteModel.getLogsListModel().getSize() > 0) {
-            final LogRecord logRecord = (LogRecord) remoteModel
-                    .getLogsListModel().getElementAt(
-                            remoteModel.getLogsListModel().getSize() - 1);
-            LogsViewHelper.LOG_DECORATOR.update(logLabel, logRecord);
-        } else {
-            logLabel.setText(LogsViewHelper.DEFAULT_TEXT);
-        }
+        // the last log, even if filtered out of the logs view
+        final LogRecord logRecord = remoteModel.getLogsListModel()
+                .getLastLogRecord();
+        LogsViewHelper.LOG_DECORATOR.update(logLabel, logRecord);
     }
 
     /**
@@ -23,31 +23,50 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.ListCellRenderer;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 
 import net.eliosoft.elios.gui.models.RemoteModel;
 import net.eliosoft.elios.main.Elios;
 
 /**
- * The view of the logs. This class print logs in a list.
+ * The view of the logs. This class print logs in a list. The rows of the list
+ * have a fixed size, so only the shown rows are rendered, and they are all
+ * rendered by the same label.
  *
  * @author Jeremie GASTON-RAOUL
  */
 public class LogsView implements ViewInterface {
 
+    private static final Level[] FILTER_LEVELS = { Level.ALL, Level.FINE,
+            Level.INFO, Level.WARNING, Level.SEVERE };
+    private static final int MIN_LIST_WIDTH = 200;
+    private static final int SEARCH_COLUMNS = 15;
+
     private RemoteModel remoteModel;
     private JList logsList;
 
@@ -56,6 +75,10 @@ public class LogsView implements ViewInterface {
 
     private final JPanel logsPanel = new JPanel();
     private final JButton clearLogsButton;
+    private final JComboBox levelCombo;
+    private final JComboBox loggerCombo;
+    private final DefaultComboBoxModel loggerComboModel;
+    private final JTextField searchField;
 
     /**
      * The constructor of the Logs View.
@@ -68,6 +91,65 @@ public class LogsView implements ViewInterface {
 
         this.logsPanel.setLayout(this.layout);
 
+        JPanel filterPanel = new JPanel();
+        this.levelCombo = new JComboBox(FILTER_LEVELS);
+        this.levelCombo.setRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = -3546871052063617282L;
+
+            @Override
+            public Component getListCellRendererComponent(final JList list,
+                    final Object value, final int index,
+                    final boolean isSelected, final boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list,
+                        ((Level) value).getLocalizedName(), index, isSelected,
+                        cellHasFocus);
+            }
+        });
+        this.loggerComboModel = new DefaultComboBoxModel();
+        this.loggerComboModel.addElement(Messages
+                .getString("logsview.allloggers"));
+        this.loggerCombo = new JComboBox(this.loggerComboModel);
+        this.loggerCombo.setRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 6418013618385427935L;
+
+            @Override
+            public Component getListCellRendererComponent(final JList list,
+                    final Object value, final int index,
+                    final boolean isSelected, final boolean cellHasFocus) {
+                // the loggers are named after their class
+                String name = (String) value;
+                return super.getListCellRendererComponent(list, name
+                        .substring(name.lastIndexOf('.') + 1), index,
+                        isSelected, cellHasFocus);
+            }
+        });
+        this.loggerCombo.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(final PopupMenuEvent e) {
+                updateLoggerNames();
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(final PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(final PopupMenuEvent e) {
+            }
+        });
+        this.searchField = new JTextField(SEARCH_COLUMNS);
+        filterPanel.add(new JLabel(Messages.getString("logsview.level")));
+        filterPanel.add(this.levelCombo);
+        filterPanel.add(new JLabel(Messages.getString("logsview.logger")));
+        filterPanel.add(this.loggerCombo);
+        filterPanel.add(new JLabel(Messages.getString("logsview.search")));
+        filterPanel.add(this.searchField);
+        this.constraints.fill = GridBagConstraints.HORIZONTAL;
+        this.constraints.gridy = 0;
+        this.constraints.weightx = 1;
+        this.constraints.weighty = 0;
+        this.logsPanel.add(filterPanel, this.constraints);
+
         this.logsList = new JList(this.remoteModel.getLogsListModel());
         this.logsList.getModel().addListDataListener(new ListDataListener() {
             @Override
@@ -75,7 +157,7 @@ public class LogsView implements ViewInterface {
                 SwingUtilities.invokeLater(new Runnable() {
                     @Override
                     public void run() {
-                        logsList.ensureIndexIsVisible(e.getIndex0());
+                        logsList.ensureIndexIsVisible(e.getIndex1());
                     }
                 });
             }
@@ -88,22 +170,27 @@ public class LogsView implements ViewInterface {
             public void contentsChanged(final ListDataEvent e) {
             }
         });
+        final JLabel logLabel = new JLabel(LogsViewHelper.DEFAULT_TEXT);
         this.logsList.setCellRenderer(new ListCellRenderer() {
 
             @Override
             public Component getListCellRendererComponent(final JList list,
                     final Object value, final int index,
                     final boolean isSelected, final boolean cellHasFocus) {
-                return LogsViewHelper.createLogsLabel((LogRecord) value);
+                return LogsViewHelper.LOG_DECORATOR.update(logLabel,
+                        (LogRecord) value);
             }
         });
+        // without a fixed size, every row is rendered to size the list
+        this.logsList.setFixedCellHeight(logLabel.getPreferredSize().height);
+        this.logsList.setFixedCellWidth(MIN_LIST_WIDTH);
 
         JScrollPane scrollPane = new JScrollPane(logsList);
-        scrollPane.setMinimumSize(new Dimension(200, 100));
+        scrollPane.setMinimumSize(new Dimension(MIN_LIST_WIDTH, 100));
         scrollPane
                 .setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
         this.constraints.fill = GridBagConstraints.BOTH;
-        this.constraints.gridy = 0;
+        this.constraints.gridy = 1;
         this.constraints.weightx = 1;
         this.constraints.weighty = 1;
         this.logsPanel.add(scrollPane, this.constraints);
@@ -114,12 +201,24 @@ public class LogsView implements ViewInterface {
                         Elios.class
                                 .getResource("/net/eliosoft/elios/gui/views/edit-clear.png"))); //$NON-NLS-1$
         this.constraints.fill = GridBagConstraints.NONE;
-        this.constraints.gridy = 1;
+        this.constraints.gridy = 2;
         this.constraints.weightx = 0;
         this.constraints.weighty = 0;
         logsPanel.add(this.clearLogsButton, this.constraints);
     }
 
+    /**
+     * Adds the names of the new loggers to the logger combo box.
+     */
+    private void updateLoggerNames() {
+        List<String> names = remoteModel.getLogsListModel().getLoggerNames();
+        for (String name : names) {
+            if (name.length() > 0 && loggerComboModel.getIndexOf(name) < 0) {
+                loggerComboModel.addElement(name);
+            }
+        }
+    }
+
     /**
      * Returns the logs panel of the view.
      *
@@ -150,6 +249,66 @@ public class LogsView implements ViewInterface {
         this.clearLogsButton.removeActionListener(listener);
     }
 
+    /**
+     * Adds an action listener called when the filter of the logs changes.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    public void addFilterListener(final ActionListener listener) {
+        this.levelCombo.addActionListener(listener);
+        this.loggerCombo.addActionListener(listener);
+        this.searchField.getDocument().addDocumentListener(
+                new DocumentListener() {
+                    @Override
+                    public void insertUpdate(final DocumentEvent e) {
+                        changedUpdate(e);
+                    }
+
+                    @Override
+                    public void removeUpdate(final DocumentEvent e) {
+                        changedUpdate(e);
+                    }
+
+                    @Override
+                    public void changedUpdate(final DocumentEvent e) {
+                        listener.actionPerformed(new ActionEvent(searchField,
+                                ActionEvent.ACTION_PERFORMED, "search"));
+                    }
+                });
+    }
+
+    /**
+     * Returns the lowest level of the logs to show.
+     *
+     * @return the level, null to show all the logs
+     */
+    public Level getSelectedMinLevel() {
+        Level level = (Level) this.levelCombo.getSelectedItem();
+        return Level.ALL.equals(level) ? null : level;
+    }
+
+    /**
+     * Returns the name of the logger of the logs to show.
+     *
+     * @return the logger name, null to show the logs of all the loggers
+     */
+    public String getSelectedLoggerName() {
+        if (this.loggerCombo.getSelectedIndex() <= 0) {
+            return null;
+        }
+        return (String) this.loggerCombo.getSelectedItem();
+    }
+
+    /**
+     * Returns the text searched in the logs.
+     *
+     * @return the text, empty to show all the logs
+     */
+    public String getSearchText() {
+        return this.searchField.getText();
+    }
+
     /**
      * {@inheritDoc}
      */
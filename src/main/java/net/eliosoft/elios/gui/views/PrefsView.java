@@ -62,6 +62,15 @@ public class PrefsView implements ViewInterface {
 
     private JSpinner inPortSpinner;
     private JSpinner outPortSpinner;
+    private JSpinner refreshRateSpinner;
+    private JSpinner keepAliveIntervalSpinner;
+
+    private JCheckBox enableUnicastCheckBox;
+    private JCheckBox enableMergeCheckBox;
+
+    private JComboBox mergeModeCombo;
+    private JSpinner localPrioritySpinner;
+    private JSpinner sourceTimeoutSpinner;
 
     private JComboBox broadcastAddressCombo;
 
@@ -192,6 +201,90 @@ public class PrefsView implements ViewInterface {
         outPortLabel.setLabelFor(this.outPortSpinner);
         serverPrefPanel.add(this.outPortSpinner, constraints);
 
+        // refresh rate
+        constraints.gridx = 0;
+        constraints.gridy = 3;
+        JLabel refreshRateLabel = new JLabel(
+                Messages.getString("prefsview.refreshrate")); //$NON-NLS-1$
+        serverPrefPanel.add(refreshRateLabel, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridy = 3;
+        this.refreshRateSpinner = new JSpinner(
+                this.remoteModel.getRefreshRateSpinnerModel());
+        refreshRateLabel.setLabelFor(this.refreshRateSpinner);
+        serverPrefPanel.add(this.refreshRateSpinner, constraints);
+
+        // keep-alive interval
+        constraints.gridx = 0;
+        constraints.gridy = 4;
+        JLabel keepAliveIntervalLabel = new JLabel(
+                Messages.getString("prefsview.keepalive")); //$NON-NLS-1$
+        serverPrefPanel.add(keepAliveIntervalLabel, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridy = 4;
+        this.keepAliveIntervalSpinner = new JSpinner(
+                this.remoteModel.getKeepAliveIntervalSpinnerModel());
+        keepAliveIntervalLabel.setLabelFor(this.keepAliveIntervalSpinner);
+        serverPrefPanel.add(this.keepAliveIntervalSpinner, constraints);
+
+        // unicast
+        constraints.gridx = 0;
+        constraints.gridy = 5;
+        this.enableUnicastCheckBox = new JCheckBox(
+                Messages.getString("prefsview.unicast"), this.remoteModel.isUnicastEnabled()); //$NON-NLS-1$
+        serverPrefPanel.add(this.enableUnicastCheckBox, constraints);
+
+        // merge
+        constraints.gridx = 0;
+        constraints.gridy = 6;
+        this.enableMergeCheckBox = new JCheckBox(
+                Messages.getString("prefsview.merge"), this.remoteModel.isMergeEnabled()); //$NON-NLS-1$
+        serverPrefPanel.add(this.enableMergeCheckBox, constraints);
+
+        // merge mode
+        constraints.gridx = 0;
+        constraints.gridy = 7;
+        JLabel mergeModeLabel = new JLabel(
+                Messages.getString("prefsview.merge.mode")); //$NON-NLS-1$
+        serverPrefPanel.add(mergeModeLabel, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridy = 7;
+        this.mergeModeCombo = new JComboBox(
+                this.remoteModel.getMergeModeComboModel());
+        mergeModeLabel.setLabelFor(this.mergeModeCombo);
+        serverPrefPanel.add(this.mergeModeCombo, constraints);
+
+        // local priority
+        constraints.gridx = 0;
+        constraints.gridy = 8;
+        JLabel localPriorityLabel = new JLabel(
+                Messages.getString("prefsview.merge.priority")); //$NON-NLS-1$
+        serverPrefPanel.add(localPriorityLabel, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridy = 8;
+        this.localPrioritySpinner = new JSpinner(
+                this.remoteModel.getLocalPrioritySpinnerModel());
+        localPriorityLabel.setLabelFor(this.localPrioritySpinner);
+        serverPrefPanel.add(this.localPrioritySpinner, constraints);
+
+        // source timeout
+        constraints.gridx = 0;
+        constraints.gridy = 9;
+        JLabel sourceTimeoutLabel = new JLabel(
+                Messages.getString("prefsview.merge.timeout")); //$NON-NLS-1$
+        serverPrefPanel.add(sourceTimeoutLabel, constraints);
+
+        constraints.gridx = 1;
+        constraints.gridy = 9;
+        this.sourceTimeoutSpinner = new JSpinner(
+                this.remoteModel.getSourceTimeoutSpinnerModel());
+        sourceTimeoutLabel.setLabelFor(this.sourceTimeoutSpinner);
+        serverPrefPanel.add(this.sourceTimeoutSpinner, constraints);
+
         return serverPrefPanel;
     }
 
@@ -374,6 +467,50 @@ public class PrefsView implements ViewInterface {
         this.enableHttpServerCheckBox.removeActionListener(actionListener);
     }
 
+    /**
+     * Add an Action Listener to the Enable unicast checkbox.
+     *
+     * @param actionListener
+     *            the listener to add to the checkbox
+     */
+    public void addEnableUnicastCheckBoxListener(
+            final ActionListener actionListener) {
+        this.enableUnicastCheckBox.addActionListener(actionListener);
+    }
+
+    /**
+     * Removes an Action Listener to the Enable unicast checkbox.
+     *
+     * @param actionListener
+     *            the listener to remove to the checkbox
+     */
+    public void removeEnableUnicastCheckBoxListener(
+            final ActionListener actionListener) {
+        this.enableUnicastCheckBox.removeActionListener(actionListener);
+    }
+
+    /**
+     * Add an Action Listener to the Enable merge checkbox.
+     *
+     * @param actionListener
+     *            the listener to add to the checkbox
+     */
+    public void addEnableMergeCheckBoxListener(
+            final ActionListener actionListener) {
+        this.enableMergeCheckBox.addActionListener(actionListener);
+    }
+
+    /**
+     * Removes an Action Listener to the Enable merge checkbox.
+     *
+     * @param actionListener
+     *            the listener to remove to the checkbox
+     */
+    public void removeEnableMergeCheckBoxListener(
+            final ActionListener actionListener) {
+        this.enableMergeCheckBox.removeActionListener(actionListener);
+    }
+
     /**
      * Add a {@link java.awt.event.ActionListener} to the lang combobox.
      *
@@ -0,0 +1,217 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A log {@link Handler} that never blocks the threads that log. The records
+ * are put in a bounded ring without lock and a background thread takes them
+ * out periodically, to give them by batches to a {@link Listener} on the
+ * event dispatch thread.
+ *
+ * When the ring is nearly full, the records under the {@link Level#WARNING}
+ * level are dropped, and all of them are dropped when it is full. The
+ * records are also dropped, oldest first, when the event dispatch thread
+ * does not keep up. The number of dropped records is given to the listener
+ * with the next batch.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * Receives the published records.
+     */
+    public interface Listener {
+        /**
+         * Called on the event dispatch thread with the records published
+         * since the previous call.
+         *
+         * @param records
+         *            the records, in the order they were published
+         * @param droppedCount
+         *            the number of records dropped since the previous call
+         */
+        void logRecordsPublished(List<LogRecord> records, long droppedCount);
+    }
+
+    /**
+     * default number of records waiting to be delivered, a power of 2.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long DRAIN_DELAY = 100;
+    private static final String THREAD_NAME = "Elios logs";
+
+    private final AtomicReferenceArray<LogRecord> ring;
+    private final int mask;
+    private final int warningThreshold;
+
+    // next slot to claim, shared by the logging threads
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read, only written by the consumer thread
+    private volatile long head;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicBoolean delivering = new AtomicBoolean();
+
+    // only used by the consumer thread
+    private final ArrayDeque<LogRecord> pending = new ArrayDeque<LogRecord>();
+
+    private final Listener listener;
+    private final ScheduledExecutorService consumer;
+
+    /**
+     * Constructs a handler with the default capacity.
+     *
+     * @param listener
+     *            the listener receiving the records
+     */
+    public AsyncLogHandler(final Listener listener) {
+        this(listener, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a handler.
+     *
+     * @param listener
+     *            the listener receiving the records
+     * @param capacity
+     *            the number of records waiting to be delivered, a power of 2
+     */
+    public AsyncLogHandler(final Listener listener, final int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be a power of 2");
+        }
+        this.listener = listener;
+        this.ring = new AtomicReferenceArray<LogRecord>(capacity);
+        this.mask = capacity - 1;
+        this.warningThreshold = capacity - capacity / 4;
+
+        consumer = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        consumer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, DRAIN_DELAY, DRAIN_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        boolean important = record.getLevel().intValue() >= Level.WARNING
+                .intValue();
+        while (true) {
+            long claimed = tail.get();
+            long used = claimed - head;
+            if (used > mask || (!important && used >= warningThreshold)) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                ring.lazySet((int) claimed & mask, record);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the records out of the ring and delivers them if the previous
+     * batch was handled by the event dispatch thread.
+     */
+    private void drain() {
+        long next = head;
+        while (true) {
+            int index = (int) next & mask;
+            LogRecord record = ring.get(index);
+            if (record == null) {
+                // the slot is claimed but not yet written, or empty
+                break;
+            }
+            ring.lazySet(index, null);
+            next++;
+            head = next;
+            if (pending.size() > mask) {
+                pending.removeFirst();
+                droppedCount.incrementAndGet();
+            }
+            pending.addLast(record);
+        }
+
+        if (pending.isEmpty() && droppedCount.get() == 0) {
+            return;
+        }
+        if (!delivering.compareAndSet(false, true)) {
+            // the event dispatch thread is late, deliver later
+            return;
+        }
+        final List<LogRecord> batch = new ArrayList<LogRecord>(pending);
+        pending.clear();
+        final long dropped = droppedCount.getAndSet(0);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.logRecordsPublished(batch, dropped);
+                } finally {
+                    delivering.set(false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        // records are delivered by the consumer thread
+    }
+
+    @Override
+    public void close() {
+        consumer.shutdown();
+    }
+}
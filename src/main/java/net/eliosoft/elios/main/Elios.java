@@ -45,17 +45,23 @@ import javax.swing.event.ChangeListener;
 
 import net.eliosoft.elios.gui.controllers.CuesController;
 import net.eliosoft.elios.gui.controllers.DMXController;
+import net.eliosoft.elios.gui.controllers.DMXMonitorController;
+import net.eliosoft.elios.gui.controllers.InputStatsController;
 import net.eliosoft.elios.gui.controllers.LogsController;
 import net.eliosoft.elios.gui.controllers.PrefsController;
 import net.eliosoft.elios.gui.controllers.RemoteController;
+import net.eliosoft.elios.gui.models.DMXMonitorModel;
 import net.eliosoft.elios.gui.models.DMXTableModel;
+import net.eliosoft.elios.gui.models.InputStatsTableModel;
 import net.eliosoft.elios.gui.models.LocaleComboBoxModel;
 import net.eliosoft.elios.gui.models.RemoteModel;
 import net.eliosoft.elios.gui.models.RemoteModel.BroadCastAddress;
 import net.eliosoft.elios.gui.models.UpdateModel;
 import net.eliosoft.elios.gui.views.AboutView;
 import net.eliosoft.elios.gui.views.CuesView;
+import net.eliosoft.elios.gui.views.DMXMonitorView;
 import net.eliosoft.elios.gui.views.DMXView;
+import net.eliosoft.elios.gui.views.InputStatsView;
 import net.eliosoft.elios.gui.views.LogsLineView;
 import net.eliosoft.elios.gui.views.LogsView;
 import net.eliosoft.elios.gui.views.Messages;
@@ -64,7 +70,11 @@ import net.eliosoft.elios.gui.views.RemoteView;
 import net.eliosoft.elios.gui.views.ViewInterface;
 import net.eliosoft.elios.main.ApplicationState.State;
 import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.CueListsManager;
 import net.eliosoft.elios.server.CuesManager;
+import net.eliosoft.elios.server.DmxMergeSource;
+import net.eliosoft.elios.server.DmxMerger;
+import net.eliosoft.elios.server.DmxRefreshEngine;
 import net.eliosoft.elios.server.HttpServerManager;
 import net.eliosoft.elios.server.ReleaseCode;
 import net.eliosoft.elios.server.ReleaseInformation;
@@ -94,10 +104,18 @@ public final class Elios {
     private static final String ELIOS_DATA_FOLDER = System
             .getProperty("user.home") + File.separator + ".elios";
 
-    /** Filename of the file used for cues list persistence. **/
+    /** Filename of the JSON cues file of the previous versions. **/
     private static final String CUESLIST_FILENAME = ELIOS_DATA_FOLDER
             + File.separator + "elios.cues";
 
+    /** Filename of the file used for cues persistence. **/
+    private static final String SHOW_FILENAME = ELIOS_DATA_FOLDER
+            + File.separator + "elios.show";
+
+    /** Filename of the file used for cue lists persistence. **/
+    private static final String CUELISTS_FILENAME = ELIOS_DATA_FOLDER
+            + File.separator + "elios.cuelists";
+
     /**
      * The logger.
      */
@@ -184,6 +202,18 @@ public final class Elios {
             // used to make relation between view and model
             new DMXController(dmxTableModel, dmxView);
 
+            final DMXMonitorModel dmxMonitorModel = new DMXMonitorModel(
+                    artNetServerManager);
+            DMXMonitorView dmxMonitorView = new DMXMonitorView(dmxMonitorModel);
+            // used to make relation between view and model
+            new DMXMonitorController(dmxMonitorModel, dmxMonitorView);
+
+            final InputStatsTableModel inputStatsModel = new InputStatsTableModel(
+                    artNetServerManager.getInputMonitor());
+            InputStatsView inputStatsView = new InputStatsView(inputStatsModel);
+            // used to make relation between view and model
+            new InputStatsController(inputStatsModel, inputStatsView);
+
             CuesView cuesView = new CuesView(remoteModel);
             // used to make relation between view and model
             new CuesController(remoteModel, cuesView);
@@ -191,9 +221,8 @@ public final class Elios {
             LogsLineView logsLineView = new LogsLineView(remoteModel);
             AboutView aboutView = new AboutView();
 
-            for (Logger l : LoggersManager.getInstance().getLoggersList()) {
-                remoteModel.getLogsListModel().addLogger(l);
-            }
+            LoggersManager.getInstance().addHandler(
+                    remoteModel.getLogsListModel().getHandler());
 
             final JFrame frame = new JFrame(Messages.getString("ui.title"));
             frame.setIconImages(Arrays.<Image> asList(ICONS));
@@ -214,6 +243,8 @@ public final class Elios {
             addViewToTab(tabbedPane, remoteView);
             addViewToTab(tabbedPane, cuesView);
             addViewToTab(tabbedPane, dmxView);
+            addViewToTab(tabbedPane, dmxMonitorView);
+            addViewToTab(tabbedPane, inputStatsView);
             addViewToTab(tabbedPane, prefsView);
             addViewToTab(tabbedPane, logsView);
             addViewToTab(tabbedPane, aboutView);
@@ -237,6 +268,8 @@ public final class Elios {
                             persistRemoteModel(remoteModel, prefs);
                             persistLocale(prefs, localeModel);
                             dmxTableModel.dispose();
+                            dmxMonitorModel.dispose();
+                            inputStatsModel.dispose();
                             artNetServerManager.stopArtNet();
                             HttpServerManager.getInstance().stopHttp();
                         }
@@ -378,6 +411,30 @@ public final class Elios {
                 ArtNetServerManager.DEFAULT_ARTNET_PORT));
         model.setOutputPort(prefs.getInt("server.outport",
                 ArtNetServerManager.DEFAULT_ARTNET_PORT));
+        model.setRefreshRate(prefs.getInt("server.refresh.rate",
+                DmxRefreshEngine.DEFAULT_REFRESH_RATE));
+        model.setKeepAliveInterval(prefs.getInt("server.keepalive.interval",
+                ArtNetServerManager.DEFAULT_KEEP_ALIVE_INTERVAL));
+        model.setUnicastEnabled(prefs.getBoolean("server.unicast.enable",
+                true));
+        model.setMergeEnabled(prefs.getBoolean("server.merge.enable", false));
+        model.setMergeMode(Enum.valueOf(DmxMerger.MergeMode.class,
+                prefs.get("server.merge.mode", DmxMerger.MergeMode.HTP.name())));
+        model.setLocalPriority(prefs.getInt("server.merge.priority",
+                DmxMergeSource.DEFAULT_PRIORITY));
+        model.setSourceTimeout(prefs.getInt("server.merge.timeout",
+                DmxMerger.DEFAULT_SOURCE_TIMEOUT));
+
+        // applied before the http server is started
+        HttpServerManager httpServerManager = HttpServerManager.getInstance();
+        httpServerManager.setThreadsCount(Math.max(2, prefs.getInt(
+                "server.httpserver.threads",
+                HttpServerManager.DEFAULT_THREADS_COUNT)));
+        httpServerManager.setQueueSize(Math.max(1, prefs.getInt(
+                "server.httpserver.queue",
+                HttpServerManager.DEFAULT_QUEUE_SIZE)));
+        httpServerManager.setBacklog(prefs.getInt("server.httpserver.backlog",
+                HttpServerManager.DEFAULT_BACKLOG));
 
         model.setHttpServerEnabled(prefs.getBoolean("server.httpserver.enable",
                 false));
@@ -387,9 +444,36 @@ public final class Elios {
                 HttpServerManager.DEFAULT_HTTP_PORT));
 
         try {
-            model.load(new FileInputStream(CUESLIST_FILENAME));
+            File dir = new File(ELIOS_DATA_FOLDER);
+            if (!dir.isDirectory()) { // create root folder if needed
+                dir.mkdir();
+            }
+            File showFile = new File(SHOW_FILENAME);
+            if (!showFile.isFile() && new File(CUESLIST_FILENAME).isFile()) {
+                // migrated to the show file when it is opened
+                model.load(new FileInputStream(CUESLIST_FILENAME));
+            }
+            File badShowFile = model.openShow(showFile);
+            if (badShowFile != null) {
+                JOptionPane.showMessageDialog(null, MessageFormat.format(
+                        Messages.getString("error.show.unreadable.message"),
+                        badShowFile.getPath()), Messages
+                        .getString("error.show.unreadable.title"),
+                        JOptionPane.WARNING_MESSAGE);
+            }
         } catch (IOException e) {
             LOGGER.warning("Can not load cues " + e.getMessage());
+            JOptionPane.showMessageDialog(null, MessageFormat.format(
+                    Messages.getString("error.show.cannotopen.message"), e
+                            .getMessage()), Messages
+                    .getString("error.show.cannotopen.title"),
+                    JOptionPane.ERROR_MESSAGE);
+        }
+        try {
+            CueListsManager.getInstance().load(
+                    new FileInputStream(CUELISTS_FILENAME));
+        } catch (IOException e) {
+            LOGGER.warning("Can not load cue lists " + e.getMessage());
         }
 
         return model;
@@ -412,12 +496,27 @@ public final class Elios {
 
         prefs.putInt("server.inport", model.getInPort());
         prefs.putInt("server.outport", model.getOutPort());
+        prefs.putInt("server.refresh.rate", model.getRefreshRate());
+        prefs.putInt("server.keepalive.interval",
+                model.getKeepAliveInterval());
+        prefs.putBoolean("server.unicast.enable", model.isUnicastEnabled());
+        prefs.putBoolean("server.merge.enable", model.isMergeEnabled());
+        prefs.put("server.merge.mode", model.getMergeMode().name());
+        prefs.putInt("server.merge.priority", model.getLocalPriority());
+        prefs.putInt("server.merge.timeout", model.getSourceTimeout());
 
         prefs.putBoolean("server.httpserver.enable",
                 model.isHttpServerEnabled());
         prefs.putBoolean("server.additivemode.enable",
                 model.isAdditiveModeEnabled());
         prefs.putInt("server.httpserver.port", model.getHttpPort());
+        HttpServerManager httpServerManager = HttpServerManager.getInstance();
+        prefs.putInt("server.httpserver.threads", httpServerManager
+                .getThreadsCount());
+        prefs.putInt("server.httpserver.queue", httpServerManager
+                .getQueueSize());
+        prefs.putInt("server.httpserver.backlog", httpServerManager
+                .getBacklog());
 
         try {
             File dir = new File(ELIOS_DATA_FOLDER);
@@ -425,10 +524,17 @@ public final class Elios {
                 dir.mkdir();
             }
 
-            model.persist(new FileOutputStream(CUESLIST_FILENAME));
+            model.closeShow();
         } catch (IOException e) {
             LOGGER.warning("Can not persist current cues : " + e.getMessage());
         }
+        try {
+            CueListsManager.getInstance().persist(
+                    new FileOutputStream(CUELISTS_FILENAME));
+        } catch (IOException e) {
+            LOGGER.warning("Can not persist current cue lists : "
+                    + e.getMessage());
+        }
 
     }
 
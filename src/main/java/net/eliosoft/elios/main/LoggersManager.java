@@ -22,10 +22,12 @@ package net.eliosoft.elios.main;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.logging.Handler;
 import java.util.logging.Logger;
 
 /**
- * The Manager of the Application Loggers.
+ * The Manager of the Application Loggers. The handlers added to the manager
+ * receive the records of all the loggers, including the ones created later.
  *
  * @author Jeremie GASTON-RAOUL
  */
@@ -34,6 +36,8 @@ public class LoggersManager {
 
     private HashMap<String, Logger> loggersMap = new HashMap<String, Logger>();
 
+    private final List<Handler> handlers = new ArrayList<Handler>();
+
     private LoggersManager() {
     }
 
@@ -56,11 +60,29 @@ public class LoggersManager {
      *            the name of the logger to get
      * @return the logger with the corresponding name
      */
-    public Logger getLogger(final String loggerName) {
-        if (!loggersMap.containsKey(loggerName)) {
-            this.loggersMap.put(loggerName, Logger.getLogger(loggerName));
+    public synchronized Logger getLogger(final String loggerName) {
+        Logger logger = this.loggersMap.get(loggerName);
+        if (logger == null) {
+            logger = Logger.getLogger(loggerName);
+            for (Handler handler : this.handlers) {
+                logger.addHandler(handler);
+            }
+            this.loggersMap.put(loggerName, logger);
+        }
+        return logger;
+    }
+
+    /**
+     * adds a handler to all the loggers of the application.
+     *
+     * @param handler
+     *            the handler to add
+     */
+    public synchronized void addHandler(final Handler handler) {
+        this.handlers.add(handler);
+        for (Logger logger : this.loggersMap.values()) {
+            logger.addHandler(handler);
         }
-        return this.loggersMap.get(loggerName);
     }
 
     /**
@@ -68,7 +90,7 @@ public class LoggersManager {
      *
      * @return a list containing all the loggers
      */
-    public List<Logger> getLoggersList() {
+    public synchronized List<Logger> getLoggersList() {
         return new ArrayList<Logger>(this.loggersMap.values());
     }
 }
@@ -0,0 +1,286 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps statistics on the ArtDmx packets received for each source and each
+ * universe : packet rate, lost packets (gaps in the sequence ids), packets
+ * received out of order, last reception time and jitter of the arrival
+ * times. They help to spot a flaky node or a congested network.
+ *
+ * The statistics are updated without lock by the thread that receives the
+ * packets, there must be only one such thread. They can be read from any
+ * thread.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class ArtNetInputMonitor {
+
+    private static final int SEQUENCE_IDS_COUNT = 255;
+    private static final int MAX_GAP = SEQUENCE_IDS_COUNT / 2;
+    private static final long RATE_PERIOD = 1000000000L;
+    private static final int JITTER_GAIN = 16;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private static final SourceStats[] NO_SOURCE = new SourceStats[0];
+
+    /**
+     * The statistics of the packets of a source for a universe.
+     */
+    public static final class SourceStats {
+        private final InetAddress source;
+        private final int subnet;
+        private final int universe;
+
+        // written by the receiving thread only
+        private volatile long packetsCount;
+        private volatile long lostPacketsCount;
+        private volatile long outOfOrderPacketsCount;
+        private volatile long lastSeen;
+        private volatile double packetRate;
+        private volatile double jitter;
+
+        private int lastSequenceId;
+        private long lastArrival;
+        private long lastInterval = -1;
+        private long rateStart;
+        private int ratePacketsCount;
+
+        private SourceStats(final InetAddress source, final int subnet,
+                final int universe) {
+            this.source = source;
+            this.subnet = subnet;
+            this.universe = universe;
+        }
+
+        private void packetReceived(final int sequenceId, final long nanoTime) {
+            packetsCount++;
+            lastSeen = System.currentTimeMillis();
+
+            // 0 means the source does not number its packets
+            if (sequenceId != 0 && lastSequenceId != 0) {
+                int delta = (sequenceId - lastSequenceId + SEQUENCE_IDS_COUNT)
+                        % SEQUENCE_IDS_COUNT;
+                if (delta > MAX_GAP) {
+                    outOfOrderPacketsCount++;
+                } else {
+                    if (delta > 1) {
+                        lostPacketsCount += delta - 1;
+                    }
+                    lastSequenceId = sequenceId;
+                }
+            } else {
+                lastSequenceId = sequenceId;
+            }
+
+            if (packetsCount == 1) {
+                rateStart = nanoTime;
+            } else {
+                // mean deviation of the intervals, as in RFC 3550
+                long interval = nanoTime - lastArrival;
+                if (lastInterval >= 0) {
+                    double deviation = Math.abs(interval - lastInterval)
+                            / NANOS_PER_MILLI;
+                    jitter += (deviation - jitter) / JITTER_GAIN;
+                }
+                lastInterval = interval;
+            }
+            lastArrival = nanoTime;
+
+            ratePacketsCount++;
+            long elapsed = nanoTime - rateStart;
+            if (elapsed >= RATE_PERIOD) {
+                packetRate = ratePacketsCount * 1e9 / elapsed;
+                rateStart = nanoTime;
+                ratePacketsCount = 0;
+            }
+        }
+
+        /**
+         * Returns the address of the source.
+         *
+         * @return the address, null if it is unknown
+         */
+        public InetAddress getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the subnet of the packets.
+         *
+         * @return the subnet
+         */
+        public int getSubnet() {
+            return subnet;
+        }
+
+        /**
+         * Returns the universe of the packets.
+         *
+         * @return the universe
+         */
+        public int getUniverse() {
+            return universe;
+        }
+
+        /**
+         * Returns the number of received packets.
+         *
+         * @return the number of packets
+         */
+        public long getPacketsCount() {
+            return packetsCount;
+        }
+
+        /**
+         * Returns the number of packets missing in the sequence ids.
+         *
+         * @return the number of lost packets
+         */
+        public long getLostPacketsCount() {
+            return lostPacketsCount;
+        }
+
+        /**
+         * Returns the number of packets received after a later one.
+         *
+         * @return the number of packets out of order
+         */
+        public long getOutOfOrderPacketsCount() {
+            return outOfOrderPacketsCount;
+        }
+
+        /**
+         * Returns the time of the last received packet.
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * Returns the number of packets received per second, measured on
+         * the last second.
+         *
+         * @return the packet rate in Hz
+         */
+        public double getPacketRate() {
+            return packetRate;
+        }
+
+        /**
+         * Returns the mean deviation of the intervals between the packets.
+         *
+         * @return the jitter in milliseconds
+         */
+        public double getJitter() {
+            return jitter;
+        }
+    }
+
+    private final int universesPerSubnet;
+
+    // the sources of each universe, replaced when a source is added
+    private final AtomicReferenceArray<SourceStats[]> sources;
+
+    /**
+     * Constructs a monitor.
+     *
+     * @param subnetsCount
+     *            the number of subnets
+     * @param universesPerSubnet
+     *            the number of universes per subnet
+     */
+    public ArtNetInputMonitor(final int subnetsCount,
+            final int universesPerSubnet) {
+        this.universesPerSubnet = universesPerSubnet;
+        this.sources = new AtomicReferenceArray<SourceStats[]>(subnetsCount
+                * universesPerSubnet);
+        reset();
+    }
+
+    /**
+     * Counts a received ArtDmx packet.
+     *
+     * @param source
+     *            the address of the sender, null if unknown
+     * @param index
+     *            the universe index, subnet * universes per subnet +
+     *            universe
+     * @param sequenceId
+     *            the sequence id of the packet
+     * @param nanoTime
+     *            the reception time, from {@link System#nanoTime()}
+     */
+    public void packetReceived(final InetAddress source, final int index,
+            final int sequenceId, final long nanoTime) {
+        SourceStats[] universeSources = sources.get(index);
+        SourceStats stats = null;
+        for (int i = 0; i < universeSources.length; i++) {
+            InetAddress address = universeSources[i].source;
+            if (address == source
+                    || (address != null && address.equals(source))) {
+                stats = universeSources[i];
+                break;
+            }
+        }
+        if (stats == null) {
+            stats = new SourceStats(source, index / universesPerSubnet, index
+                    % universesPerSubnet);
+            SourceStats[] updated = new SourceStats[universeSources.length + 1];
+            System.arraycopy(universeSources, 0, updated, 0,
+                    universeSources.length);
+            updated[universeSources.length] = stats;
+            // fails if reset meanwhile, the source is added again later
+            sources.compareAndSet(index, universeSources, updated);
+        }
+        stats.packetReceived(sequenceId & 0xff, nanoTime);
+    }
+
+    /**
+     * Returns the statistics of all the sources, sorted by universe.
+     *
+     * @return the statistics, updated while they are read
+     */
+    public List<SourceStats> getSourcesStats() {
+        List<SourceStats> stats = new ArrayList<SourceStats>();
+        for (int index = 0; index < sources.length(); index++) {
+            for (SourceStats source : sources.get(index)) {
+                stats.add(source);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Forgets all the sources and their statistics.
+     */
+    public void reset() {
+        for (int index = 0; index < sources.length(); index++) {
+            sources.set(index, NO_SOURCE);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * Discovers the ArtNet nodes of the network. An ArtPoll packet is broadcasted
+ * periodically and the ArtPollReply packets of the nodes are used to build a
+ * routing table from each universe to the nodes that output it. A node with
+ * more than 4 ports sends a reply per group of 4 ports, told apart by their
+ * bind index, so the universes are kept per address and bind index. The
+ * table is rebuilt on each poll so nodes that stop replying are forgotten.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class ArtNetNodeDiscovery {
+
+    /**
+     * default interval between two polls in milliseconds.
+     */
+    public static final int DEFAULT_POLL_INTERVAL = 3000;
+
+    /**
+     * number of polls without reply after which a node is forgotten.
+     */
+    private static final int MISSED_POLLS_BEFORE_EXPIRY = 3;
+
+    private static final int MAX_PORTS = 4;
+    private static final int NIBBLE_MASK = 0x0f;
+
+    private static final InetAddress[] NO_NODE = new InetAddress[0];
+
+    private static final String THREAD_NAME = "Elios ArtNet discovery";
+
+    /**
+     * The address and the bind index of a reply.
+     */
+    private static final class NodeKey {
+        private final InetAddress address;
+        private final int bindIndex;
+
+        private NodeKey(final InetAddress address, final int bindIndex) {
+            this.address = address;
+            this.bindIndex = bindIndex;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof NodeKey)) {
+                return false;
+            }
+            NodeKey other = (NodeKey) o;
+            return address.equals(other.address)
+                    && bindIndex == other.bindIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return address.hashCode() * 31 + bindIndex;
+        }
+    }
+
+    /**
+     * A node, or a group of ports of a node, that replied to a poll.
+     */
+    private static final class Node {
+        private final String name;
+        private final int[] universes;
+        private final long lastSeen;
+
+        private Node(final String name, final int[] universes,
+                final long lastSeen) {
+            this.name = name;
+            this.universes = universes;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final int universesCount;
+    private final int universesPerSubnet;
+
+    private final Map<NodeKey, Node> nodes = new ConcurrentHashMap<NodeKey, Node>();
+
+    private volatile InetAddress[][] routes;
+
+    private int pollInterval = DEFAULT_POLL_INTERVAL;
+
+    private ScheduledExecutorService scheduler = null;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(ArtNetNodeDiscovery.class.getName());
+
+    /**
+     * Constructs a stopped discovery.
+     *
+     * @param subnetsCount
+     *            the number of subnets
+     * @param universesPerSubnet
+     *            the number of universes per subnet
+     */
+    public ArtNetNodeDiscovery(final int subnetsCount,
+            final int universesPerSubnet) {
+        this.universesPerSubnet = universesPerSubnet;
+        this.universesCount = subnetsCount * universesPerSubnet;
+        this.routes = new InetAddress[universesCount][];
+    }
+
+    /**
+     * Starts polling the network with the given transport.
+     *
+     * @param transport
+     *            the transport used to broadcast the polls
+     */
+    public synchronized void start(final ArtNetTransport transport) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuildRoutes(System.currentTimeMillis());
+                    transport.broadcastPoll();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "ArtNet poll failed", e);
+                }
+            }
+        }, 0, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling the network and forgets the known nodes.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        nodes.clear();
+        routes = new InetAddress[universesCount][];
+    }
+
+    /**
+     * Sets the interval between two polls. Applied on next start.
+     *
+     * @param pollInterval
+     *            the interval in milliseconds
+     */
+    public synchronized void setPollInterval(final int pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Registers the reply of a node. Called from the receive thread.
+     *
+     * @param address
+     *            the address of the node
+     * @param shortName
+     *            the short name of the node
+     * @param subSwitch
+     *            the subnet of the ports of the node
+     * @param dmxOuts
+     *            the universe of each output port of the node
+     * @param numPorts
+     *            the number of ports of the node
+     * @param bindIndex
+     *            the index of the reply among the replies of the node, 1
+     *            for the first one
+     */
+    public void nodeReplied(final InetAddress address,
+            final String shortName, final int subSwitch,
+            final byte[] dmxOuts, final int numPorts, final int bindIndex) {
+        if (address == null || isLocalAddress(address)) {
+            return;
+        }
+        int subnet = subSwitch & NIBBLE_MASK;
+        int portsCount = Math.min(Math.min(numPorts, MAX_PORTS),
+                dmxOuts == null ? 0 : dmxOuts.length);
+        int[] universes = new int[portsCount];
+        for (int i = 0; i < portsCount; i++) {
+            universes[i] = subnet * universesPerSubnet
+                    + (dmxOuts[i] & NIBBLE_MASK);
+        }
+        Node previous = nodes.put(new NodeKey(address, bindIndex), new Node(
+                shortName, universes, System.currentTimeMillis()));
+        if (previous == null) {
+            logger.info("ArtNet node discovered : " + shortName + " ("
+                    + address.getHostAddress() + ", bind " + bindIndex + ")");
+            rebuildRoutes(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns the routing table. The array is indexed by
+     * {@code subnet * universesPerSubnet + universe}, a null or empty entry
+     * means that no node outputs this universe. The returned table must not
+     * be modified.
+     *
+     * @return the routing table
+     */
+    public InetAddress[][] getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Returns the addresses of the known nodes.
+     *
+     * @return the addresses of the known nodes
+     */
+    public List<InetAddress> getNodes() {
+        LinkedHashSet<InetAddress> addresses = new LinkedHashSet<InetAddress>();
+        for (NodeKey key : nodes.keySet()) {
+            addresses.add(key.address);
+        }
+        return new ArrayList<InetAddress>(addresses);
+    }
+
+    private synchronized void rebuildRoutes(final long now) {
+        long expiry = (long) pollInterval * MISSED_POLLS_BEFORE_EXPIRY;
+        List<List<InetAddress>> table = new ArrayList<List<InetAddress>>(
+                universesCount);
+        for (int i = 0; i < universesCount; i++) {
+            table.add(null);
+        }
+        Iterator<Map.Entry<NodeKey, Node>> it = nodes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<NodeKey, Node> entry = it.next();
+            Node node = entry.getValue();
+            InetAddress address = entry.getKey().address;
+            if (now - node.lastSeen > expiry) {
+                it.remove();
+                logger.info("ArtNet node lost : " + node.name + " ("
+                        + address.getHostAddress() + ", bind "
+                        + entry.getKey().bindIndex + ")");
+                continue;
+            }
+            for (int universe : node.universes) {
+                List<InetAddress> addresses = table.get(universe);
+                if (addresses == null) {
+                    addresses = new ArrayList<InetAddress>();
+                    table.set(universe, addresses);
+                }
+                if (!addresses.contains(address)) {
+                    addresses.add(address);
+                }
+            }
+        }
+
+        InetAddress[][] newRoutes = new InetAddress[universesCount][];
+        for (int i = 0; i < universesCount; i++) {
+            List<InetAddress> addresses = table.get(i);
+            newRoutes[i] = addresses == null ? NO_NODE : addresses
+                    .toArray(new InetAddress[addresses.size()]);
+        }
+        routes = newRoutes;
+    }
+
+    private static boolean isLocalAddress(final InetAddress address) {
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+}
@@ -19,15 +19,19 @@
 
 package net.eliosoft.elios.server;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.eliosoft.elios.main.LoggersManager;
 import net.eliosoft.elios.server.events.AdditiveModeValueChangedEvent;
@@ -35,10 +39,6 @@ import net.eliosoft.elios.server.events.SubnetValueChangedEvent;
 import net.eliosoft.elios.server.events.UniverseValueChangedEvent;
 import net.eliosoft.elios.server.listeners.ArtNetServerManagerListener;
 import artnet4j.ArtNetException;
-import artnet4j.ArtNetServer;
-import artnet4j.events.ArtNetServerListener;
-import artnet4j.packets.ArtDmxPacket;
-import artnet4j.packets.ArtNetPacket;
 
 /**
  * The Manager of the Artnet Server.
@@ -57,52 +57,179 @@ public class ArtNetServerManager {
     /**
      * default value for ArtNet port.
      */
-    public static final int DEFAULT_ARTNET_PORT = ArtNetServer.DEFAULT_PORT;
+    public static final int DEFAULT_ARTNET_PORT = ArtNetTransport.DEFAULT_PORT;
 
-    private ArtNetServer artnetServer = null;
+    /**
+     * default value for the keep-alive interval in milliseconds.
+     */
+    public static final int DEFAULT_KEEP_ALIVE_INTERVAL = 1000;
+
+    /**
+     * name of the merge source of the local output.
+     */
+    public static final String LOCAL_SOURCE_NAME = "local";
+
+    /**
+     * name prefix of the merge sources of the ArtNet senders, the name of a
+     * source is this prefix followed by {@code /} and the address of the
+     * sender.
+     */
+    public static final String ARTNET_SOURCE_NAME = "artnet";
+
+    /**
+     * The merge source of an ArtNet sender and the frames it sent.
+     */
+    private static final class ArtNetSender {
+        private final DmxMergeSource source;
+        private final DmxFrameStore frames = new DmxFrameStore(
+                ALL_UNIVERSES_COUNT, DMX_CHANNELS_COUNT);
+
+        private ArtNetSender(final String name, final int timeout) {
+            this.source = new DmxMergeSource(name, ALL_UNIVERSES_COUNT,
+                    DmxMergeSource.DEFAULT_PRIORITY, timeout);
+        }
+    }
+
+    private volatile ArtNetTransport transport = null;
     private int inPort = ArtNetServerManager.DEFAULT_ARTNET_PORT;
     private int outPort = ArtNetServerManager.DEFAULT_ARTNET_PORT;
-    private String broadcastAddress = ArtNetServer.DEFAULT_BROADCAST_IP;
-    private int serverSubnet = 0;
-    private int serverUniverse = 0;
-    private int sequenceId = 0;
-    private boolean additiveModeEnabled = false;
-
-    private static final Pattern COMMANDLINE_PATTERN = Pattern
-            .compile(
-                    "^(((\\d{1,3})(/(\\d{1,3}))?)([\\+\\-]((\\d{1,3})(/(\\d{1,3}))?))*)(@(F|(D?)(\\d{1,3}))){0,1}$",
-                    Pattern.CASE_INSENSITIVE);
-    private static final Pattern CHANNEL_PATTERN = Pattern.compile(
-            "([\\+\\-]?)(\\d{1,3})(/(\\d{1,3}))?", Pattern.CASE_INSENSITIVE);
-
-    private static final int COMMAND_LINE_PATTERN_CHANNEL_GROUP = 1;
-    private static final int COMMAND_LINE_PATTERN_AT_LEVEL_GROUP = 11;
-    private static final int COMMAND_LINE_PATTERN_LEVEL_GROUP = 12;
-    private static final int COMMAND_LINE_PATTERN_PERCENT_GROUP = 13;
-    private static final int COMMAND_LINE_PATTERN_LEVEL_VALUE_GROUP = 14;
-
-    private static final int CHANNEL_PATTERN_EXCEPT_GROUP = 1;
-    private static final int CHANNEL_PATTERN_CHAN1_GROUP = 2;
-    private static final int CHANNEL_PATTERN_CHAN2_GROUP = 4;
-
-    private static final int MIN_CHANNEL_NUMBER = 1;
-    private static final int MAX_CHANNEL_NUMBER = DMX_CHANNELS_COUNT;
-
-    private static final int MAX_DMX_VALUE = 255;
-    private static final int MAX_PERCENT_VALUE = 100;
+    private String broadcastAddress = ArtNetTransport.DEFAULT_BROADCAST_ADDRESS;
+    private volatile int serverSubnet = 0;
+    private volatile int serverUniverse = 0;
+    private volatile boolean additiveModeEnabled = false;
+    private volatile int keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL;
+    private volatile boolean unicastEnabled = true;
+    private volatile boolean mergeEnabled = false;
+    private volatile int sourceTimeout = DmxMerger.DEFAULT_SOURCE_TIMEOUT;
 
     private static final int SUBNET_COUNT = 16;
     private static final int UNIVERSE_COUNT = 16;
+    private static final int ALL_UNIVERSES_COUNT = SUBNET_COUNT
+            * UNIVERSE_COUNT;
+    private static final int UNIVERSE_MASK_LENGTH = ALL_UNIVERSES_COUNT
+            / Long.SIZE;
+    private static final int MAX_SEQUENCE_ID = 255;
+
+    // frames are indexed by subnet * UNIVERSE_COUNT + universe
+    private final DmxFrameStore outputFrames = new DmxFrameStore(
+            ALL_UNIVERSES_COUNT, DMX_CHANNELS_COUNT);
+    private final DmxFrameStore inputFrames = new DmxFrameStore(
+            ALL_UNIVERSES_COUNT, DMX_CHANNELS_COUNT);
+
+    // one bit per universe, index is subnet * UNIVERSE_COUNT + universe
+    private final AtomicLongArray dirtyUniverses = new AtomicLongArray(
+            UNIVERSE_MASK_LENGTH);
+
+    // only accessed by the refresh thread
+    private final long[] activeUniverses = new long[UNIVERSE_MASK_LENGTH];
+    private final long[] universesToSend = new long[UNIVERSE_MASK_LENGTH];
+    private final long[] lastSendTimes = new long[ALL_UNIVERSES_COUNT];
+    private final int[] sequenceIds = new int[ALL_UNIVERSES_COUNT];
+    private final byte[] mergeBuffer = new byte[DMX_CHANNELS_COUNT];
+
+    // values and sequence id of the last merged packet sent for each
+    // universe, used to recognize our own broadcasts in the input. Written
+    // by the refresh thread only : the sequence id is set to 0 while the
+    // values are copied, so the receiving thread can check that it read
+    // consistent values
+    private final byte[][] sentMergedValues = new byte[ALL_UNIVERSES_COUNT][DMX_CHANNELS_COUNT];
+    private final AtomicIntegerArray sentMergedSequenceIds = new AtomicIntegerArray(
+            ALL_UNIVERSES_COUNT);
+
+    private final DmxMerger merger = new DmxMerger(DMX_CHANNELS_COUNT);
+    private final DmxMergeSource localSource = new DmxMergeSource(
+            LOCAL_SOURCE_NAME, ALL_UNIVERSES_COUNT,
+            DmxMergeSource.DEFAULT_PRIORITY, DmxMergeSource.NO_TIMEOUT);
+
+    // the ArtNet senders by source name, each one is merged on its own
+    private final Map<String, ArtNetSender> artNetSenders = new ConcurrentHashMap<String, ArtNetSender>();
+
+    private final DmxFadeEngine fadeEngine = new DmxFadeEngine(outputFrames,
+            new DmxFadeEngine.FrameListener() {
+                @Override
+                public void framePublished(final int index,
+                        final DmxFrame frame) {
+                    outputPublished(index, frame);
+                }
+            });
+
+    private final CuePlayback cuePlayback = new CuePlayback(fadeEngine);
+
+    private final DmxRefreshEngine refreshEngine = new DmxRefreshEngine(
+            new DmxRefreshEngine.RefreshTask() {
+                @Override
+                public void refresh(final long now) {
+                    refreshOutput(now);
+                }
+            });
+
+    private final ArtNetNodeDiscovery nodeDiscovery = new ArtNetNodeDiscovery(
+            SUBNET_COUNT, UNIVERSE_COUNT);
+
+    private final ArtNetInputMonitor inputMonitor = new ArtNetInputMonitor(
+            SUBNET_COUNT, UNIVERSE_COUNT);
+
+    private final ArtNetTransport.Receiver artNetReceiver = new ArtNetTransport.Receiver() {
+        @Override
+        public void dmxReceived(final InetAddress source, final int subnet,
+                final int universe, final int sequenceId,
+                final byte[] dmxData, final int length) {
+            int index = universeIndex(subnet, universe);
+            inputMonitor.packetReceived(source, index, sequenceId, System
+                    .nanoTime());
+            publishInput(inputFrames, index, dmxData, length);
+            if (mergeEnabled
+                    && !isOwnPacket(index, sequenceId, dmxData, length)) {
+                ArtNetSender sender = getArtNetSender(source);
+                DmxFrame frame = publishInput(sender.frames, index, dmxData,
+                        length);
+                if (sender.source.update(index, frame, System
+                        .currentTimeMillis())) {
+                    markDirty(index);
+                }
+            }
+        }
+
+        @Override
+        public void pollReplyReceived(final InetAddress node,
+                final String shortName, final int subSwitch,
+                final byte[] dmxOuts, final int portsCount,
+                final int bindIndex) {
+            nodeDiscovery.nodeReplied(node, shortName, subSwitch, dmxOuts,
+                    portsCount, bindIndex);
+        }
+    };
 
-    private byte[][][] outputDmxArrays = new byte[SUBNET_COUNT][UNIVERSE_COUNT][DMX_CHANNELS_COUNT];
-    private byte[][][] inputDmxArrays = new byte[SUBNET_COUNT][UNIVERSE_COUNT][DMX_CHANNELS_COUNT];
+    private final CommandLineCompiler commandLineCompiler = new CommandLineCompiler();
 
     private final transient Logger logger = LoggersManager.getInstance()
             .getLogger(ArtNetServerManager.class.getName());
 
-    private List<ArtNetServerManagerListener> artnetServerManagerChangedListeners = new ArrayList<ArtNetServerManagerListener>();
+    /**
+     * the topic of the changes of the subnet.
+     */
+    public static final EventBus.Topic<SubnetValueChangedEvent> SUBNET_CHANGED = new EventBus.Topic<SubnetValueChangedEvent>(
+            "subnet changed");
+
+    /**
+     * the topic of the changes of the universe.
+     */
+    public static final EventBus.Topic<UniverseValueChangedEvent> UNIVERSE_CHANGED = new EventBus.Topic<UniverseValueChangedEvent>(
+            "universe changed");
+
+    /**
+     * the topic of the changes of the additive mode.
+     */
+    public static final EventBus.Topic<AdditiveModeValueChangedEvent> ADDITIVE_MODE_CHANGED = new EventBus.Topic<AdditiveModeValueChangedEvent>(
+            "additive mode changed");
+
+    private final EventBus eventBus = EventBus.getInstance();
+
+    // the subscriptions of each listener
+    private final Map<ArtNetServerManagerListener, List<EventBus.Subscription<?>>> listenersSubscriptions = new HashMap<ArtNetServerManagerListener, List<EventBus.Subscription<?>>>();
 
     private ArtNetServerManager() {
+        merger.addSource(localSource);
     }
 
     /**
@@ -119,32 +246,153 @@ public class ArtNetServerManager {
 
     /**
      * send a Dmx Command containing the value of the Dmx array over the
-     * network.
+     * network. The packet is sent by the refresh engine on its next tick.
      */
     public void sendDmxCommand() {
-        ArtDmxPacket artDmxPacket = new ArtDmxPacket();
-        artDmxPacket.setUniverse(this.serverSubnet, this.serverUniverse);
-        artDmxPacket.setSequenceID(this.sequenceId % 255);
-        artDmxPacket.setDMX(getCurrentOutputDmxArray(), DMX_CHANNELS_COUNT);
-        this.artnetServer.broadcastPacket(artDmxPacket);
-        logger.info("broadcast DMX packet sent");
+        sendDmxCommand(this.serverSubnet, this.serverUniverse);
+    }
+
+    /**
+     * send a Dmx Command containing the value of the Dmx array of the given
+     * subnet and universe over the network. The packet is sent by the refresh
+     * engine on its next tick.
+     *
+     * @param subnet
+     *            the subnet to send
+     * @param universe
+     *            the universe to send
+     */
+    public void sendDmxCommand(final int subnet, final int universe) {
+        markDirty(subnet, universe);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("DMX command queued for output (subnet " + subnet
+                    + ", universe " + universe + ")");
+        }
+    }
+
+    /**
+     * Steps the cue playback and the running fades, sends the universes that
+     * have changed since the last tick and resends the other active universes
+     * once the keep-alive interval is elapsed. The packets of every universe
+     * to send are built first and then sent in one burst. A universe is
+     * unicasted to the discovered nodes that output it and broadcasted if no
+     * node is known for it. When the merge is enabled, the sent values are
+     * the merge of the local output and of each ArtNet sender ; a source that
+     * times out is left out of the merge on the next send of the universe.
+     *
+     * @param now
+     *            the time of the tick in milliseconds
+     */
+    private void refreshOutput(final long now) {
+        ArtNetTransport currentTransport = this.transport;
+        if (currentTransport == null) {
+            return;
+        }
+        cuePlayback.step(now);
+        fadeEngine.step(now);
+        for (int word = 0; word < UNIVERSE_MASK_LENGTH; word++) {
+            long dirty = dirtyUniverses.get(word) == 0 ? 0 : dirtyUniverses
+                    .getAndSet(word, 0);
+            activeUniverses[word] |= dirty;
+
+            long toSend = dirty;
+            long idle = activeUniverses[word] & ~dirty;
+            while (idle != 0) {
+                int bit = Long.numberOfTrailingZeros(idle);
+                idle &= idle - 1;
+                if (now - lastSendTimes[word * Long.SIZE + bit] >= keepAliveInterval) {
+                    toSend |= 1L << bit;
+                }
+            }
+            universesToSend[word] = toSend;
+
+            while (toSend != 0) {
+                int index = word * Long.SIZE
+                        + Long.numberOfTrailingZeros(toSend);
+                toSend &= toSend - 1;
+                prepareOutputPacket(currentTransport, index, now);
+            }
+        }
+
+        InetAddress[][] routes = unicastEnabled ? nodeDiscovery.getRoutes()
+                : null;
+        for (int word = 0; word < UNIVERSE_MASK_LENGTH; word++) {
+            long toSend = universesToSend[word];
+            while (toSend != 0) {
+                int index = word * Long.SIZE
+                        + Long.numberOfTrailingZeros(toSend);
+                toSend &= toSend - 1;
+                currentTransport.sendDmx(index / UNIVERSE_COUNT, index
+                        % UNIVERSE_COUNT, routes == null ? null
+                        : routes[index]);
+                lastSendTimes[index] = now;
+            }
+        }
+    }
+
+    private void prepareOutputPacket(final ArtNetTransport currentTransport,
+            final int index, final long now) {
+        int subnet = index / UNIVERSE_COUNT;
+        int universe = index % UNIVERSE_COUNT;
+        // sequence 0 disables re-ordering on the nodes, use 1 to 255
+        sequenceIds[index] = sequenceIds[index] % MAX_SEQUENCE_ID + 1;
+        if (mergeEnabled && merger.merge(index, now, mergeBuffer)) {
+            currentTransport.setDmx(subnet, universe, sequenceIds[index],
+                    mergeBuffer);
+            sentMergedSequenceIds.set(index, 0);
+            System.arraycopy(mergeBuffer, 0, sentMergedValues[index], 0,
+                    DMX_CHANNELS_COUNT);
+            sentMergedSequenceIds.set(index, sequenceIds[index]);
+        } else {
+            currentTransport.setDmx(subnet, universe, sequenceIds[index],
+                    outputFrames.getFrame(index).getDmxArray());
+        }
+    }
+
+    static int universeIndex(final int subnet, final int universe) {
+        return subnet * UNIVERSE_COUNT + universe;
+    }
+
+    private void markDirty(final int subnet, final int universe) {
+        markDirty(universeIndex(subnet, universe));
+    }
 
-        this.sequenceId++;
+    private void markDirty(final int index) {
+        int word = index / Long.SIZE;
+        long bit = 1L << (index % Long.SIZE);
+        long current;
+        do {
+            current = dirtyUniverses.get(word);
+            if ((current & bit) != 0) {
+                return;
+            }
+        } while (!dirtyUniverses.compareAndSet(word, current, current | bit));
     }
 
     /**
      * Starts the ArtNet Server.
      *
      * @throws ArtNetException
-     *             if a server is already running
+     *             if a server is already running or cannot be started
      * @throws SocketException
      *             if there is a problem with the server socket
      */
     public void startArtNet() throws SocketException, ArtNetException {
-        this.artnetServer = new ArtNetServer(this.inPort, this.outPort);
-        this.artnetServer.setBroadcastAddress(this.broadcastAddress);
-        this.artnetServer.start();
-        initArtNetReceiver();
+        if (this.transport != null) {
+            throw new ArtNetException("ArtNet server is already running");
+        }
+        ArtNetTransport newTransport = new NioArtNetTransport(this.inPort,
+                this.outPort, this.broadcastAddress, this.artNetReceiver);
+        try {
+            newTransport.start();
+        } catch (SocketException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ArtNetException("ArtNet server not started", e);
+        }
+        this.transport = newTransport;
+        this.nodeDiscovery.start(newTransport);
+        this.refreshEngine.start();
 
         logger.info("ArtNet Started (in:" + this.inPort + ", out:"
                 + this.outPort + ")");
@@ -154,11 +402,18 @@ public class ArtNetServerManager {
      * Stops the ArtNet Server.
      */
     public void stopArtNet() {
-        if (this.artnetServer != null) {
-            this.artnetServer.stop();
-            this.artnetServer = null;
+        this.refreshEngine.stop();
+        this.nodeDiscovery.stop();
+        if (this.transport != null) {
+            this.transport.stop();
+            this.transport = null;
             logger.info("ArtNet Stopped");
         }
+        // the senders are found again when the server restarts
+        for (ArtNetSender sender : this.artNetSenders.values()) {
+            this.merger.removeSource(sender.source);
+        }
+        this.artNetSenders.clear();
     }
 
     /**
@@ -171,137 +426,165 @@ public class ArtNetServerManager {
      */
     public void processCommandLine(final String commandLine)
             throws BadSyntaxException {
-        String[] commands = commandLine.split(";");
-        HashMap<Integer, Byte> valuesToPush = new HashMap<Integer, Byte>();
-
-        for (String command : commands) {
-            Matcher commandLineMatcher = COMMANDLINE_PATTERN.matcher(command);
-            if (commandLineMatcher.find()) {
-                Matcher channelMatcher = CHANNEL_PATTERN
-                        .matcher(commandLineMatcher
-                                .group(COMMAND_LINE_PATTERN_CHANNEL_GROUP));
-                HashSet<Integer> channels = new HashSet<Integer>();
-                while (channelMatcher.find()) {
-                    boolean except = (channelMatcher.group(
-                            CHANNEL_PATTERN_EXCEPT_GROUP).compareTo("-") == 0);
-                    int chan1 = Integer.parseInt(channelMatcher
-                            .group(CHANNEL_PATTERN_CHAN1_GROUP));
-                    checkChannelNumber(chan1);
-                    int chan2 = chan1;
-                    if (channelMatcher.group(CHANNEL_PATTERN_CHAN2_GROUP) != null) {
-                        chan2 = Integer.parseInt(channelMatcher
-                                .group(CHANNEL_PATTERN_CHAN2_GROUP));
-                        checkChannelNumber(chan2);
-                    }
-                    for (int j = Math.min(chan1, chan2); j <= Math.max(chan1,
-                            chan2); j++) {
-                        if (except) {
-                            channels.remove(j);
-                        } else {
-                            channels.add(j);
+        processCommandLine(this.serverSubnet, this.serverUniverse,
+                commandLine);
+    }
+
+    /**
+     * Process the value of the command line on the given subnet and universe
+     * without changing the current subnet and universe of the server.
+     *
+     * @param subnet
+     *            the subnet on which the command line applies
+     * @param universe
+     *            the universe on which the command line applies
+     * @param commandLine
+     *            the command line to process
+     * @throws BadSyntaxException
+     *             thrown when the command line has a bad syntax
+     */
+    public void processCommandLine(final int subnet, final int universe,
+            final String commandLine) throws BadSyntaxException {
+        final CommandLineProgram program = commandLineCompiler
+                .compile(commandLine);
+        final boolean additive = additiveModeEnabled;
+        int index = universeIndex(subnet, universe);
+        outputPublished(index, outputFrames.update(index,
+                new DmxFrameStore.FrameUpdater() {
+                    @Override
+                    public void update(final byte[] dmxArray) {
+                        if (!additive) {
+                            Arrays.fill(dmxArray, (byte) 0);
                         }
+                        program.applyTo(dmxArray);
                     }
-                }
-
-                boolean hasLevel = !(commandLineMatcher
-                        .group(COMMAND_LINE_PATTERN_AT_LEVEL_GROUP) == null || commandLineMatcher
-                        .group(COMMAND_LINE_PATTERN_AT_LEVEL_GROUP).isEmpty());
-                boolean percent = false;
-                int value = MAX_DMX_VALUE;
-
-                if (hasLevel) {
-                    percent = (commandLineMatcher
-                            .group(COMMAND_LINE_PATTERN_PERCENT_GROUP) == null || commandLineMatcher
-                            .group(COMMAND_LINE_PATTERN_PERCENT_GROUP)
-                            .isEmpty());
-                    value = (commandLineMatcher
-                            .group(COMMAND_LINE_PATTERN_LEVEL_GROUP)
-                            .toUpperCase().compareTo("F") == 0) ? MAX_PERCENT_VALUE
-                            : Integer
-                                    .parseInt(commandLineMatcher
-                                            .group(COMMAND_LINE_PATTERN_LEVEL_VALUE_GROUP));
-                }
-
-                if ((percent && value > MAX_PERCENT_VALUE)
-                        || value > MAX_DMX_VALUE) {
-                    throw new BadSyntaxException();
-                }
+                }));
+        logger.info("Command line parsed : " + commandLine);
+    }
 
-                // adding values to HashMap of values to push
+    /**
+     * Compiles a command line, using the cache of the compiled command lines.
+     *
+     * @param commandLine
+     *            the command line to compile
+     * @return the compiled command line
+     * @throws BadSyntaxException
+     *             thrown when the command line has a bad syntax
+     */
+    public CommandLineProgram compileCommandLine(final String commandLine)
+            throws BadSyntaxException {
+        return commandLineCompiler.compile(commandLine);
+    }
 
-                byte dmxValue = (byte) value;
-                if (percent) {
-                    dmxValue = (byte) (value / 100.0 * 255);
-                }
-                for (int channel : channels) {
-                    valuesToPush.put(channel - 1, dmxValue);
+    /**
+     * Applies a batch of changes to the output. The changes of each universe
+     * are published as a single frame, so a universe is sent once whatever
+     * the number of changes, with the same result as the changes processed
+     * one by one.
+     *
+     * @param batch
+     *            the batch to apply
+     */
+    public void applyBatch(final DmxBatch batch) {
+        for (final DmxBatch.Overlay overlay : batch.getOverlays()) {
+            outputPublished(overlay.getIndex(), outputFrames.update(overlay
+                    .getIndex(), new DmxFrameStore.FrameUpdater() {
+                @Override
+                public void update(final byte[] dmxArray) {
+                    overlay.applyTo(dmxArray);
                 }
-            } else {
-                throw new BadSyntaxException();
-            }
+            }));
         }
-        pushValuesInCurrentOutputDmxArray(valuesToPush);
-        logger.info("Command line parsed : " + commandLine);
-
+        logger.info("Batch applied : " + batch.getOperationsCount()
+                + " changes on " + batch.getUniversesCount() + " universes");
     }
 
-    private static void checkChannelNumber(final int channel)
+    /**
+     * Checks that the given subnet and universe exist.
+     *
+     * @param subnet
+     *            the subnet to check
+     * @param universe
+     *            the universe to check
+     * @throws BadSyntaxException
+     *             if the subnet or the universe is out of range
+     */
+    public static void checkUniverse(final int subnet, final int universe)
             throws BadSyntaxException {
-        if (channel < MIN_CHANNEL_NUMBER || channel > MAX_CHANNEL_NUMBER) {
+        if (subnet < 0 || subnet >= SUBNET_COUNT || universe < 0
+                || universe >= UNIVERSE_COUNT) {
             throw new BadSyntaxException();
         }
     }
 
-    private void resetCurrentOutputDmxArray() {
-        setCurrentOutputDmxArray(new byte[DMX_CHANNELS_COUNT]);
-    }
-
-    private void pushValuesInCurrentOutputDmxArray(
-            final HashMap<Integer, Byte> valuesMap) {
-        if (!additiveModeEnabled) {
-            resetCurrentOutputDmxArray();
-        }
-        for (Entry<Integer, Byte> value : valuesMap.entrySet()) {
-            getCurrentOutputDmxArray()[value.getKey()] = value.getValue();
+    /**
+     * Publishes the values received for a universe in the given store.
+     * Nothing is published when the values did not change, which is the
+     * common case of the keep-alive packets of the consoles. A change is
+     * copied in a new frame, as the store copies on write.
+     *
+     * @return the current frame of the universe in the store
+     */
+    private static DmxFrame publishInput(final DmxFrameStore frames,
+            final int index, final byte[] dmxData, final int numChannels) {
+        final int length = Math.min(numChannels, DMX_CHANNELS_COUNT);
+        DmxFrame current = frames.getFrame(index);
+        if (startsWith(current.getDmxArray(), dmxData, length)) {
+            return current;
         }
-    }
-
-    private void initArtNetReceiver() {
-        this.artnetServer.addListener(new ArtNetServerListener() {
-            @Override
-            public void artNetPacketReceived(final ArtNetPacket artNetPacket) {
-                switch (artNetPacket.getType()) {
-                case ART_OUTPUT:
-                    ArtDmxPacket artDmxPacket = (ArtDmxPacket) artNetPacket;
-                    int subnet = artDmxPacket.getSubnetID();
-                    int universe = artDmxPacket.getUniverseID();
-                    System.arraycopy(artDmxPacket.getDmxData(), 0,
-                            inputDmxArrays[subnet][universe], 0,
-                            artDmxPacket.getNumChannels());
-                    break;
-
-                default:
-                    break;
-                }
-            }
-
+        return frames.update(index, new DmxFrameStore.FrameUpdater() {
             @Override
-            public void artNetServerStopped(final ArtNetServer artNetServer) {
+            public void update(final byte[] dmxArray) {
+                System.arraycopy(dmxData, 0, dmxArray, 0, length);
             }
+        });
+    }
 
-            @Override
-            public void artNetServerStarted(final ArtNetServer artNetServer) {
-            }
+    /**
+     * Returns the sender of the given address, created and added to the merge
+     * on its first packet.
+     */
+    private ArtNetSender getArtNetSender(final InetAddress address) {
+        String name = ARTNET_SOURCE_NAME + "/"
+                + (address == null ? "unknown" : address.getHostAddress());
+        ArtNetSender sender = artNetSenders.get(name);
+        if (sender == null) {
+            // only the receiving thread adds senders
+            sender = new ArtNetSender(name, sourceTimeout);
+            artNetSenders.put(name, sender);
+            merger.addSource(sender.source);
+            logger.info("ArtNet source " + name + " added to the merge");
+        }
+        return sender;
+    }
 
-            @Override
-            public void artNetPacketUnicasted(final ArtNetPacket artNetPacket) {
-            }
+    /**
+     * Returns true if the packet is the echo of a merged frame sent by this
+     * server, i.e. it has the sequence id and the values of the last sent
+     * packet. Without this check the merge would feed on its own output.
+     */
+    private boolean isOwnPacket(final int index, final int sequenceId,
+            final byte[] dmxData, final int length) {
+        int sentSequenceId = sentMergedSequenceIds.get(index);
+        return sentSequenceId != 0
+                && sentSequenceId == sequenceId
+                && startsWith(sentMergedValues[index], dmxData, length)
+                && sentMergedSequenceIds.get(index) == sentSequenceId;
+    }
 
-            @Override
-            public void artNetPacketBroadcasted(final ArtNetPacket artNetPacket) {
+    private static boolean startsWith(final byte[] array,
+            final byte[] prefix, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] != prefix[i]) {
+                return false;
             }
-        });
+        }
+        return true;
+    }
 
+    private void outputPublished(final int index, final DmxFrame frame) {
+        localSource.update(index, frame, System.currentTimeMillis());
+        markDirty(index);
     }
 
     /**
@@ -311,13 +594,39 @@ public class ArtNetServerManager {
      */
     public void setBroadcastAddress(final String broadcastAddress) {
         this.broadcastAddress = broadcastAddress;
-        if (this.artnetServer != null) {
-            this.artnetServer.setBroadcastAddress(broadcastAddress);
+        ArtNetTransport currentTransport = this.transport;
+        if (currentTransport != null) {
+            currentTransport.setBroadcastAddress(broadcastAddress);
         }
     }
 
     /**
-     * get the server output dmx array for a given subnet and universe.
+     * get the current output frame for a given subnet and universe.
+     *
+     * @param subnet
+     *            the subnet to select
+     * @param universe
+     *            the universe to select
+     * @return a consistent snapshot of the output
+     */
+    public DmxFrame getOutputFrame(final int subnet, final int universe) {
+        return outputFrames.getFrame(universeIndex(subnet, universe));
+    }
+
+    /**
+     * get the current output frame with current server subnet and universe
+     * settings.
+     *
+     * @return a consistent snapshot of the output
+     */
+    public DmxFrame getCurrentOutputFrame() {
+        return getOutputFrame(this.serverSubnet, this.serverUniverse);
+    }
+
+    /**
+     * get the server output dmx array for a given subnet and universe. The
+     * array is a snapshot shared with the other readers and must not be
+     * modified, use {@link #setOutputDmxArray(int, int, byte[])} instead.
      *
      * @param subnet
      *            the subnet to select
@@ -326,11 +635,12 @@ public class ArtNetServerManager {
      * @return the array
      */
     public byte[] getOutputDmxArray(final int subnet, final int universe) {
-        return outputDmxArrays[subnet][universe];
+        return getOutputFrame(subnet, universe).getDmxArray();
     }
 
     /**
-     * get the server current output dmx array.
+     * get the server current output dmx array. The array is a snapshot and
+     * must not be modified.
      *
      * @return the array
      */
@@ -350,8 +660,64 @@ public class ArtNetServerManager {
      */
     public void setOutputDmxArray(final int subnet, final int universe,
             final byte[] dmxArray) {
-        System.arraycopy(dmxArray, 0, outputDmxArrays[subnet][universe], 0,
-                DMX_CHANNELS_COUNT);
+        int index = universeIndex(subnet, universe);
+        outputPublished(index, outputFrames.publish(index, dmxArray));
+    }
+
+    /**
+     * crossfade the server output dmx array for a given subnet and universe to
+     * the given values. The channels that go up use the fade in time and the
+     * channels that go down use the fade out time. The values are snapped
+     * when both times are 0 or when the ArtNet server is stopped.
+     *
+     * @param subnet
+     *            the subnet to select
+     * @param universe
+     *            the universe to select
+     * @param dmxArray
+     *            the target value of the dmx array
+     * @param fadeInTime
+     *            the fade in time in milliseconds
+     * @param fadeOutTime
+     *            the fade out time in milliseconds
+     */
+    public void fadeOutputDmxArray(final int subnet, final int universe,
+            final byte[] dmxArray, final int fadeInTime, final int fadeOutTime) {
+        if ((fadeInTime <= 0 && fadeOutTime <= 0)
+                || !this.refreshEngine.isRunning()) {
+            setOutputDmxArray(subnet, universe, dmxArray);
+        } else {
+            this.fadeEngine.fade(universeIndex(subnet, universe),
+                    dmxArray.clone(), fadeInTime, fadeOutTime);
+        }
+    }
+
+    /**
+     * Returns the playback of the cue lists, which runs while the ArtNet
+     * server is started.
+     *
+     * @return the cue playback
+     */
+    public CuePlayback getCuePlayback() {
+        return this.cuePlayback;
+    }
+
+    /**
+     * Returns the statistics of the received ArtDmx packets.
+     *
+     * @return the input monitor
+     */
+    public ArtNetInputMonitor getInputMonitor() {
+        return this.inputMonitor;
+    }
+
+    /**
+     * Returns the number of running fades.
+     *
+     * @return the number of running fades
+     */
+    public int getActiveFadesCount() {
+        return this.fadeEngine.getActiveFadesCount();
     }
 
     /**
@@ -365,7 +731,31 @@ public class ArtNetServerManager {
     }
 
     /**
-     * get the server input dmx array for a given subnet and universe.
+     * get the current input frame for a given subnet and universe.
+     *
+     * @param subnet
+     *            the subnet to select
+     * @param universe
+     *            the universe to select
+     * @return a consistent snapshot of the input
+     */
+    public DmxFrame getInputFrame(final int subnet, final int universe) {
+        return inputFrames.getFrame(universeIndex(subnet, universe));
+    }
+
+    /**
+     * get the current input frame with current server subnet and universe
+     * settings.
+     *
+     * @return a consistent snapshot of the input
+     */
+    public DmxFrame getCurrentInputFrame() {
+        return getInputFrame(this.serverSubnet, this.serverUniverse);
+    }
+
+    /**
+     * get the server input dmx array for a given subnet and universe. The
+     * array is a snapshot and must not be modified.
      *
      * @param subnet
      *            the subnet to select
@@ -374,12 +764,12 @@ public class ArtNetServerManager {
      * @return the array
      */
     public byte[] getInputDmxArray(final int subnet, final int universe) {
-        return inputDmxArrays[subnet][universe];
+        return getInputFrame(subnet, universe).getDmxArray();
     }
 
     /**
      * get the server input dmx array with current server subnet and universe
-     * settings.
+     * settings. The array is a snapshot and must not be modified.
      *
      * @return the array
      */
@@ -440,6 +830,153 @@ public class ArtNetServerManager {
         fireAdditiveModeValueChanged();
     }
 
+    /**
+     * set the refresh rate of the DMX output.
+     *
+     * @param refreshRate
+     *            the refresh rate in Hz
+     */
+    public void setRefreshRate(final int refreshRate) {
+        this.refreshEngine.setRefreshRate(refreshRate);
+    }
+
+    /**
+     * set the interval after which an unchanged universe is sent again.
+     *
+     * @param keepAliveInterval
+     *            the interval in milliseconds
+     */
+    public void setKeepAliveInterval(final int keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    /**
+     * Enable or disable the unicast of the universes to the discovered nodes.
+     * When disabled, every universe is broadcasted.
+     *
+     * @param unicastEnabled
+     *            true to enable the unicast, false to disable
+     */
+    public void setUnicastEnabled(final boolean unicastEnabled) {
+        this.unicastEnabled = unicastEnabled;
+    }
+
+    /**
+     * Returns the status of the unicast to the discovered nodes.
+     *
+     * @return true if the unicast is enabled
+     */
+    public boolean isUnicastEnabled() {
+        return this.unicastEnabled;
+    }
+
+    /**
+     * Enable or disable the merge of the ArtNet input with the local output.
+     *
+     * @param mergeEnabled
+     *            true to enable the merge, false to output the local values
+     *            only
+     */
+    public void setMergeEnabled(final boolean mergeEnabled) {
+        this.mergeEnabled = mergeEnabled;
+    }
+
+    /**
+     * Returns the status of the merge of the ArtNet input.
+     *
+     * @return true if the merge is enabled
+     */
+    public boolean isMergeEnabled() {
+        return this.mergeEnabled;
+    }
+
+    /**
+     * set the merge mode of the sources of equal priority.
+     *
+     * @param mergeMode
+     *            the merge mode
+     */
+    public void setMergeMode(final DmxMerger.MergeMode mergeMode) {
+        this.merger.setMergeMode(mergeMode);
+    }
+
+    /**
+     * Returns the merge mode of the sources of equal priority.
+     *
+     * @return the merge mode
+     */
+    public DmxMerger.MergeMode getMergeMode() {
+        return this.merger.getMergeMode();
+    }
+
+    /**
+     * Returns a merge source, {@link #LOCAL_SOURCE_NAME} for the local output
+     * and {@link #ARTNET_SOURCE_NAME}{@code /<address>} for an ArtNet
+     * sender.
+     *
+     * @param name
+     *            the name of the source
+     * @return the source or null if there is no source with this name
+     */
+    public DmxMergeSource getMergeSource(final String name) {
+        return this.merger.getSource(name);
+    }
+
+    /**
+     * set the priority of the local output in the merge.
+     *
+     * @param priority
+     *            the priority of the local output
+     */
+    public void setLocalPriority(final int priority) {
+        this.localSource.setPriority(priority);
+    }
+
+    /**
+     * Returns the priority of the local output in the merge.
+     *
+     * @return the priority of the local output
+     */
+    public int getLocalPriority() {
+        return this.localSource.getPriority();
+    }
+
+    /**
+     * set the time after which an ArtNet sender is left out of the merge when
+     * nothing is received from it.
+     *
+     * @param sourceTimeout
+     *            the timeout in milliseconds
+     */
+    public void setSourceTimeout(final int sourceTimeout) {
+        if (sourceTimeout < 0) {
+            throw new IllegalArgumentException("negative timeout : "
+                    + sourceTimeout);
+        }
+        this.sourceTimeout = sourceTimeout;
+        for (ArtNetSender sender : this.artNetSenders.values()) {
+            sender.source.setTimeout(sourceTimeout);
+        }
+    }
+
+    /**
+     * Returns the timeout of the ArtNet senders.
+     *
+     * @return the timeout in milliseconds
+     */
+    public int getSourceTimeout() {
+        return this.sourceTimeout;
+    }
+
+    /**
+     * Returns the addresses of the ArtNet nodes discovered on the network.
+     *
+     * @return the addresses of the discovered nodes
+     */
+    public List<InetAddress> getDiscoveredNodes() {
+        return this.nodeDiscovery.getNodes();
+    }
+
     /**
      * Returns the in port.
      *
@@ -476,6 +1013,24 @@ public class ArtNetServerManager {
         return this.serverUniverse;
     }
 
+    /**
+     * Returns the refresh rate of the DMX output.
+     *
+     * @return the refresh rate in Hz
+     */
+    public int getRefreshRate() {
+        return this.refreshEngine.getRefreshRate();
+    }
+
+    /**
+     * Returns the keep-alive interval.
+     *
+     * @return the keep-alive interval in milliseconds
+     */
+    public int getKeepAliveInterval() {
+        return this.keepAliveInterval;
+    }
+
     /**
      * Returns the status of the additive mode.
      *
@@ -487,13 +1042,44 @@ public class ArtNetServerManager {
 
     /**
      * Adds an element to the list of listener of the artnet server manager.
+     * The listener is called on the event dispatch thread.
      *
      * @param listener
      *            the listener to add
      */
     public void addArtNetServerManagerChangedListener(
             final ArtNetServerManagerListener listener) {
-        this.artnetServerManagerChangedListeners.add(listener);
+        List<EventBus.Subscription<?>> subscriptions = new ArrayList<EventBus.Subscription<?>>();
+        subscriptions.add(eventBus.subscribe(SUBNET_CHANGED,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<SubnetValueChangedEvent>() {
+                    @Override
+                    public void eventPublished(
+                            final SubnetValueChangedEvent event) {
+                        listener.subnetValueChanged(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(UNIVERSE_CHANGED,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<UniverseValueChangedEvent>() {
+                    @Override
+                    public void eventPublished(
+                            final UniverseValueChangedEvent event) {
+                        listener.universeValueChanged(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(ADDITIVE_MODE_CHANGED,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<AdditiveModeValueChangedEvent>() {
+                    @Override
+                    public void eventPublished(
+                            final AdditiveModeValueChangedEvent event) {
+                        listener.additiveModeValueChanged(event);
+                    }
+                }));
+        synchronized (this.listenersSubscriptions) {
+            this.listenersSubscriptions.put(listener, subscriptions);
+        }
     }
 
     /**
@@ -504,30 +1090,29 @@ public class ArtNetServerManager {
      */
     public void removeArtNetServerManagerChangedListener(
             final ArtNetServerManagerListener listener) {
-        this.artnetServerManagerChangedListeners.remove(listener);
+        List<EventBus.Subscription<?>> subscriptions;
+        synchronized (this.listenersSubscriptions) {
+            subscriptions = this.listenersSubscriptions.remove(listener);
+        }
+        if (subscriptions != null) {
+            for (EventBus.Subscription<?> subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
     }
 
     private void fireSubnetValueChanged() {
-        for (ArtNetServerManagerListener listener : this.artnetServerManagerChangedListeners) {
-            SubnetValueChangedEvent e = new SubnetValueChangedEvent(
-                    this.serverSubnet);
-            listener.subnetValueChanged(e);
-        }
+        eventBus.publish(SUBNET_CHANGED, new SubnetValueChangedEvent(
+                this.serverSubnet));
     }
 
     private void fireUniverseValueChanged() {
-        for (ArtNetServerManagerListener listener : this.artnetServerManagerChangedListeners) {
-            UniverseValueChangedEvent e = new UniverseValueChangedEvent(
-                    this.serverUniverse);
-            listener.universeValueChanged(e);
-        }
+        eventBus.publish(UNIVERSE_CHANGED, new UniverseValueChangedEvent(
+                this.serverUniverse));
     }
 
     private void fireAdditiveModeValueChanged() {
-        for (ArtNetServerManagerListener listener : this.artnetServerManagerChangedListeners) {
-            AdditiveModeValueChangedEvent e = new AdditiveModeValueChangedEvent(
-                    this.additiveModeEnabled);
-            listener.additiveModeValueChanged(e);
-        }
+        eventBus.publish(ADDITIVE_MODE_CHANGED,
+                new AdditiveModeValueChangedEvent(this.additiveModeEnabled));
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * The network transport of the ArtNet packets used by the
+ * {@link ArtNetServerManager}. It sends the ArtDmx packets of the output and
+ * the ArtPoll packets of the node discovery, and gives the received ArtDmx
+ * and ArtPollReply packets to its {@link Receiver}.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public interface ArtNetTransport {
+
+    /**
+     * default ArtNet port.
+     */
+    int DEFAULT_PORT = 0x1936;
+
+    /**
+     * default broadcast address.
+     */
+    String DEFAULT_BROADCAST_ADDRESS = "2.255.255.255";
+
+    /**
+     * The receiver of the packets, called from the receive thread of the
+     * transport.
+     *
+     * @author Jeremie GASTON-RAOUL
+     */
+    interface Receiver {
+
+        /**
+         * Called when an ArtDmx packet is received.
+         *
+         * @param source
+         *            the address of the sender
+         * @param subnet
+         *            the subnet of the packet
+         * @param universe
+         *            the universe of the packet
+         * @param sequenceId
+         *            the sequence id of the packet, 0 if not numbered
+         * @param dmxData
+         *            the DMX values, reused for the next packet so they
+         *            must be copied to be kept
+         * @param length
+         *            the number of DMX values
+         */
+        void dmxReceived(InetAddress source, int subnet, int universe,
+                int sequenceId, byte[] dmxData, int length);
+
+        /**
+         * Called when an ArtPollReply packet is received.
+         *
+         * @param node
+         *            the address of the node
+         * @param shortName
+         *            the short name of the node
+         * @param subSwitch
+         *            the subnet of the ports of the node
+         * @param dmxOuts
+         *            the universe of each output port of the node
+         * @param portsCount
+         *            the number of ports of the node
+         * @param bindIndex
+         *            the index of the reply among the replies of a node
+         *            with more than 4 ports, 1 for the first one
+         */
+        void pollReplyReceived(InetAddress node, String shortName,
+                int subSwitch, byte[] dmxOuts, int portsCount, int bindIndex);
+    }
+
+    /**
+     * Opens the network socket and starts receiving packets.
+     *
+     * @throws IOException
+     *             if the socket cannot be opened
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops receiving packets and closes the network socket.
+     */
+    void stop();
+
+    /**
+     * Sets the address on which the packets are broadcasted.
+     *
+     * @param broadcastAddress
+     *            the broadcast address
+     */
+    void setBroadcastAddress(String broadcastAddress);
+
+    /**
+     * Sets the content of the next ArtDmx packet of a universe. The values
+     * are copied, the packet is sent by
+     * {@link #sendDmx(int, int, InetAddress[])}.
+     *
+     * @param subnet
+     *            the subnet of the packet
+     * @param universe
+     *            the universe of the packet
+     * @param sequenceId
+     *            the sequence id of the packet
+     * @param dmxData
+     *            the DMX values
+     */
+    void setDmx(int subnet, int universe, int sequenceId, byte[] dmxData);
+
+    /**
+     * Sends the ArtDmx packet of a universe.
+     *
+     * @param subnet
+     *            the subnet of the packet
+     * @param universe
+     *            the universe of the packet
+     * @param nodes
+     *            the nodes to which the packet is unicasted, the packet is
+     *            broadcasted if null or empty
+     */
+    void sendDmx(int subnet, int universe, InetAddress[] nodes);
+
+    /**
+     * Broadcasts an ArtPoll packet.
+     */
+    void broadcastPoll();
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles command lines into {@link CommandLineProgram}s. The most recently
+ * used programs are cached so that a command line sent again (by the HTTP
+ * remote for instance) is parsed only once.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CommandLineCompiler {
+
+    /**
+     * default number of programs kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 128;
+
+    private final Map<String, CommandLineProgram> cache;
+
+    /**
+     * Constructs a compiler with a cache of the default size.
+     */
+    public CommandLineCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a compiler.
+     *
+     * @param cacheSize
+     *            the max number of programs kept in the cache
+     */
+    public CommandLineCompiler(final int cacheSize) {
+        this.cache = new LinkedHashMap<String, CommandLineProgram>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = -2431357410958563407L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, CommandLineProgram> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the program of the given command line, compiling it if it is
+     * not in the cache.
+     *
+     * @param commandLine
+     *            the command line to compile
+     * @return the compiled program
+     * @throws BadSyntaxException
+     *             thrown when the command line has a bad syntax
+     */
+    public CommandLineProgram compile(final String commandLine)
+            throws BadSyntaxException {
+        CommandLineProgram program;
+        synchronized (cache) {
+            program = cache.get(commandLine);
+        }
+        if (program == null) {
+            program = CommandLineProgram.compile(commandLine);
+            synchronized (cache) {
+                cache.put(commandLine, program);
+            }
+        }
+        return program;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+/**
+ * A compiled command line. The program holds the set of channels touched by
+ * the command line as a 512-bit mask and the value of each of these channels.
+ * A program is immutable once compiled and can be applied many times.
+ *
+ * The syntax of a command line is a list of commands separated by
+ * {@code ;}. Each command is a list of channels or ranges of channels
+ * ({@code 1/10}) combined with {@code +} or {@code -}, optionally followed
+ * by a level : {@code @F} (full), {@code @D} and a DMX value or {@code @}
+ * and a percent value. Without level, the channels are set to full.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public final class CommandLineProgram {
+
+    private static final int MASK_LENGTH = ArtNetServerManager.DMX_CHANNELS_COUNT
+            / Long.SIZE;
+
+    private static final int MIN_CHANNEL_NUMBER = 1;
+    private static final int MAX_CHANNEL_NUMBER = ArtNetServerManager.DMX_CHANNELS_COUNT;
+
+    private static final int MAX_DMX_VALUE = 255;
+    private static final int MAX_PERCENT_VALUE = 100;
+    private static final int MAX_NUMBER_DIGITS = 3;
+
+    private final long[] channelsMask = new long[MASK_LENGTH];
+    private final byte[] values = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+
+    // position of the tokenizer, only used during the compilation
+    private int position;
+
+    private CommandLineProgram() {
+    }
+
+    /**
+     * Compiles the given command line.
+     *
+     * @param commandLine
+     *            the command line to compile
+     * @return the compiled program
+     * @throws BadSyntaxException
+     *             thrown when the command line has a bad syntax
+     */
+    public static CommandLineProgram compile(final String commandLine)
+            throws BadSyntaxException {
+        if (commandLine.length() == 0) {
+            throw new BadSyntaxException();
+        }
+        // trailing empty commands are ignored
+        int end = commandLine.length();
+        while (end > 0 && commandLine.charAt(end - 1) == ';') {
+            end--;
+        }
+
+        CommandLineProgram program = new CommandLineProgram();
+        long[] commandMask = new long[MASK_LENGTH];
+        int start = 0;
+        while (start < end) {
+            int commandEnd = commandLine.indexOf(';', start);
+            if (commandEnd == -1 || commandEnd > end) {
+                commandEnd = end;
+            }
+            program.compileCommand(commandLine, start, commandEnd, commandMask);
+            start = commandEnd + 1;
+        }
+        return program;
+    }
+
+    /**
+     * Writes the values of the program in the given DMX array. Channels that
+     * are not part of the program are left untouched.
+     *
+     * @param dmxArray
+     *            the DMX array to write to
+     */
+    public void applyTo(final byte[] dmxArray) {
+        for (int word = 0; word < MASK_LENGTH; word++) {
+            long bits = channelsMask[word];
+            while (bits != 0) {
+                int channel = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                dmxArray[channel] = values[channel];
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given channel is set by the program.
+     *
+     * @param channel
+     *            the channel index, starting at 0
+     * @return true if the channel is set by the program
+     */
+    public boolean isChannelSet(final int channel) {
+        return (channelsMask[channel / Long.SIZE] & (1L << (channel % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Returns the value written by the program on the given channel.
+     *
+     * @param channel
+     *            the channel index, starting at 0
+     * @return the value written on the channel
+     */
+    public byte getValue(final int channel) {
+        return values[channel];
+    }
+
+    private void compileCommand(final String commandLine, final int start,
+            final int end, final long[] commandMask) throws BadSyntaxException {
+        if (start == end) {
+            throw new BadSyntaxException();
+        }
+        for (int i = 0; i < MASK_LENGTH; i++) {
+            commandMask[i] = 0;
+        }
+        position = start;
+
+        // channels
+        boolean except = false;
+        while (true) {
+            int chan1 = readNumber(commandLine, end);
+            checkChannelNumber(chan1);
+            int chan2 = chan1;
+            if (position < end && commandLine.charAt(position) == '/') {
+                position++;
+                chan2 = readNumber(commandLine, end);
+                checkChannelNumber(chan2);
+            }
+            setRange(commandMask, Math.min(chan1, chan2) - 1,
+                    Math.max(chan1, chan2) - 1, !except);
+
+            if (position == end || commandLine.charAt(position) == '@') {
+                break;
+            }
+            char c = commandLine.charAt(position++);
+            if (c == '+') {
+                except = false;
+            } else if (c == '-') {
+                except = true;
+            } else {
+                throw new BadSyntaxException();
+            }
+        }
+
+        // level
+        boolean percent = false;
+        int value = MAX_DMX_VALUE;
+        if (position < end) {
+            position++; // skip '@'
+            if (position == end) {
+                throw new BadSyntaxException();
+            }
+            char c = commandLine.charAt(position);
+            if (c == 'F' || c == 'f') {
+                position++;
+                percent = true;
+                value = MAX_PERCENT_VALUE;
+            } else {
+                if (c == 'D' || c == 'd') {
+                    position++;
+                } else {
+                    percent = true;
+                }
+                value = readNumber(commandLine, end);
+            }
+            if (position != end) {
+                throw new BadSyntaxException();
+            }
+        }
+
+        if ((percent && value > MAX_PERCENT_VALUE) || value > MAX_DMX_VALUE) {
+            throw new BadSyntaxException();
+        }
+
+        byte dmxValue = (byte) value;
+        if (percent) {
+            dmxValue = (byte) (value / 100.0 * 255);
+        }
+
+        // the last command wins when channels are set more than once
+        for (int word = 0; word < MASK_LENGTH; word++) {
+            long bits = commandMask[word];
+            channelsMask[word] |= bits;
+            while (bits != 0) {
+                int channel = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                values[channel] = dmxValue;
+            }
+        }
+    }
+
+    private int readNumber(final String commandLine, final int end)
+            throws BadSyntaxException {
+        int number = 0;
+        int digits = 0;
+        while (position < end && digits < MAX_NUMBER_DIGITS) {
+            char c = commandLine.charAt(position);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            number = number * 10 + (c - '0');
+            digits++;
+            position++;
+        }
+        if (digits == 0) {
+            throw new BadSyntaxException();
+        }
+        return number;
+    }
+
+    private static void setRange(final long[] mask, final int from,
+            final int to, final boolean set) {
+        for (int channel = from; channel <= to; channel++) {
+            long bit = 1L << (channel % Long.SIZE);
+            if (set) {
+                mask[channel / Long.SIZE] |= bit;
+            } else {
+                mask[channel / Long.SIZE] &= ~bit;
+            }
+        }
+    }
+
+    private static void checkChannelNumber(final int channel)
+            throws BadSyntaxException {
+        if (channel < MIN_CHANNEL_NUMBER || channel > MAX_CHANNEL_NUMBER) {
+            throw new BadSyntaxException();
+        }
+    }
+}
@@ -19,22 +19,45 @@
 
 package net.eliosoft.elios.server;
 
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
 /**
- * An object representing a DMX universe state.
+ * An object representing a DMX universe state. The DMX values are kept as
+ * blocks shared with the other cues (see {@link DmxBlock}), so the memory used
+ * by the cues grows with the number of distinct looks. The DMX array of a cue
+ * read from a show file is only loaded from the file on first access.
  *
  * @author Jeremie GASTON-RAOUL
  *
  */
 public class Cue {
+
+    /**
+     * max length of the name of a cue in UTF-8 bytes, as the length is
+     * written on 2 bytes in the show file and its journal.
+     */
+    public static final int MAX_NAME_LENGTH = 65535;
+
+    // a char takes at most 3 bytes in UTF-8
+    private static final int MAX_UTF8_CHAR_LENGTH = 3;
+
     private String name;
-    private byte[] dmxArray = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+    private int fadeInTime;
+    private int fadeOutTime;
+
+    private transient volatile DmxBlock[] blocks;
+
+    // where the DMX array is read from when the blocks are not loaded yet
+    private transient ByteBuffer frameBuffer;
+    private transient int frameOffset;
 
     /**
      * Constructs an empty {@link Cue}. This constructor is mainly used for
      * deserialization.
      */
     Cue() {
-        // nothing to do here.
+        this.blocks = DmxBlock.intern(new byte[ArtNetServerManager.DMX_CHANNELS_COUNT]);
     }
 
     /**
@@ -46,9 +69,52 @@ public class Cue {
      *            the dmx array of the cue
      */
     public Cue(final String name, final byte[] dmxArray) {
+        this(name, dmxArray, 0, 0);
+    }
+
+    /**
+     * The constructor method for a cue with fade times.
+     *
+     * @param name
+     *            the name of the cue
+     * @param dmxArray
+     *            the dmx array of the cue
+     * @param fadeInTime
+     *            the fade in time in milliseconds
+     * @param fadeOutTime
+     *            the fade out time in milliseconds
+     * @throws IllegalArgumentException
+     *             if the name is over {@link #MAX_NAME_LENGTH} bytes
+     */
+    public Cue(final String name, final byte[] dmxArray,
+            final int fadeInTime, final int fadeOutTime) {
+        this.name = checkName(name);
+        this.blocks = DmxBlock.intern(dmxArray);
+        setFadeInTime(fadeInTime);
+        setFadeOutTime(fadeOutTime);
+    }
+
+    /**
+     * Constructs a cue whose DMX array is loaded lazily from a buffer.
+     *
+     * @param name
+     *            the name of the cue
+     * @param frameBuffer
+     *            the buffer that holds the DMX array
+     * @param frameOffset
+     *            the offset of the DMX array in the buffer
+     * @param fadeInTime
+     *            the fade in time in milliseconds
+     * @param fadeOutTime
+     *            the fade out time in milliseconds
+     */
+    Cue(final String name, final ByteBuffer frameBuffer,
+            final int frameOffset, final int fadeInTime, final int fadeOutTime) {
         this.name = name;
-        System.arraycopy(dmxArray, 0, this.dmxArray, 0,
-                ArtNetServerManager.DMX_CHANNELS_COUNT);
+        this.frameBuffer = frameBuffer;
+        this.frameOffset = frameOffset;
+        setFadeInTime(fadeInTime);
+        setFadeOutTime(fadeOutTime);
     }
 
     /**
@@ -65,29 +131,118 @@ public class Cue {
      *
      * @param name
      *            the name to set
+     * @throws IllegalArgumentException
+     *             if the name is over {@link #MAX_NAME_LENGTH} bytes
      */
     public void setName(final String name) {
-        this.name = name;
+        this.name = checkName(name);
+    }
+
+    private static String checkName(final String name) {
+        // only the names that may be too long are encoded
+        if (name != null
+                && name.length() * MAX_UTF8_CHAR_LENGTH > MAX_NAME_LENGTH) {
+            try {
+                if (name.getBytes("UTF-8").length > MAX_NAME_LENGTH) {
+                    throw new IllegalArgumentException("cue name over "
+                            + MAX_NAME_LENGTH + " bytes");
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return name;
     }
 
     /**
-     * Return the DMX Array.
+     * Return the DMX Array. A new array is built on each call, it can be
+     * modified or sent as is.
      *
      * @return the dmxArray
      */
     public byte[] getDmxArray() {
+        byte[] dmxArray = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+        DmxBlock.copy(getBlocks(), dmxArray);
         return dmxArray;
     }
 
+    /**
+     * Writes the DMX array of the cue in the given array, without allocation.
+     *
+     * @param dmxArray
+     *            the array to write to, of at least 512 values
+     */
+    public void copyDmxArray(final byte[] dmxArray) {
+        DmxBlock.copy(getBlocks(), dmxArray);
+    }
+
+    private DmxBlock[] getBlocks() {
+        DmxBlock[] cueBlocks = blocks;
+        if (cueBlocks == null) {
+            synchronized (this) {
+                if (blocks == null) {
+                    byte[] loaded = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+                    ByteBuffer buffer = frameBuffer.duplicate();
+                    buffer.position(frameOffset);
+                    buffer.get(loaded);
+                    blocks = DmxBlock.intern(loaded);
+                    frameBuffer = null;
+                }
+                cueBlocks = blocks;
+            }
+        }
+        return cueBlocks;
+    }
+
+    /**
+     * Returns the fade in time, used by the channels that go up when the cue
+     * is loaded.
+     *
+     * @return the fade in time in milliseconds
+     */
+    public int getFadeInTime() {
+        return fadeInTime;
+    }
+
+    /**
+     * Sets the fade in time.
+     *
+     * @param fadeInTime
+     *            the fade in time in milliseconds
+     */
+    public void setFadeInTime(final int fadeInTime) {
+        this.fadeInTime = Math.max(0, fadeInTime);
+    }
+
+    /**
+     * Returns the fade out time, used by the channels that go down when the
+     * cue is loaded.
+     *
+     * @return the fade out time in milliseconds
+     */
+    public int getFadeOutTime() {
+        return fadeOutTime;
+    }
+
+    /**
+     * Sets the fade out time.
+     *
+     * @param fadeOutTime
+     *            the fade out time in milliseconds
+     */
+    public void setFadeOutTime(final int fadeOutTime) {
+        this.fadeOutTime = Math.max(0, fadeOutTime);
+    }
+
     /**
      * Sets the DMX Array.
      *
      * @param dmxArray
      *            the dmxArray to set
      */
-    void setDmxArray(final byte[] dmxArray) {
-        System.arraycopy(dmxArray, 0, this.dmxArray, 0,
-                ArtNetServerManager.DMX_CHANNELS_COUNT);
+    synchronized void setDmxArray(final byte[] dmxArray) {
+        this.blocks = DmxBlock.intern(dmxArray);
+        this.frameBuffer = null;
     }
 
 }
@@ -0,0 +1,200 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the binary show file of the cues. The file is made of :
+ * <ul>
+ * <li>a header : the magic {@code ELIOSHOW}, the version of the format, the
+ * number of cues and the offset of the first frame record ;</li>
+ * <li>the name index : for each cue, the length and the UTF-8 bytes of its
+ * name, its fade in time and its fade out time ;</li>
+ * <li>the frame records : the 512 DMX values of each cue, in the order of
+ * the index.</li>
+ * </ul>
+ * Integers are big-endian. The file is read at once in a heap buffer : only
+ * the index is decoded on load, the frames are decoded when the cues are
+ * first used. The file is not memory-mapped, as a mapping kept alive by the
+ * cues would prevent the file from being replaced on some platforms.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+final class CueFile {
+
+    /**
+     * current version of the format.
+     */
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'E', 'L', 'I', 'O', 'S', 'H', 'O',
+            'W' };
+
+    private static final int FRAME_SIZE = ArtNetServerManager.DMX_CHANNELS_COUNT;
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Ensure that this class will not be instantiate.
+     */
+    private CueFile() {
+    }
+
+    /**
+     * Writes the given cues. The cues are written in a temporary file which
+     * then replaces the given file, so a failure never leaves a truncated
+     * show.
+     *
+     * @param file
+     *            the show file
+     * @param cues
+     *            the cues to write
+     * @throws IOException
+     *             if the file can not be written
+     */
+    static void write(final File file, final List<Cue> cues)
+            throws IOException {
+        List<byte[]> names = new ArrayList<byte[]>(cues.size());
+        int indexSize = 0;
+        for (Cue cue : cues) {
+            byte[] name = cue.getName().getBytes(CHARSET);
+            if (name.length > Cue.MAX_NAME_LENGTH) {
+                // would be truncated by the 2 bytes of the length
+                throw new IOException("cue name too long : " + name.length
+                        + " bytes");
+            }
+            names.add(name);
+            indexSize += 2 + name.length + 4 + 4;
+        }
+        int framesOffset = MAGIC.length + 4 + 4 + 4 + indexSize;
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(fos));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cues.size());
+            out.writeInt(framesOffset);
+            for (int i = 0; i < cues.size(); i++) {
+                out.writeShort(names.get(i).length);
+                out.write(names.get(i));
+                out.writeInt(cues.get(i).getFadeInTime());
+                out.writeInt(cues.get(i).getFadeOutTime());
+            }
+            byte[] frame = new byte[FRAME_SIZE];
+            for (Cue cue : cues) {
+                cue.copyDmxArray(frame);
+                out.write(frame);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            // some platforms do not rename over an existing file
+            if (!file.delete() || !tmpFile.renameTo(file)) {
+                throw new IOException("can not replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads the cues of a show file. The frames of the cues are loaded when
+     * they are first used.
+     *
+     * @param file
+     *            the show file
+     * @return the cues in the order of the file
+     * @throws IOException
+     *             if the file can not be read or is not a valid show file
+     */
+    static List<Cue> read(final File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("show file too large : " + file);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("truncated show file : " + file);
+                }
+            }
+            buffer.flip();
+        } finally {
+            fis.close();
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("not a show file : " + file);
+                }
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported show file version : "
+                        + version);
+            }
+            int count = buffer.getInt();
+            int framesOffset = buffer.getInt();
+            if (count < 0
+                    || framesOffset < buffer.position()
+                    || (long) framesOffset + (long) count * FRAME_SIZE > buffer
+                            .capacity()) {
+                throw new IOException("corrupted show file : " + file);
+            }
+
+            ByteBuffer frames = buffer.asReadOnlyBuffer();
+            List<Cue> cues = new ArrayList<Cue>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xffff];
+                buffer.get(name);
+                int fadeInTime = buffer.getInt();
+                int fadeOutTime = buffer.getInt();
+                cues.add(new Cue(new String(name, CHARSET), frames,
+                        framesOffset + i * FRAME_SIZE, fadeInTime,
+                        fadeOutTime));
+            }
+            return cues;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated show file : " + file);
+        }
+    }
+}
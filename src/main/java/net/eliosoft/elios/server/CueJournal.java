@@ -0,0 +1,382 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * An append-only journal of the changes of the cues. Each cue added or
+ * removed is queued and written by a background thread which appends the
+ * pending records in one write and syncs the file once per batch. When the
+ * journal grows too big, the cues are written in the show file and the
+ * journal starts again empty.
+ *
+ * The journal starts with the magic {@code ELIOSJNL} and the version of the
+ * format. Each record is made of its type, the length and the UTF-8 bytes of
+ * the cue name and, for an added cue, its fade times and its 512 DMX values,
+ * followed by the CRC32 of the record. A record torn by a crash is detected
+ * by its CRC and dropped on replay.
+ *
+ * Replaying the journal over the show file is idempotent : the show file may
+ * already hold some of the changes of the journal.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+final class CueJournal {
+
+    /**
+     * current version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * interval between two writes of the pending records in milliseconds.
+     */
+    static final int FLUSH_INTERVAL = 200;
+
+    /**
+     * size of the journal in bytes over which it is compacted in the show
+     * file.
+     */
+    static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private static final byte[] MAGIC = { 'E', 'L', 'I', 'O', 'S', 'J', 'N',
+            'L' };
+
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+
+    private static final byte CUE_ADDED = 1;
+    private static final byte CUE_REMOVED = 2;
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String THREAD_NAME = "Elios cue journal";
+
+    /**
+     * A change waiting to be written.
+     */
+    private static final class Record {
+        private final byte type;
+        private final Cue cue;
+        private final String name;
+
+        private Record(final byte type, final Cue cue, final String name) {
+            this.type = type;
+            this.cue = cue;
+            this.name = name;
+        }
+    }
+
+    private final CuesManager cuesManager;
+    private final File showFile;
+    private final File journalFile;
+
+    private final ConcurrentLinkedQueue<Record> pendingRecords = new ConcurrentLinkedQueue<Record>();
+
+    // only used by the thread that writes the journal
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+    // the CRC is computed as the records are written
+    private final DataOutputStream batchOut = new DataOutputStream(
+            new CheckedOutputStream(batch, crc));
+    private final byte[] frame = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+    private boolean compactionNeeded = false;
+
+    private RandomAccessFile journal;
+    private ScheduledExecutorService scheduler;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(CueJournal.class.getName());
+
+    /**
+     * Constructs a closed journal.
+     *
+     * @param cuesManager
+     *            the manager whose cues are written on compaction
+     * @param showFile
+     *            the show file in which the journal is compacted
+     * @param journalFile
+     *            the journal file
+     */
+    CueJournal(final CuesManager cuesManager, final File showFile,
+            final File journalFile) {
+        this.cuesManager = cuesManager;
+        this.showFile = showFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Replays the journal in the given map of cues, in one pass. The replay
+     * stops at the first torn or corrupted record.
+     *
+     * @param cuesMap
+     *            the map of the cues by name read from the show file
+     * @return the number of records replayed
+     * @throws IOException
+     *             if the journal can not be read
+     */
+    int replay(final Map<String, Cue> cuesMap) throws IOException {
+        if (!journalFile.isFile() || journalFile.length() < HEADER_SIZE) {
+            return 0;
+        }
+        int count = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalFile)));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("not a cue journal : " + journalFile);
+                }
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported cue journal version : "
+                        + version);
+            }
+
+            byte[] dmxArray = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+            while (true) {
+                crc.reset();
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                crc.update(type);
+                byte[] nameBytes = new byte[in.readUnsignedShort()];
+                crc.update(nameBytes.length >> 8);
+                crc.update(nameBytes.length);
+                in.readFully(nameBytes);
+                crc.update(nameBytes);
+                int fadeInTime = 0;
+                int fadeOutTime = 0;
+                if (type == CUE_ADDED) {
+                    fadeInTime = in.readInt();
+                    fadeOutTime = in.readInt();
+                    updateCrc(fadeInTime);
+                    updateCrc(fadeOutTime);
+                    in.readFully(dmxArray);
+                    crc.update(dmxArray);
+                } else if (type != CUE_REMOVED) {
+                    logger.warning("corrupted cue journal, replay stopped");
+                    break;
+                }
+                if ((int) crc.getValue() != in.readInt()) {
+                    logger.warning("corrupted cue journal, replay stopped");
+                    break;
+                }
+
+                String name = new String(nameBytes, CHARSET);
+                if (type == CUE_ADDED) {
+                    cuesMap.put(name, new Cue(name, dmxArray, fadeInTime,
+                            fadeOutTime));
+                } else {
+                    cuesMap.remove(name);
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            logger.warning("torn record at the end of the cue journal dropped");
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    /**
+     * Opens the journal for appending and starts the background writes. The
+     * journal is compacted at once if it is not empty, so the records that
+     * could not be replayed are never followed by new ones.
+     *
+     * @throws IOException
+     *             if the journal can not be opened
+     */
+    synchronized void open() throws IOException {
+        if (scheduler != null) {
+            return;
+        }
+        journal = new RandomAccessFile(journalFile, "rw");
+        if (journal.length() > HEADER_SIZE || !showFile.isFile()) {
+            compact();
+        } else if (journal.length() < HEADER_SIZE) {
+            truncate();
+        }
+        journal.seek(journal.length());
+
+        scheduler = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                    if (compactionNeeded
+                            || journal.length() > COMPACTION_THRESHOLD) {
+                        compact();
+                    }
+                } catch (IOException e) {
+                    compactionNeeded = true;
+                    logger.log(Level.WARNING, "Can not write the cue journal",
+                            e);
+                }
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background writes, writes the cues in the show file and
+     * deletes the journal.
+     *
+     * @throws IOException
+     *             if the cues can not be written
+     */
+    synchronized void close() throws IOException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(FLUSH_INTERVAL * 10,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        try {
+            pendingRecords.clear();
+            compact();
+        } finally {
+            journal.close();
+            journal = null;
+        }
+        if (!journalFile.delete()) {
+            logger.warning("Can not delete the cue journal " + journalFile);
+        }
+    }
+
+    /**
+     * Queues the record of an added cue. Called under the lock of the
+     * manager, so the records are queued in the order of the changes.
+     *
+     * @param cue
+     *            the added cue
+     */
+    void cueAdded(final Cue cue) {
+        pendingRecords.add(new Record(CUE_ADDED, cue, cue.getName()));
+    }
+
+    /**
+     * Queues the record of a removed cue. Called under the lock of the
+     * manager, so the records are queued in the order of the changes.
+     *
+     * @param name
+     *            the name of the removed cue
+     */
+    void cueRemoved(final String name) {
+        pendingRecords.add(new Record(CUE_REMOVED, null, name));
+    }
+
+    private void flush() throws IOException {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        batch.reset();
+        Record record;
+        while ((record = pendingRecords.poll()) != null) {
+            crc.reset();
+            byte[] nameBytes = record.name.getBytes(CHARSET);
+            batchOut.writeByte(record.type);
+            batchOut.writeShort(nameBytes.length);
+            batchOut.write(nameBytes);
+            if (record.type == CUE_ADDED) {
+                batchOut.writeInt(record.cue.getFadeInTime());
+                batchOut.writeInt(record.cue.getFadeOutTime());
+                record.cue.copyDmxArray(frame);
+                batchOut.write(frame);
+            }
+            batchOut.writeInt((int) crc.getValue());
+        }
+        batchOut.flush();
+
+        FileChannel channel = journal.getChannel();
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        // one sync for the whole batch
+        channel.force(false);
+    }
+
+    private void compact() throws IOException {
+        // the records queued while the show file is written are also in the
+        // show file, they are appended to the new journal and replayed again
+        List<Cue> cues = cuesManager.getCues();
+        CueFile.write(showFile, cues);
+        truncate();
+        compactionNeeded = false;
+        logger.info("Cue journal compacted (" + cues.size() + " cues)");
+    }
+
+    private void truncate() throws IOException {
+        journal.setLength(0);
+        journal.seek(0);
+        journal.write(MAGIC);
+        journal.writeInt(VERSION);
+        journal.getChannel().force(true);
+    }
+
+    private void updateCrc(final int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+}
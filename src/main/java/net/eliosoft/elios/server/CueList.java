@@ -0,0 +1,82 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of cues, played by a {@link CuePlayback}.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CueList {
+    private String name;
+    private List<CueListEntry> entries = new ArrayList<CueListEntry>();
+
+    /**
+     * Constructs an empty {@link CueList}. This constructor is mainly used for
+     * deserialization.
+     */
+    CueList() {
+        // nothing to do here.
+    }
+
+    /**
+     * Constructs a cue list.
+     *
+     * @param name
+     *            the name of the cue list
+     * @param entries
+     *            the entries of the list, in playing order
+     */
+    public CueList(final String name, final List<CueListEntry> entries) {
+        this.name = name;
+        this.entries = new ArrayList<CueListEntry>(entries);
+    }
+
+    /**
+     * Returns the name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the entries in playing order.
+     *
+     * @return an unmodifiable list of the entries
+     */
+    public List<CueListEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+/**
+ * An entry of a {@link CueList}. The entry refers to a cue by its name and
+ * tells when the cue starts after a GO and when the next entry follows.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CueListEntry {
+
+    /**
+     * follow time of an entry that waits for the next GO.
+     */
+    public static final int NO_FOLLOW = -1;
+
+    private String cueName;
+    private int waitTime;
+    private int followTime = NO_FOLLOW;
+
+    /**
+     * Constructs an empty {@link CueListEntry}. This constructor is mainly
+     * used for deserialization.
+     */
+    CueListEntry() {
+        // nothing to do here.
+    }
+
+    /**
+     * Constructs an entry.
+     *
+     * @param cueName
+     *            the name of the cue
+     * @param waitTime
+     *            the delay between the GO and the start of the cue in
+     *            milliseconds
+     * @param followTime
+     *            the delay between the start of the cue and the automatic GO
+     *            of the next entry in milliseconds, or {@link #NO_FOLLOW}
+     */
+    public CueListEntry(final String cueName, final int waitTime,
+            final int followTime) {
+        this.cueName = cueName;
+        this.waitTime = Math.max(0, waitTime);
+        this.followTime = followTime < 0 ? NO_FOLLOW : followTime;
+    }
+
+    /**
+     * Returns the name of the cue.
+     *
+     * @return the name of the cue
+     */
+    public String getCueName() {
+        return cueName;
+    }
+
+    /**
+     * Returns the delay between the GO and the start of the cue.
+     *
+     * @return the wait time in milliseconds
+     */
+    public int getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * Returns the delay between the start of the cue and the automatic GO of
+     * the next entry.
+     *
+     * @return the follow time in milliseconds or {@link #NO_FOLLOW}
+     */
+    public int getFollowTime() {
+        return followTime;
+    }
+}
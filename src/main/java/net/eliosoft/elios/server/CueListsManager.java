@@ -0,0 +1,141 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * A manager for the cue lists. Lists are kept in creation order.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CueListsManager {
+
+    private final Logger logger = LoggersManager.getInstance().getLogger(
+            CueListsManager.class.getCanonicalName());
+
+    private Map<String, CueList> cueListsMap = new LinkedHashMap<String, CueList>();
+
+    private static CueListsManager instance;
+
+    private CueListsManager() {
+    }
+
+    /**
+     * get the singleton instance of the CueListsManager.
+     *
+     * @return the instance
+     */
+    public static CueListsManager getInstance() {
+        if (instance == null) {
+            instance = new CueListsManager();
+        }
+        return instance;
+    }
+
+    /**
+     * put a cue list in the manager, replacing the list of the same name.
+     *
+     * @param cueList
+     *            the cue list to put
+     */
+    public synchronized void putCueList(final CueList cueList) {
+        logger.info("Cue list [" + cueList.getName() + "] set ("
+                + cueList.size() + " cues)");
+        cueListsMap.put(cueList.getName(), cueList);
+    }
+
+    /**
+     * remove the requested cue list.
+     *
+     * @param name
+     *            the name of the cue list to remove
+     */
+    public synchronized void removeCueList(final String name) {
+        logger.info("Cue list [" + name + "] removed");
+        cueListsMap.remove(name);
+    }
+
+    /**
+     * get the cue list with the requested name.
+     *
+     * @param name
+     *            the name of the cue list
+     * @return the requested cue list if found or null if no list is found
+     */
+    public synchronized CueList getCueList(final String name) {
+        return cueListsMap.get(name);
+    }
+
+    /**
+     * get all the cue lists of the manager.
+     *
+     * @return a list containing the cue lists in creation order
+     */
+    public synchronized List<CueList> getCueLists() {
+        return new ArrayList<CueList>(cueListsMap.values());
+    }
+
+    /**
+     * Persists the current cue lists to the given {@link OutputStream}.
+     *
+     * @param stream
+     *            the stream used to store the cue lists
+     * @throws IOException
+     *             if something goes wrong when persisting
+     * @see CueListsManager#load(InputStream)
+     */
+    public synchronized void persist(final OutputStream stream)
+            throws IOException {
+        stream.write(new Gson().toJson(cueListsMap).getBytes("UTF-8"));
+    }
+
+    /**
+     * Loads cue lists from the given {@link InputStream}.
+     *
+     * @param stream
+     *            {@link InputStream} from which the cue lists must be load
+     * @throws IOException
+     *             if the stream can not be decoded
+     * @see CueListsManager#persist(OutputStream)
+     */
+    public synchronized void load(final InputStream stream) throws IOException {
+        Map<String, CueList> loaded = new Gson().fromJson(
+                new InputStreamReader(stream, "UTF-8"),
+                new TypeToken<LinkedHashMap<String, CueList>>() {
+                }.getType());
+        if (loaded != null) {
+            cueListsMap = loaded;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * Plays a {@link CueList} on a universe. GO, BACK and GOTO are requested from
+ * any thread and executed on the next tick of the refresh engine, which also
+ * times the waits and the follows of the entries.
+ *
+ * The frames of the cues are resolved and copied once when the list is
+ * loaded, so that starting a cue only hands a ready frame over to the
+ * {@link DmxFadeEngine} on the same tick. A loaded list is a snapshot : the
+ * changes of its cues are taken into account on the next load.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CuePlayback {
+
+    /**
+     * position of a playback before its first cue.
+     */
+    public static final int NO_POSITION = -1;
+
+    private static final long NOT_SCHEDULED = Long.MAX_VALUE;
+
+    /**
+     * A resolved entry of the loaded list.
+     */
+    private static final class Step {
+        private final String cueName;
+        private final byte[] frame;
+        private final int fadeInTime;
+        private final int fadeOutTime;
+        private final int waitTime;
+        private final int followTime;
+
+        private Step(final CueListEntry entry, final Cue cue) {
+            this.cueName = entry.getCueName();
+            this.frame = cue.getDmxArray();
+            this.fadeInTime = cue.getFadeInTime();
+            this.fadeOutTime = cue.getFadeOutTime();
+            this.waitTime = entry.getWaitTime();
+            this.followTime = entry.getFollowTime();
+        }
+    }
+
+    /**
+     * A loaded list and the universe it is played on.
+     */
+    private static final class Program {
+        private final String name;
+        private final int index;
+        private final Step[] steps;
+
+        private Program(final String name, final int index, final Step[] steps) {
+            this.name = name;
+            this.index = index;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * A request waiting for the next tick.
+     */
+    private static final class Command {
+        private static final int GO = 0;
+        private static final int BACK = 1;
+        private static final int GOTO = 2;
+        private static final int LOAD = 3;
+
+        private final int type;
+        private final int position;
+        private final Program program;
+
+        private Command(final int type, final int position,
+                final Program program) {
+            this.type = type;
+            this.position = position;
+            this.program = program;
+        }
+    }
+
+    private final DmxFadeEngine fadeEngine;
+
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<Command>();
+
+    // only accessed by the refresh thread
+    private Program program = null;
+    private int pendingPosition = NO_POSITION;
+    private long pendingTime = NOT_SCHEDULED;
+    private long followTime = NOT_SCHEDULED;
+
+    private volatile String cueListName = null;
+    private volatile int position = NO_POSITION;
+    private volatile int size = 0;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(CuePlayback.class.getName());
+
+    /**
+     * Constructs an empty playback.
+     *
+     * @param fadeEngine
+     *            the engine that outputs the cues
+     */
+    public CuePlayback(final DmxFadeEngine fadeEngine) {
+        this.fadeEngine = fadeEngine;
+    }
+
+    /**
+     * Loads a cue list on the given universe. The cues of the list are
+     * resolved on the calling thread ; the playback starts before the first
+     * cue.
+     *
+     * @param cueList
+     *            the cue list to load
+     * @param cuesManager
+     *            the manager used to resolve the cues
+     * @param subnet
+     *            the subnet on which the list is played
+     * @param universe
+     *            the universe on which the list is played
+     * @throws BadSyntaxException
+     *             if the universe does not exist or a cue of the list is
+     *             unknown
+     */
+    public void load(final CueList cueList, final CuesManager cuesManager,
+            final int subnet, final int universe) throws BadSyntaxException {
+        ArtNetServerManager.checkUniverse(subnet, universe);
+        List<CueListEntry> entries = cueList.getEntries();
+        Step[] steps = new Step[entries.size()];
+        for (int i = 0; i < steps.length; i++) {
+            Cue cue = cuesManager.getCue(entries.get(i).getCueName());
+            if (cue == null) {
+                throw new BadSyntaxException();
+            }
+            steps[i] = new Step(entries.get(i), cue);
+        }
+        commands.add(new Command(Command.LOAD, NO_POSITION, new Program(
+                cueList.getName(), ArtNetServerManager.universeIndex(subnet,
+                        universe), steps)));
+    }
+
+    /**
+     * Starts the next cue, after its wait time.
+     */
+    public void go() {
+        commands.add(new Command(Command.GO, NO_POSITION, null));
+    }
+
+    /**
+     * Starts the previous cue at once.
+     */
+    public void back() {
+        commands.add(new Command(Command.BACK, NO_POSITION, null));
+    }
+
+    /**
+     * Starts the cue at the given position at once.
+     *
+     * @param target
+     *            the position of the cue, starting at 0
+     */
+    public void goTo(final int target) {
+        commands.add(new Command(Command.GOTO, target, null));
+    }
+
+    /**
+     * Returns the name of the loaded cue list.
+     *
+     * @return the name or null if no list is loaded
+     */
+    public String getCueListName() {
+        return cueListName;
+    }
+
+    /**
+     * Returns the position of the last started cue.
+     *
+     * @return the position, starting at 0, or {@link #NO_POSITION}
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of cues of the loaded list.
+     *
+     * @return the number of cues
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Executes the requests and starts the cues whose wait or follow time is
+     * elapsed. Must always be called from the same thread, before the step of
+     * the fade engine.
+     *
+     * @param now
+     *            the time of the tick in milliseconds
+     */
+    public void step(final long now) {
+        Command command;
+        while ((command = commands.poll()) != null) {
+            execute(command, now);
+        }
+        if (program == null) {
+            return;
+        }
+        if (now >= followTime) {
+            followTime = NOT_SCHEDULED;
+            schedule(position + 1, now);
+        }
+        if (now >= pendingTime) {
+            pendingTime = NOT_SCHEDULED;
+            start(pendingPosition, now);
+        }
+    }
+
+    private void execute(final Command command, final long now) {
+        if (command.type == Command.LOAD) {
+            program = command.program;
+            pendingTime = NOT_SCHEDULED;
+            followTime = NOT_SCHEDULED;
+            cueListName = program.name;
+            size = program.steps.length;
+            position = NO_POSITION;
+            logger.info("Cue list [" + program.name + "] loaded");
+            return;
+        }
+        if (program == null) {
+            return;
+        }
+        switch (command.type) {
+        case Command.GO:
+            // a GO during a wait starts the waiting cue at once
+            if (pendingTime != NOT_SCHEDULED) {
+                pendingTime = NOT_SCHEDULED;
+                start(pendingPosition, now);
+            } else {
+                schedule(position + 1, now);
+            }
+            break;
+        case Command.BACK:
+            pendingTime = NOT_SCHEDULED;
+            start(position - 1, now);
+            break;
+        default:
+            pendingTime = NOT_SCHEDULED;
+            start(command.position, now);
+            break;
+        }
+    }
+
+    private void schedule(final int target, final long now) {
+        if (target < 0 || target >= program.steps.length) {
+            return;
+        }
+        pendingPosition = target;
+        pendingTime = now + program.steps[target].waitTime;
+        if (pendingTime <= now) {
+            pendingTime = NOT_SCHEDULED;
+            start(target, now);
+        }
+    }
+
+    private void start(final int target, final long now) {
+        if (target < 0 || target >= program.steps.length) {
+            return;
+        }
+        Step step = program.steps[target];
+        // the frame of a step is never modified, the fade engine can share it
+        fadeEngine.fade(program.index, step.frame, step.fadeInTime,
+                step.fadeOutTime);
+        position = target;
+        followTime = step.followTime == CueListEntry.NO_FOLLOW ? NOT_SCHEDULED
+                : now + step.followTime;
+        logger.info("Cue list [" + program.name + "] : cue ["
+                + step.cueName + "] started");
+    }
+}
@@ -19,29 +19,44 @@
 
 package net.eliosoft.elios.server;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.eliosoft.elios.main.LoggersManager;
 import net.eliosoft.elios.server.events.CueAddedEvent;
 import net.eliosoft.elios.server.events.CueRemovedEvent;
+import net.eliosoft.elios.server.events.CuesReloadedEvent;
 import net.eliosoft.elios.server.listeners.CuesManagerListener;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
 import com.google.gson.reflect.TypeToken;
 
 /**
- * A manager for the cues.
+ * A manager for the cues. Besides the map of the cues by name, the manager
+ * maintains the list of the cues sorted by name so that reading the cue at a
+ * position costs O(1) and finding the position of a cue costs O(log N).
  *
  * @author Jeremie GASTON-RAOUL
  */
@@ -50,11 +65,87 @@ public class CuesManager {
     private final Logger logger = LoggersManager.getInstance().getLogger(
             CuesManager.class.getCanonicalName());
 
+    private static final Comparator<Cue> NAME_COMPARATOR = new Comparator<Cue>() {
+        @Override
+        public int compare(final Cue c1, final Cue c2) {
+            return c1.getName().compareTo(c2.getName());
+        }
+    };
+
+    /**
+     * Converts the cues from and to JSON. The DMX values of the cues are
+     * written as an array, like the cues of the previous versions.
+     */
+    private static final class CueJsonAdapter implements JsonSerializer<Cue>,
+            JsonDeserializer<Cue> {
+        @Override
+        public JsonElement serialize(final Cue cue, final Type type,
+                final JsonSerializationContext context) {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", cue.getName());
+            json.add("dmxArray", context.serialize(cue.getDmxArray()));
+            json.addProperty("fadeInTime", cue.getFadeInTime());
+            json.addProperty("fadeOutTime", cue.getFadeOutTime());
+            return json;
+        }
+
+        @Override
+        public Cue deserialize(final JsonElement element, final Type type,
+                final JsonDeserializationContext context)
+                throws JsonParseException {
+            JsonObject json = element.getAsJsonObject();
+            JsonElement dmxArray = json.get("dmxArray");
+            JsonElement fadeInTime = json.get("fadeInTime");
+            JsonElement fadeOutTime = json.get("fadeOutTime");
+            if (!json.has("name") || dmxArray == null) {
+                throw new JsonParseException("cue without name or DMX array");
+            }
+            byte[] values = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+            byte[] parsed = context.deserialize(dmxArray, byte[].class);
+            System.arraycopy(parsed, 0, values, 0, Math.min(parsed.length,
+                    values.length));
+            try {
+                return new Cue(json.get("name").getAsString(), values,
+                        fadeInTime == null ? 0 : fadeInTime.getAsInt(),
+                        fadeOutTime == null ? 0 : fadeOutTime.getAsInt());
+            } catch (IllegalArgumentException e) {
+                throw new JsonParseException(e.getMessage(), e);
+            }
+        }
+    }
+
     private Map<String, Cue> cuesMap = new HashMap<String, Cue>();
 
+    // the cues of cuesMap sorted by name
+    private ArrayList<Cue> sortedCues = new ArrayList<Cue>();
+
+    // journal of the changes, null when the show is not opened
+    private CueJournal journal;
+
     private static CuesManager instance;
 
-    private List<CuesManagerListener> cuesManagerChangedListeners = new ArrayList<CuesManagerListener>();
+    /**
+     * the topic of the added cues.
+     */
+    public static final EventBus.Topic<CueAddedEvent> CUE_ADDED = new EventBus.Topic<CueAddedEvent>(
+            "cue added");
+
+    /**
+     * the topic of the removed cues.
+     */
+    public static final EventBus.Topic<CueRemovedEvent> CUE_REMOVED = new EventBus.Topic<CueRemovedEvent>(
+            "cue removed");
+
+    /**
+     * the topic of the replaced cues.
+     */
+    public static final EventBus.Topic<CuesReloadedEvent> CUES_RELOADED = new EventBus.Topic<CuesReloadedEvent>(
+            "cues reloaded");
+
+    private final EventBus eventBus = EventBus.getInstance();
+
+    // the subscriptions of each listener
+    private final Map<CuesManagerListener, List<EventBus.Subscription<?>>> listenersSubscriptions = new HashMap<CuesManagerListener, List<EventBus.Subscription<?>>>();
 
     private CuesManager() {
     }
@@ -78,14 +169,26 @@ public class CuesManager {
      *            the cue to add to the manager
      */
     public void addCue(final Cue cue) {
-        if (cuesMap.containsKey(cue.getName())) {
-            throw new IllegalArgumentException(
-                    "a cue with this name is already set");
-        } else {
-            logger.info("Cue [" + cue.getName() + "] added");
+        int index;
+        synchronized (this) {
+            if (cuesMap.containsKey(cue.getName())) {
+                throw new IllegalArgumentException(
+                        "a cue with this name is already set");
+            }
             cuesMap.put(cue.getName(), cue);
-            fireCueAdded(cue.getName());
+            // the name is not in the list, binarySearch returns
+            // -(insertion point) - 1
+            index = -Collections.binarySearch(sortedCues, cue,
+                    NAME_COMPARATOR) - 1;
+            sortedCues.add(index, cue);
+            if (journal != null) {
+                journal.cueAdded(cue);
+            }
+            // published under the lock so that the events keep the order of
+            // the changes
+            fireCueAdded(cue, index);
         }
+        logger.info("Cue [" + cue.getName() + "] added");
     }
 
     /**
@@ -95,9 +198,20 @@ public class CuesManager {
      *            the name of the cue to remove
      */
     public void removeCue(final String name) {
+        int index;
+        synchronized (this) {
+            index = indexOf(name);
+            if (index < 0) {
+                return;
+            }
+            cuesMap.remove(name);
+            sortedCues.remove(index);
+            if (journal != null) {
+                journal.cueRemoved(name);
+            }
+            this.fireCueRemoved(name, index);
+        }
         logger.info("Cue [" + name + "] removed");
-        cuesMap.remove(name);
-        this.fireCueRemoved(name);
     }
 
     /**
@@ -108,24 +222,66 @@ public class CuesManager {
      */
     public Cue getCue(final String name) {
         logger.info("Cue [" + name + "] loaded");
-        return cuesMap.get(name);
+        synchronized (this) {
+            return cuesMap.get(name);
+        }
+    }
+
+    /**
+     * tells if a cue with the requested name exists.
+     *
+     * @param name
+     *            the name of the cue
+     * @return true if the cue exists
+     */
+    public synchronized boolean containsCue(final String name) {
+        return cuesMap.containsKey(name);
     }
 
     /**
      * get all the cues of the manager.
      *
-     * @return a list containing the cues
+     * @return a copy of the list of the cues sorted by name
      */
-    public List<Cue> getCues() {
-        ArrayList<Cue> cuesList = new ArrayList<Cue>(cuesMap.values());
-        Collections.sort(cuesList, new Comparator<Cue>() {
+    public synchronized List<Cue> getCues() {
+        return new ArrayList<Cue>(sortedCues);
+    }
 
-            @Override
-            public int compare(final Cue c1, final Cue c2) {
-                return c1.getName().compareTo(c2.getName());
-            }
-        });
-        return cuesList;
+    /**
+     * get the cue at the given position in the list of the cues sorted by
+     * name.
+     *
+     * @param index
+     *            the position of the cue
+     * @return the cue
+     */
+    public synchronized Cue getCueAt(final int index) {
+        return sortedCues.get(index);
+    }
+
+    /**
+     * get the number of cues.
+     *
+     * @return the number of cues
+     */
+    public synchronized int getCuesCount() {
+        return sortedCues.size();
+    }
+
+    /**
+     * get the position of a cue in the list of the cues sorted by name.
+     *
+     * @param name
+     *            the name of the cue
+     * @return the position of the cue or a negative value if there is no cue
+     *         with this name
+     */
+    public synchronized int indexOf(final String name) {
+        Cue cue = cuesMap.get(name);
+        if (cue == null) {
+            return -1;
+        }
+        return Collections.binarySearch(sortedCues, cue, NAME_COMPARATOR);
     }
 
     /**
@@ -133,7 +289,7 @@ public class CuesManager {
      *
      * @return an unused cue name
      */
-    public String getUnusedCueName() {
+    public synchronized String getUnusedCueName() {
         int cueNumber = cuesMap.values().size();
         DecimalFormat decimalFormat = new DecimalFormat("000");
         String cueName;
@@ -145,13 +301,40 @@ public class CuesManager {
     }
 
     /**
-     * Adds an element to the list of listener of the cues manager.
+     * Adds an element to the list of listener of the cues manager. The
+     * listener is called on the event dispatch thread.
      *
      * @param listener
      *            the listener to add
      */
     public void addCuesManagerChangedListener(final CuesManagerListener listener) {
-        this.cuesManagerChangedListeners.add(listener);
+        List<EventBus.Subscription<?>> subscriptions = new ArrayList<EventBus.Subscription<?>>();
+        subscriptions.add(eventBus.subscribe(CUE_ADDED, EventBus.Delivery.EDT,
+                new EventBus.Subscriber<CueAddedEvent>() {
+                    @Override
+                    public void eventPublished(final CueAddedEvent event) {
+                        listener.cueAdded(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(CUE_REMOVED,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<CueRemovedEvent>() {
+                    @Override
+                    public void eventPublished(final CueRemovedEvent event) {
+                        listener.cueRemoved(event);
+                    }
+                }));
+        subscriptions.add(eventBus.subscribe(CUES_RELOADED,
+                EventBus.Delivery.EDT,
+                new EventBus.Subscriber<CuesReloadedEvent>() {
+                    @Override
+                    public void eventPublished(final CuesReloadedEvent event) {
+                        listener.cuesReloaded(event);
+                    }
+                }));
+        synchronized (this.listenersSubscriptions) {
+            this.listenersSubscriptions.put(listener, subscriptions);
+        }
     }
 
     /**
@@ -162,46 +345,189 @@ public class CuesManager {
      */
     public void removeCuesManagerChangedListener(
             final CuesManagerListener listener) {
-        this.cuesManagerChangedListeners.remove(listener);
+        List<EventBus.Subscription<?>> subscriptions;
+        synchronized (this.listenersSubscriptions) {
+            subscriptions = this.listenersSubscriptions.remove(listener);
+        }
+        if (subscriptions != null) {
+            for (EventBus.Subscription<?> subscription : subscriptions) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private void fireCueAdded(final Cue cue, final int index) {
+        eventBus.publish(CUE_ADDED, new CueAddedEvent(cue, index));
+    }
+
+    private void fireCueRemoved(final String name, final int index) {
+        eventBus.publish(CUE_REMOVED, new CueRemovedEvent(name, index));
+    }
+
+    // sorts the new cues and publishes them, called under the lock
+    private void cuesReloaded() {
+        sortedCues = new ArrayList<Cue>(cuesMap.values());
+        Collections.sort(sortedCues, NAME_COMPARATOR);
+        eventBus.publish(CUES_RELOADED, new CuesReloadedEvent(
+                Collections.unmodifiableList(new ArrayList<Cue>(sortedCues))));
+    }
+
+    /**
+     * Opens the given show file : the cues of the show file are read, the
+     * changes saved in its journal since the last compaction are replayed and
+     * the following changes of the cues are appended to the journal. When the
+     * show file does not exist, it is created from the current cues.
+     *
+     * When the show file or its journal can not be read, they are moved aside
+     * with the {@code .bad} extension and a new show is created from the
+     * current cues, so that the following changes are still saved.
+     *
+     * @param file
+     *            the show file
+     * @return the file to which an unreadable show file (or journal) was
+     *         moved, null if the show was read
+     * @throws IOException
+     *             if the show file or its journal can not be written
+     * @see CuesManager#closeShow()
+     */
+    public synchronized File openShow(final File file) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("a show is already opened");
+        }
+        File journalFile = new File(file.getPath() + ".journal");
+        CueJournal showJournal = new CueJournal(this, file, journalFile);
+        Map<String, Cue> cues;
+        File badFile = null;
+        try {
+            cues = readShow(file, showJournal);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Can not read the show " + file, e);
+            badFile = moveAside(file);
+            File badJournalFile = moveAside(journalFile);
+            if (badFile == null) {
+                badFile = badJournalFile;
+            }
+            cues = cuesMap;
+        }
+        cuesMap = cues;
+        cuesReloaded();
+
+        showJournal.open();
+        journal = showJournal;
+        return badFile;
     }
 
-    private void fireCueAdded(final String name) {
-        for (CuesManagerListener listener : this.cuesManagerChangedListeners) {
-            CueAddedEvent e = new CueAddedEvent(name);
-            listener.cueAdded(e);
+    private Map<String, Cue> readShow(final File file,
+            final CueJournal showJournal) throws IOException {
+        Map<String, Cue> cues = cuesMap;
+        if (file.isFile()) {
+            cues = new HashMap<String, Cue>();
+            for (Cue cue : CueFile.read(file)) {
+                cues.put(cue.getName(), cue);
+            }
+        }
+        int replayed = showJournal.replay(cues);
+        if (replayed > 0) {
+            logger.info(replayed + " changes of the cues recovered");
         }
+        return cues;
     }
 
-    private void fireCueRemoved(final String name) {
-        for (CuesManagerListener listener : this.cuesManagerChangedListeners) {
-            CueRemovedEvent e = new CueRemovedEvent(name);
-            listener.cueRemoved(e);
+    private File moveAside(final File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        File badFile = new File(file.getPath() + ".bad");
+        if (badFile.exists() && !badFile.delete()) {
+            throw new IOException("can not replace " + badFile);
         }
+        if (!file.renameTo(badFile)) {
+            throw new IOException("can not move " + file + " to " + badFile);
+        }
+        logger.warning("Unreadable " + file + " moved to " + badFile);
+        return badFile;
     }
 
     /**
-     * Persists the current cues to the given {@link OutputStream}.
+     * Closes the opened show : the cues are written in the show file and its
+     * journal is deleted. Does nothing if no show is opened.
+     *
+     * @throws IOException
+     *             if the show file can not be written
+     * @see CuesManager#openShow(File)
+     */
+    public void closeShow() throws IOException {
+        CueJournal showJournal;
+        synchronized (this) {
+            showJournal = journal;
+            journal = null;
+        }
+        if (showJournal != null) {
+            showJournal.close();
+        }
+    }
+
+    private static Gson createGson() {
+        return new GsonBuilder().registerTypeAdapter(Cue.class,
+                new CueJsonAdapter()).create();
+    }
+
+    /**
+     * Persists the current cues to the given {@link OutputStream} as UTF-8
+     * JSON. The JSON format is kept to import and export the cues, the cues
+     * of Elios are saved in a binary show file.
      *
      * @param stream
      *            the stream used to store the cues
      * @throws IOException
      *             if something goes wrong when persisting
      * @see CuesManager#load(InputStream)
+     * @see CuesManager#openShow(File)
      */
-    public void persist(final OutputStream stream) throws IOException {
-        stream.write(new Gson().toJson(cuesMap).getBytes());
+    public synchronized void persist(final OutputStream stream)
+            throws IOException {
+        // sorted by name so that the same cues always give the same JSON
+        Map<String, Cue> cues = new LinkedHashMap<String, Cue>();
+        for (Cue cue : sortedCues) {
+            cues.put(cue.getName(), cue);
+        }
+        stream.write(createGson().toJson(cues).getBytes("UTF-8"));
     }
 
     /**
-     * Loads cues from the given {@link InputStream}.
+     * Loads cues from the given UTF-8 JSON {@link InputStream}. The loaded
+     * cues replace the current ones and, when a show is opened, are saved in
+     * its journal like the other changes.
      *
      * @param stream
      *            {@link InputStream} from which the cues must be load
+     * @throws IOException
+     *             if the stream can not be decoded
+     * @throws JsonParseException
+     *             if the stream does not contain cues in JSON
      * @see CuesManager#persist(OutputStream)
      */
-    public void load(final InputStream stream) {
-        cuesMap = new Gson().fromJson(new InputStreamReader(stream),
+    public synchronized void load(final InputStream stream) throws IOException {
+        Map<String, Cue> loaded = createGson().fromJson(
+                new InputStreamReader(stream, "UTF-8"),
                 new TypeToken<Map<String, Cue>>() {
                 }.getType());
+        if (loaded == null) {
+            return;
+        }
+        if (journal != null) {
+            for (String name : cuesMap.keySet()) {
+                if (!loaded.containsKey(name)) {
+                    journal.cueRemoved(name);
+                }
+            }
+            // an added cue replaces the cue of the same name on replay
+            for (Cue cue : loaded.values()) {
+                journal.cueAdded(cue);
+            }
+        }
+        cuesMap = loaded;
+        cuesReloaded();
+        logger.info(loaded.size() + " cues loaded");
     }
 }
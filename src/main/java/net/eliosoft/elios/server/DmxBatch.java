@@ -0,0 +1,186 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of changes of the output applied at once by
+ * {@link ArtNetServerManager#applyBatch(DmxBatch)}. The changes of a universe
+ * are merged, in the order they are added, into a single overlay : the batch
+ * publishes one frame per universe whatever the number of changes.
+ *
+ * All the changes are checked when they are added, so a batch that has been
+ * built can always be applied.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public final class DmxBatch {
+
+    private static final int MAX_DMX_VALUE = 255;
+
+    /**
+     * The changes of a universe.
+     */
+    static final class Overlay {
+        private final int index;
+        private final byte[] values = new byte[ArtNetServerManager.DMX_CHANNELS_COUNT];
+        private final boolean[] channelsSet = new boolean[ArtNetServerManager.DMX_CHANNELS_COUNT];
+        // true if a non-additive command line clears the universe first
+        private boolean cleared = false;
+
+        private Overlay(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * Returns the index of the universe.
+         *
+         * @return the index of the universe
+         */
+        int getIndex() {
+            return index;
+        }
+
+        /**
+         * Writes the changes in the given DMX array, with the same result as
+         * the changes processed one by one.
+         *
+         * @param dmxArray
+         *            the DMX array of the universe
+         */
+        void applyTo(final byte[] dmxArray) {
+            if (cleared) {
+                Arrays.fill(dmxArray, (byte) 0);
+            }
+            for (int channel = 0; channel < values.length; channel++) {
+                if (channelsSet[channel]) {
+                    dmxArray[channel] = values[channel];
+                }
+            }
+        }
+    }
+
+    private final Map<Integer, Overlay> overlays = new LinkedHashMap<Integer, Overlay>();
+    private int operationsCount = 0;
+
+    /**
+     * Sets the value of a channel.
+     *
+     * @param subnet
+     *            the subnet of the channel
+     * @param universe
+     *            the universe of the channel
+     * @param channel
+     *            the channel, starting at 1
+     * @param value
+     *            the DMX value, between 0 and 255
+     * @throws BadSyntaxException
+     *             if the universe, the channel or the value is out of range
+     */
+    public void setChannel(final int subnet, final int universe,
+            final int channel, final int value) throws BadSyntaxException {
+        if (channel < 1 || channel > ArtNetServerManager.DMX_CHANNELS_COUNT
+                || value < 0 || value > MAX_DMX_VALUE) {
+            throw new BadSyntaxException();
+        }
+        Overlay overlay = getOverlay(subnet, universe);
+        overlay.values[channel - 1] = (byte) value;
+        overlay.channelsSet[channel - 1] = true;
+        operationsCount++;
+    }
+
+    /**
+     * Adds a compiled command line. Like a command line processed alone, a
+     * non-additive command line clears the universe, including the changes
+     * added before it.
+     *
+     * @param subnet
+     *            the subnet on which the command line applies
+     * @param universe
+     *            the universe on which the command line applies
+     * @param program
+     *            the compiled command line
+     * @param additive
+     *            false if the universe is cleared before the command line
+     * @throws BadSyntaxException
+     *             if the universe is out of range
+     * @see ArtNetServerManager#compileCommandLine(String)
+     */
+    public void addCommandLine(final int subnet, final int universe,
+            final CommandLineProgram program, final boolean additive)
+            throws BadSyntaxException {
+        Overlay overlay = getOverlay(subnet, universe);
+        if (!additive) {
+            Arrays.fill(overlay.values, (byte) 0);
+            Arrays.fill(overlay.channelsSet, false);
+            overlay.cleared = true;
+        }
+        for (int channel = 0; channel < ArtNetServerManager.DMX_CHANNELS_COUNT; channel++) {
+            if (program.isChannelSet(channel)) {
+                overlay.values[channel] = program.getValue(channel);
+                overlay.channelsSet[channel] = true;
+            }
+        }
+        operationsCount++;
+    }
+
+    /**
+     * Returns the number of changes added to the batch.
+     *
+     * @return the number of changes
+     */
+    public int getOperationsCount() {
+        return operationsCount;
+    }
+
+    /**
+     * Returns the number of universes changed by the batch.
+     *
+     * @return the number of universes
+     */
+    public int getUniversesCount() {
+        return overlays.size();
+    }
+
+    /**
+     * Returns the changes of each universe.
+     *
+     * @return the changes of each universe
+     */
+    Collection<Overlay> getOverlays() {
+        return overlays.values();
+    }
+
+    private Overlay getOverlay(final int subnet, final int universe)
+            throws BadSyntaxException {
+        ArtNetServerManager.checkUniverse(subnet, universe);
+        int index = ArtNetServerManager.universeIndex(subnet, universe);
+        Overlay overlay = overlays.get(index);
+        if (overlay == null) {
+            overlay = new Overlay(index);
+            overlays.put(index, overlay);
+        }
+        return overlay;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable block of 32 consecutive DMX values. The blocks are
+ * hash-consed : {@link #intern(byte[])} returns the same instance for the
+ * same values, so the cues that share a part of their look share the memory
+ * of this part. The pool only holds the blocks weakly, a block is forgotten
+ * once no cue uses it.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+final class DmxBlock {
+
+    /**
+     * number of DMX values of a block.
+     */
+    static final int BLOCK_SIZE = 32;
+
+    /**
+     * number of blocks of a DMX universe.
+     */
+    static final int BLOCKS_COUNT = ArtNetServerManager.DMX_CHANNELS_COUNT
+            / BLOCK_SIZE;
+
+    private static final DmxBlock ZERO = new DmxBlock(new byte[BLOCK_SIZE]);
+
+    private static final Map<DmxBlock, WeakReference<DmxBlock>> POOL = new WeakHashMap<DmxBlock, WeakReference<DmxBlock>>();
+
+    private final byte[] values;
+    private final int hash;
+
+    private DmxBlock(final byte[] values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    /**
+     * Returns the shared blocks of the given DMX universe.
+     *
+     * @param dmxArray
+     *            the DMX values of the universe
+     * @return the {@link #BLOCKS_COUNT} blocks of the universe
+     */
+    static DmxBlock[] intern(final byte[] dmxArray) {
+        DmxBlock[] blocks = new DmxBlock[BLOCKS_COUNT];
+        for (int i = 0; i < BLOCKS_COUNT; i++) {
+            blocks[i] = intern(dmxArray, i * BLOCK_SIZE);
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the shared block of the given values.
+     *
+     * @param dmxArray
+     *            the array that holds the values
+     * @param offset
+     *            the offset of the block in the array
+     * @return the shared block
+     */
+    static DmxBlock intern(final byte[] dmxArray, final int offset) {
+        int end = offset + BLOCK_SIZE;
+        int i = offset;
+        while (i < end && dmxArray[i] == 0) {
+            i++;
+        }
+        if (i == end) {
+            // blackout blocks are the most common ones
+            return ZERO;
+        }
+
+        byte[] values = new byte[BLOCK_SIZE];
+        System.arraycopy(dmxArray, offset, values, 0, BLOCK_SIZE);
+        DmxBlock block = new DmxBlock(values);
+        synchronized (POOL) {
+            WeakReference<DmxBlock> ref = POOL.get(block);
+            DmxBlock shared = ref == null ? null : ref.get();
+            if (shared != null) {
+                return shared;
+            }
+            POOL.put(block, new WeakReference<DmxBlock>(block));
+        }
+        return block;
+    }
+
+    /**
+     * Writes the values of the given blocks in a DMX array.
+     *
+     * @param blocks
+     *            the blocks of a universe
+     * @param dmxArray
+     *            the DMX array to write to
+     */
+    static void copy(final DmxBlock[] blocks, final byte[] dmxArray) {
+        for (int i = 0; i < BLOCKS_COUNT; i++) {
+            System.arraycopy(blocks[i].values, 0, dmxArray, i * BLOCK_SIZE,
+                    BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * Returns the number of distinct blocks used by the cues.
+     *
+     * @return the number of distinct blocks
+     */
+    static int getSharedBlocksCount() {
+        synchronized (POOL) {
+            return POOL.size() + 1;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DmxBlock)) {
+            return false;
+        }
+        DmxBlock other = (DmxBlock) obj;
+        return hash == other.hash && Arrays.equals(values, other.values);
+    }
+}
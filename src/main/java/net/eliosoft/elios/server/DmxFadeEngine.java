@@ -0,0 +1,272 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * Crossfades the frames of a {@link DmxFrameStore} to target frames. The
+ * channels that go up use the fade in time and the channels that go down use
+ * the fade out time.
+ *
+ * Fades are requested from any thread and stepped on each tick of the
+ * refresh engine. The state of the fades lives in a fixed number of
+ * preallocated slots and the interpolation uses 16-bit fixed point integer
+ * math, so stepping a fade does not allocate anything but the published
+ * frame. A fade is cancelled when another writer publishes a frame on its
+ * universe, so the programmer always wins over a running fade.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxFadeEngine {
+
+    /**
+     * max number of concurrent fades.
+     */
+    public static final int MAX_FADES = 64;
+
+    private static final int RATIO_SHIFT = 16;
+    private static final int RATIO_ONE = 1 << RATIO_SHIFT;
+    private static final int UNSIGNED_MASK = 0xff;
+
+    /**
+     * Notified of the frames published by the fades.
+     *
+     * @author Jeremie GASTON-RAOUL
+     */
+    public interface FrameListener {
+
+        /**
+         * Called from the refresh thread when a fade published a frame.
+         *
+         * @param index
+         *            the index of the universe
+         * @param frame
+         *            the published frame
+         */
+        void framePublished(int index, DmxFrame frame);
+    }
+
+    /**
+     * A fade requested by a writer, waiting for the next tick.
+     */
+    private static final class FadeRequest {
+        private final int index;
+        private final byte[] target;
+        private final int fadeInTime;
+        private final int fadeOutTime;
+
+        private FadeRequest(final int index, final byte[] target,
+                final int fadeInTime, final int fadeOutTime) {
+            this.index = index;
+            this.target = target;
+            this.fadeInTime = fadeInTime;
+            this.fadeOutTime = fadeOutTime;
+        }
+    }
+
+    /**
+     * A preallocated fade slot, only accessed by the refresh thread.
+     */
+    private static final class Fade {
+        private boolean active;
+        private int index;
+        private long startTime;
+        private int fadeInTime;
+        private int fadeOutTime;
+        private DmxFrame lastFrame;
+        private final byte[] from;
+        private final byte[] to;
+        private final byte[] values;
+
+        private Fade(final int channelsCount) {
+            this.from = new byte[channelsCount];
+            this.to = new byte[channelsCount];
+            this.values = new byte[channelsCount];
+        }
+    }
+
+    private final DmxFrameStore store;
+    private final FrameListener listener;
+
+    private final ConcurrentLinkedQueue<FadeRequest> requests = new ConcurrentLinkedQueue<FadeRequest>();
+
+    private final Fade[] fades = new Fade[MAX_FADES];
+
+    private volatile int activeFadesCount = 0;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(DmxFadeEngine.class.getName());
+
+    /**
+     * Constructs an engine without fade.
+     *
+     * @param store
+     *            the store of the faded frames
+     * @param listener
+     *            the listener notified of the published frames
+     */
+    public DmxFadeEngine(final DmxFrameStore store,
+            final FrameListener listener) {
+        this.store = store;
+        this.listener = listener;
+        int channelsCount = store.getFrame(0).getDmxArray().length;
+        for (int i = 0; i < MAX_FADES; i++) {
+            fades[i] = new Fade(channelsCount);
+        }
+    }
+
+    /**
+     * Requests a fade from the current frame of a universe to the given
+     * values. The fade starts on the next tick and replaces the fade running
+     * on the universe, if any, from its current values.
+     *
+     * @param index
+     *            the index of the universe
+     * @param target
+     *            the target values, the array is read by the engine and must
+     *            not be modified afterwards
+     * @param fadeInTime
+     *            the time of the channels that go up in milliseconds
+     * @param fadeOutTime
+     *            the time of the channels that go down in milliseconds
+     */
+    public void fade(final int index, final byte[] target,
+            final int fadeInTime, final int fadeOutTime) {
+        requests.add(new FadeRequest(index, target, fadeInTime, fadeOutTime));
+    }
+
+    /**
+     * Returns the number of running fades.
+     *
+     * @return the number of running fades
+     */
+    public int getActiveFadesCount() {
+        return activeFadesCount;
+    }
+
+    /**
+     * Starts the requested fades and steps the running ones. Must always be
+     * called from the same thread.
+     *
+     * @param now
+     *            the time of the tick in milliseconds
+     */
+    public void step(final long now) {
+        FadeRequest request;
+        while ((request = requests.poll()) != null) {
+            startFade(request, now);
+        }
+
+        int count = 0;
+        for (Fade fade : fades) {
+            if (fade.active) {
+                stepFade(fade, now);
+                if (fade.active) {
+                    count++;
+                }
+            }
+        }
+        activeFadesCount = count;
+    }
+
+    private void startFade(final FadeRequest request, final long now) {
+        Fade slot = null;
+        for (Fade fade : fades) {
+            if (fade.active && fade.index == request.index) {
+                slot = fade;
+                break;
+            }
+            if (!fade.active && slot == null) {
+                slot = fade;
+            }
+        }
+        if (slot == null) {
+            logger.warning("Too many fades, universe " + request.index
+                    + " is snapped to its target");
+            listener.framePublished(request.index, store.publish(
+                    request.index, request.target));
+            return;
+        }
+        DmxFrame current = store.getFrame(request.index);
+        slot.active = true;
+        slot.index = request.index;
+        slot.startTime = now;
+        slot.fadeInTime = request.fadeInTime;
+        slot.fadeOutTime = request.fadeOutTime;
+        slot.lastFrame = current;
+        current.copyTo(slot.from);
+        current.copyTo(slot.values);
+        System.arraycopy(request.target, 0, slot.to, 0, slot.to.length);
+    }
+
+    private void stepFade(final Fade fade, final long now) {
+        if (store.getFrame(fade.index) != fade.lastFrame) {
+            // another writer took the universe over
+            release(fade);
+            return;
+        }
+        long elapsed = now - fade.startTime;
+        int upRatio = ratio(elapsed, fade.fadeInTime);
+        int downRatio = ratio(elapsed, fade.fadeOutTime);
+
+        byte[] from = fade.from;
+        byte[] to = fade.to;
+        byte[] values = fade.values;
+        int changes = 0;
+        for (int i = 0; i < values.length; i++) {
+            int start = from[i] & UNSIGNED_MASK;
+            int delta = (to[i] & UNSIGNED_MASK) - start;
+            int r = delta > 0 ? upRatio : downRatio;
+            byte value = (byte) (start + ((delta * r) >> RATIO_SHIFT));
+            changes |= values[i] ^ value;
+            values[i] = value;
+        }
+
+        if (changes != 0) {
+            DmxFrame frame = store.compareAndPublish(fade.index,
+                    fade.lastFrame, values);
+            if (frame == null) {
+                release(fade);
+                return;
+            }
+            fade.lastFrame = frame;
+            listener.framePublished(fade.index, frame);
+        }
+        if (upRatio == RATIO_ONE && downRatio == RATIO_ONE) {
+            release(fade);
+        }
+    }
+
+    private static void release(final Fade fade) {
+        fade.active = false;
+        fade.lastFrame = null;
+    }
+
+    private static int ratio(final long elapsed, final int time) {
+        if (time <= 0 || elapsed >= time) {
+            return RATIO_ONE;
+        }
+        return (int) ((elapsed << RATIO_SHIFT) / time);
+    }
+}
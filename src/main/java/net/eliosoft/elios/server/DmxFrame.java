@@ -0,0 +1,90 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+/**
+ * An immutable snapshot of the DMX values of a universe. Frames are published
+ * by a {@link DmxFrameStore}, each publication of a universe increments its
+ * version.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public final class DmxFrame {
+
+    private static final int UNSIGNED_MASK = 0xff;
+
+    private final byte[] dmxArray;
+    private final long version;
+
+    /**
+     * Constructs a frame. The frame takes the ownership of the array, which
+     * must not be modified afterwards.
+     *
+     * @param dmxArray
+     *            the values of the frame
+     * @param version
+     *            the version of the frame
+     */
+    DmxFrame(final byte[] dmxArray, final long version) {
+        this.dmxArray = dmxArray;
+        this.version = version;
+    }
+
+    /**
+     * Returns the values of the frame. The returned array is shared and must
+     * not be modified.
+     *
+     * @return the values of the frame
+     */
+    public byte[] getDmxArray() {
+        return dmxArray;
+    }
+
+    /**
+     * Returns the value of a channel between 0 and 255.
+     *
+     * @param channel
+     *            the channel index, starting at 0
+     * @return the value of the channel
+     */
+    public int getValue(final int channel) {
+        return dmxArray[channel] & UNSIGNED_MASK;
+    }
+
+    /**
+     * Copies the values of the frame in the given array.
+     *
+     * @param dest
+     *            the destination array
+     */
+    public void copyTo(final byte[] dest) {
+        System.arraycopy(dmxArray, 0, dest, 0, dmxArray.length);
+    }
+
+    /**
+     * Returns the version of the frame, 0 for a universe that has never been
+     * written.
+     *
+     * @return the version of the frame
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free store of the DMX frames of many universes. Each universe has a
+ * front frame, read by everyone, and writers build the next frame in a
+ * private back buffer before swapping it in with a compare-and-set. Readers
+ * therefore always get a consistent snapshot, without any lock.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxFrameStore {
+
+    /**
+     * Modifies the values of a frame before its publication.
+     *
+     * @author Jeremie GASTON-RAOUL
+     */
+    public interface FrameUpdater {
+
+        /**
+         * Modifies the given array, initialized with the values of the current
+         * frame. May be called more than once if another writer publishes a
+         * frame concurrently.
+         *
+         * @param dmxArray
+         *            the private array of the next frame
+         */
+        void update(byte[] dmxArray);
+    }
+
+    private final AtomicReferenceArray<DmxFrame> frames;
+
+    private final int channelsCount;
+
+    /**
+     * Constructs a store of blank frames.
+     *
+     * @param universesCount
+     *            the number of universes of the store
+     * @param channelsCount
+     *            the number of channels of a frame
+     */
+    public DmxFrameStore(final int universesCount, final int channelsCount) {
+        this.channelsCount = channelsCount;
+        this.frames = new AtomicReferenceArray<DmxFrame>(universesCount);
+        DmxFrame blank = new DmxFrame(new byte[channelsCount], 0);
+        for (int i = 0; i < universesCount; i++) {
+            frames.set(i, blank);
+        }
+    }
+
+    /**
+     * Returns the current frame of a universe.
+     *
+     * @param index
+     *            the index of the universe
+     * @return the current frame
+     */
+    public DmxFrame getFrame(final int index) {
+        return frames.get(index);
+    }
+
+    /**
+     * Publishes a copy of the given values as the next frame of a universe.
+     *
+     * @param index
+     *            the index of the universe
+     * @param dmxArray
+     *            the values to publish
+     * @return the published frame
+     */
+    public DmxFrame publish(final int index, final byte[] dmxArray) {
+        final byte[] next = new byte[channelsCount];
+        System.arraycopy(dmxArray, 0, next, 0, channelsCount);
+        DmxFrame current;
+        DmxFrame frame;
+        do {
+            current = frames.get(index);
+            frame = new DmxFrame(next, current.getVersion() + 1);
+        } while (!frames.compareAndSet(index, current, frame));
+        return frame;
+    }
+
+    /**
+     * Publishes a copy of the given values as the next frame of a universe
+     * only if the current frame is still the expected one.
+     *
+     * @param index
+     *            the index of the universe
+     * @param expected
+     *            the frame expected to be the current one
+     * @param dmxArray
+     *            the values to publish
+     * @return the published frame or null if another frame was published in
+     *         the meantime
+     */
+    public DmxFrame compareAndPublish(final int index, final DmxFrame expected,
+            final byte[] dmxArray) {
+        final byte[] next = new byte[channelsCount];
+        System.arraycopy(dmxArray, 0, next, 0, channelsCount);
+        DmxFrame frame = new DmxFrame(next, expected.getVersion() + 1);
+        return frames.compareAndSet(index, expected, frame) ? frame : null;
+    }
+
+    /**
+     * Publishes the next frame of a universe built from its current frame by
+     * the given updater. If another writer publishes a frame in the meantime,
+     * the next frame is built again from the newly published one.
+     *
+     * @param index
+     *            the index of the universe
+     * @param updater
+     *            the updater that builds the next frame
+     * @return the published frame
+     */
+    public DmxFrame update(final int index, final FrameUpdater updater) {
+        final byte[] next = new byte[channelsCount];
+        DmxFrame current;
+        DmxFrame frame;
+        do {
+            current = frames.get(index);
+            current.copyTo(next);
+            updater.update(next);
+            frame = new DmxFrame(next, current.getVersion() + 1);
+        } while (!frames.compareAndSet(index, current, frame));
+        return frame;
+    }
+
+    /**
+     * Returns the number of universes of the store.
+     *
+     * @return the number of universes
+     */
+    public int getUniversesCount() {
+        return frames.length();
+    }
+}
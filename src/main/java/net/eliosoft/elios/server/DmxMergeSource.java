@@ -0,0 +1,214 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A source of DMX frames merged by a {@link DmxMerger}. A source keeps the
+ * last frame it published for each universe, the time of its last change and
+ * the time it was last seen. A source that is not seen for longer than its
+ * timeout is left out of the merge of the universe.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxMergeSource {
+
+    /**
+     * default priority of a source.
+     */
+    public static final int DEFAULT_PRIORITY = 100;
+
+    /**
+     * min priority of a source.
+     */
+    public static final int MIN_PRIORITY = 0;
+
+    /**
+     * max priority of a source.
+     */
+    public static final int MAX_PRIORITY = 200;
+
+    /**
+     * timeout value of a source that never times out.
+     */
+    public static final int NO_TIMEOUT = 0;
+
+    private final String name;
+
+    private volatile int priority;
+    private volatile int timeout;
+
+    private final AtomicReferenceArray<DmxFrame> frames;
+    private final AtomicLongArray changeTimes;
+    private final AtomicLongArray seenTimes;
+
+    /**
+     * Constructs a source that has not published any frame yet.
+     *
+     * @param name
+     *            the name of the source
+     * @param universesCount
+     *            the number of universes
+     * @param priority
+     *            the priority of the source
+     * @param timeout
+     *            the timeout of the source in milliseconds or
+     *            {@link #NO_TIMEOUT}
+     */
+    public DmxMergeSource(final String name, final int universesCount,
+            final int priority, final int timeout) {
+        this.name = name;
+        this.frames = new AtomicReferenceArray<DmxFrame>(universesCount);
+        this.changeTimes = new AtomicLongArray(universesCount);
+        this.seenTimes = new AtomicLongArray(universesCount);
+        setPriority(priority);
+        setTimeout(timeout);
+    }
+
+    /**
+     * Publishes a frame of the source. A frame older than the current one,
+     * which may happen when two writers race, is ignored.
+     *
+     * @param index
+     *            the index of the universe
+     * @param frame
+     *            the frame to publish
+     * @param now
+     *            the time of the publication in milliseconds
+     * @return true if the frame was published
+     */
+    public boolean update(final int index, final DmxFrame frame, final long now) {
+        DmxFrame current;
+        do {
+            current = frames.get(index);
+            if (current != null && current.getVersion() >= frame.getVersion()) {
+                seen(index, now);
+                return false;
+            }
+        } while (!frames.compareAndSet(index, current, frame));
+        changeTimes.set(index, now);
+        seen(index, now);
+        return true;
+    }
+
+    /**
+     * Records that the source sent a universe without changing it.
+     *
+     * @param index
+     *            the index of the universe
+     * @param now
+     *            the time of the reception in milliseconds
+     */
+    public void seen(final int index, final long now) {
+        seenTimes.set(index, now);
+    }
+
+    /**
+     * Returns the frame of a universe if the source is alive for it.
+     *
+     * @param index
+     *            the index of the universe
+     * @param now
+     *            the current time in milliseconds
+     * @return the frame or null if the source has no frame for the universe or
+     *         timed out
+     */
+    public DmxFrame getLiveFrame(final int index, final long now) {
+        DmxFrame frame = frames.get(index);
+        if (frame == null) {
+            return null;
+        }
+        int sourceTimeout = this.timeout;
+        if (sourceTimeout != NO_TIMEOUT
+                && now - seenTimes.get(index) > sourceTimeout) {
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the time of the last change of a universe.
+     *
+     * @param index
+     *            the index of the universe
+     * @return the time in milliseconds
+     */
+    public long getChangeTime(final int index) {
+        return changeTimes.get(index);
+    }
+
+    /**
+     * Returns the name of the source.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the priority of the source.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the source. Only the live sources of highest
+     * priority are merged.
+     *
+     * @param priority
+     *            the priority between {@link #MIN_PRIORITY} and
+     *            {@link #MAX_PRIORITY}
+     */
+    public void setPriority(final int priority) {
+        if (priority < MIN_PRIORITY || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("priority out of range : "
+                    + priority);
+        }
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the timeout of the source.
+     *
+     * @return the timeout in milliseconds or {@link #NO_TIMEOUT}
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout of the source.
+     *
+     * @param timeout
+     *            the timeout in milliseconds or {@link #NO_TIMEOUT}
+     */
+    public void setTimeout(final int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("negative timeout : " + timeout);
+        }
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+/**
+ * Merges the frames of many {@link DmxMergeSource} into the output frame of a
+ * universe. Only the live sources of the highest priority are merged, with
+ * one of the following modes :
+ * <ul>
+ * <li>HTP (highest takes precedence) : each channel takes the highest value
+ * of the sources ;</li>
+ * <li>LTP (latest takes precedence) : the universe takes the values of the
+ * source that changed it last.</li>
+ * </ul>
+ * The merge is done on the refresh thread in a preallocated buffer, the loops
+ * only use primitive arrays so the JIT can vectorize them. The array of the
+ * sources is only rebuilt when a source is added or removed, a merge
+ * allocates nothing.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxMerger {
+
+    /**
+     * The merge modes.
+     *
+     * @author Jeremie GASTON-RAOUL
+     */
+    public enum MergeMode {
+        /**
+         * highest takes precedence.
+         */
+        HTP,
+        /**
+         * latest takes precedence.
+         */
+        LTP
+    }
+
+    /**
+     * default timeout of the network sources in milliseconds, as recommended
+     * by the ArtNet specification.
+     */
+    public static final int DEFAULT_SOURCE_TIMEOUT = 10000;
+
+    private static final int UNSIGNED_MASK = 0xff;
+
+    private static final DmxMergeSource[] NO_SOURCE = new DmxMergeSource[0];
+
+    // replaced when a source is added or removed, never modified
+    private volatile DmxMergeSource[] sources = NO_SOURCE;
+
+    private volatile MergeMode mergeMode = MergeMode.HTP;
+
+    // only accessed by the merging thread
+    private final int[] mergedValues;
+
+    /**
+     * Constructs a merger without source.
+     *
+     * @param channelsCount
+     *            the number of channels of a frame
+     */
+    public DmxMerger(final int channelsCount) {
+        this.mergedValues = new int[channelsCount];
+    }
+
+    /**
+     * Adds a source to the merge.
+     *
+     * @param source
+     *            the source to add
+     */
+    public synchronized void addSource(final DmxMergeSource source) {
+        for (DmxMergeSource added : sources) {
+            if (added == source) {
+                return;
+            }
+        }
+        DmxMergeSource[] updated = new DmxMergeSource[sources.length + 1];
+        System.arraycopy(sources, 0, updated, 0, sources.length);
+        updated[sources.length] = source;
+        sources = updated;
+    }
+
+    /**
+     * Removes a source from the merge.
+     *
+     * @param source
+     *            the source to remove
+     */
+    public synchronized void removeSource(final DmxMergeSource source) {
+        DmxMergeSource[] current = sources;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == source) {
+                DmxMergeSource[] updated = new DmxMergeSource[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, updated.length
+                        - i);
+                sources = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the source of the given name.
+     *
+     * @param name
+     *            the name of the source
+     * @return the source or null if there is no source with this name
+     */
+    public DmxMergeSource getSource(final String name) {
+        for (DmxMergeSource source : sources) {
+            if (source.getName().equals(name)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the merge mode.
+     *
+     * @param mergeMode
+     *            the merge mode
+     */
+    public void setMergeMode(final MergeMode mergeMode) {
+        this.mergeMode = mergeMode;
+    }
+
+    /**
+     * Returns the merge mode.
+     *
+     * @return the merge mode
+     */
+    public MergeMode getMergeMode() {
+        return mergeMode;
+    }
+
+    /**
+     * Merges the live sources of a universe. Must always be called from the
+     * same thread.
+     *
+     * @param index
+     *            the index of the universe
+     * @param now
+     *            the current time in milliseconds
+     * @param dest
+     *            the array that receives the merged values
+     * @return false if no source is alive for the universe, dest is left
+     *         untouched in this case
+     */
+    public boolean merge(final int index, final long now, final byte[] dest) {
+        DmxMergeSource[] snapshot = sources;
+
+        int topPriority = -1;
+        for (DmxMergeSource source : snapshot) {
+            if (source.getPriority() > topPriority
+                    && source.getLiveFrame(index, now) != null) {
+                topPriority = source.getPriority();
+            }
+        }
+        if (topPriority == -1) {
+            return false;
+        }
+
+        if (mergeMode == MergeMode.LTP) {
+            DmxFrame latest = null;
+            long latestChange = Long.MIN_VALUE;
+            for (DmxMergeSource source : snapshot) {
+                DmxFrame frame = source.getLiveFrame(index, now);
+                if (frame != null && source.getPriority() == topPriority
+                        && source.getChangeTime(index) > latestChange) {
+                    latest = frame;
+                    latestChange = source.getChangeTime(index);
+                }
+            }
+            if (latest == null) {
+                // the sources timed out in the meantime
+                return false;
+            }
+            latest.copyTo(dest);
+            return true;
+        }
+
+        int[] values = mergedValues;
+        int length = values.length;
+        for (int i = 0; i < length; i++) {
+            values[i] = 0;
+        }
+        for (DmxMergeSource source : snapshot) {
+            DmxFrame frame = source.getLiveFrame(index, now);
+            if (frame != null && source.getPriority() == topPriority) {
+                byte[] data = frame.getDmxArray();
+                for (int i = 0; i < length; i++) {
+                    values[i] = Math.max(values[i], data[i] & UNSIGNED_MASK);
+                }
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            dest[i] = (byte) values[i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * An engine that ticks at a fixed rate on a single dedicated thread. On each
+ * tick the {@link RefreshTask} is asked to output the DMX frames that must be
+ * sent.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxRefreshEngine {
+
+    /**
+     * default refresh rate in Hz.
+     */
+    public static final int DEFAULT_REFRESH_RATE = 44;
+
+    /**
+     * min refresh rate in Hz.
+     */
+    public static final int MIN_REFRESH_RATE = 1;
+
+    /**
+     * max refresh rate in Hz (the max rate of a full DMX512 universe).
+     */
+    public static final int MAX_REFRESH_RATE = 44;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final String THREAD_NAME = "Elios DMX refresh";
+
+    /**
+     * The task executed on each tick of the engine.
+     *
+     * @author Jeremie GASTON-RAOUL
+     */
+    public interface RefreshTask {
+
+        /**
+         * Called on each tick of the engine, always from the same thread.
+         *
+         * @param now
+         *            the time of the tick in milliseconds
+         */
+        void refresh(long now);
+    }
+
+    private final RefreshTask task;
+
+    private int refreshRate = DEFAULT_REFRESH_RATE;
+
+    private ScheduledExecutorService scheduler = null;
+
+    private long lastTickNanos;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(DmxRefreshEngine.class.getName());
+
+    /**
+     * Constructs a stopped engine.
+     *
+     * @param task
+     *            the task called on each tick
+     */
+    public DmxRefreshEngine(final RefreshTask task) {
+        this.task = task;
+    }
+
+    /**
+     * Starts the engine. Does nothing if the engine is already running.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MAX_PRIORITY);
+                        return thread;
+                    }
+                });
+        final long period = NANOS_PER_SECOND / refreshRate;
+        lastTickNanos = System.nanoTime() - period;
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick(period);
+            }
+        }, 0, period, TimeUnit.NANOSECONDS);
+        logger.info("DMX refresh engine started (" + refreshRate + " Hz)");
+    }
+
+    /**
+     * Stops the engine and waits for the current tick to complete.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        logger.info("DMX refresh engine stopped");
+    }
+
+    /**
+     * Returns true if the engine is running.
+     *
+     * @return true if the engine is running
+     */
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Sets the refresh rate. A running engine is restarted to apply the new
+     * rate.
+     *
+     * @param refreshRate
+     *            the refresh rate in Hz
+     */
+    public synchronized void setRefreshRate(final int refreshRate) {
+        if (refreshRate < MIN_REFRESH_RATE || refreshRate > MAX_REFRESH_RATE) {
+            throw new IllegalArgumentException("refresh rate out of range : "
+                    + refreshRate);
+        }
+        if (this.refreshRate != refreshRate) {
+            this.refreshRate = refreshRate;
+            if (isRunning()) {
+                stop();
+                start();
+            }
+        }
+    }
+
+    /**
+     * Returns the refresh rate.
+     *
+     * @return the refresh rate in Hz
+     */
+    public synchronized int getRefreshRate() {
+        return refreshRate;
+    }
+
+    private void tick(final long period) {
+        long nowNanos = System.nanoTime();
+        // a fixed rate scheduler catches up late ticks in a burst, skip them
+        // to keep a steady output
+        if (nowNanos - lastTickNanos < period / 2) {
+            return;
+        }
+        lastTickNanos = nowNanos;
+        try {
+            task.refresh(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // an exception would cancel every following tick
+            logger.log(Level.SEVERE, "DMX refresh failed", e);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * The bus carrying the events of the application. The events are published
+ * on typed topics and each subscriber chooses the thread it receives them on
+ * (see {@link Delivery}). Publishing never waits for a subscriber : only the
+ * {@link Delivery#INLINE} subscribers are called on the publishing thread,
+ * and they must be quick.
+ *
+ * The subscribers of a topic are kept in an array which is replaced on each
+ * change, so publishing takes no lock. The same event instance is given to
+ * all the subscribers, so the events must be immutable.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public final class EventBus {
+
+    /**
+     * The threads on which a subscriber receives the events.
+     */
+    public enum Delivery {
+        /** on the publishing thread, before publish returns. */
+        INLINE,
+        /**
+         * on the event dispatch thread, for the interface, in the order of
+         * publication. An event published on the event dispatch thread while
+         * no other event waits for it is delivered before publish returns,
+         * so the interface sees its own changes at once.
+         */
+        EDT,
+        /**
+         * on the threads of the bus, in order. A slow subscriber only delays
+         * its own events.
+         */
+        ASYNC
+    }
+
+    /**
+     * A subscriber of a topic.
+     *
+     * @param <E>
+     *            the type of the events
+     */
+    public interface Subscriber<E> {
+        /**
+         * Called when an event is published on the topic.
+         *
+         * @param event
+         *            the event
+         */
+        void eventPublished(E event);
+    }
+
+    /**
+     * A topic of the bus, carrying events of a given type.
+     *
+     * @param <E>
+     *            the type of the events
+     */
+    public static final class Topic<E> {
+        private final String name;
+        private volatile Subscription<E>[] subscriptions = newArray(0);
+
+        /**
+         * Constructs a topic.
+         *
+         * @param name
+         *            the name of the topic, used in the logs
+         */
+        public Topic(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the name of the topic.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of subscribers of the topic.
+         *
+         * @return the number of subscribers
+         */
+        public int getSubscribersCount() {
+            return subscriptions.length;
+        }
+
+        private synchronized void add(final Subscription<E> subscription) {
+            Subscription<E>[] current = subscriptions;
+            Subscription<E>[] updated = newArray(current.length + 1);
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+        }
+
+        private synchronized void remove(final Subscription<E> subscription) {
+            Subscription<E>[] current = subscriptions;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscription) {
+                    Subscription<E>[] updated = newArray(current.length - 1);
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i,
+                            current.length - i - 1);
+                    subscriptions = updated;
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E> Subscription<E>[] newArray(final int length) {
+            return new Subscription[length];
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The subscription of a subscriber to a topic.
+     *
+     * @param <E>
+     *            the type of the events
+     */
+    public static final class Subscription<E> {
+        private final Topic<E> topic;
+        private final Subscriber<? super E> subscriber;
+        private final Delivery delivery;
+
+        // the events waiting for an asynchronous subscriber
+        private final ConcurrentLinkedQueue<E> pending = new ConcurrentLinkedQueue<E>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        private final Runnable drainer = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        private Subscription(final Topic<E> topic,
+                final Subscriber<? super E> subscriber, final Delivery delivery) {
+            this.topic = topic;
+            this.subscriber = subscriber;
+            this.delivery = delivery;
+        }
+
+        /**
+         * Stops the delivery of the events to the subscriber. Events already
+         * handed to another thread may still be delivered.
+         */
+        public void cancel() {
+            topic.remove(this);
+        }
+
+        private void deliver(final E event) {
+            switch (delivery) {
+            case INLINE:
+                call(event);
+                break;
+            case EDT:
+                final AtomicInteger edtPendingCount =
+                    getInstance().edtPendingCount;
+                // an event queued before this one must be delivered first
+                if (edtPendingCount.get() == 0
+                        && SwingUtilities.isEventDispatchThread()) {
+                    call(event);
+                    break;
+                }
+                edtPendingCount.incrementAndGet();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            call(event);
+                        } finally {
+                            edtPendingCount.decrementAndGet();
+                        }
+                    }
+                });
+                break;
+            default:
+                if (pendingCount.get() >= MAX_PENDING_EVENTS) {
+                    getInstance().droppedEventsCount.incrementAndGet();
+                    return;
+                }
+                pending.add(event);
+                // only the first pending event schedules a drain
+                if (pendingCount.getAndIncrement() == 0) {
+                    getInstance().asyncExecutor.execute(drainer);
+                }
+                break;
+            }
+        }
+
+        private void drain() {
+            do {
+                call(pending.poll());
+            } while (pendingCount.decrementAndGet() > 0);
+        }
+
+        private void call(final E event) {
+            try {
+                subscriber.eventPublished(event);
+            } catch (RuntimeException e) {
+                getInstance().logger.log(Level.SEVERE,
+                        "subscriber of " + topic + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * maximum number of events waiting for an asynchronous subscriber, the
+     * next ones are dropped.
+     */
+    public static final int MAX_PENDING_EVENTS = 1024;
+
+    private static final int ASYNC_THREADS_COUNT = 2;
+    private static final String THREAD_NAME = "Elios events";
+
+    private static EventBus instance;
+
+    private final ExecutorService asyncExecutor;
+    private final AtomicLong droppedEventsCount = new AtomicLong();
+
+    // number of events queued on the event dispatch thread
+    private final AtomicInteger edtPendingCount = new AtomicInteger();
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(EventBus.class.getName());
+
+    private EventBus() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                ASYNC_THREADS_COUNT, ASYNC_THREADS_COUNT, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * get the singleton instance of the EventBus.
+     *
+     * @return the instance
+     */
+    public static synchronized EventBus getInstance() {
+        if (EventBus.instance == null) {
+            EventBus.instance = new EventBus();
+        }
+        return EventBus.instance;
+    }
+
+    /**
+     * Subscribes to a topic.
+     *
+     * @param <E>
+     *            the type of the events
+     * @param topic
+     *            the topic
+     * @param delivery
+     *            the threads on which the events are received
+     * @param subscriber
+     *            the subscriber
+     * @return the subscription, to cancel it
+     */
+    public <E> Subscription<E> subscribe(final Topic<E> topic,
+            final Delivery delivery, final Subscriber<? super E> subscriber) {
+        Subscription<E> subscription = new Subscription<E>(topic, subscriber,
+                delivery);
+        topic.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Publishes an event to the subscribers of a topic.
+     *
+     * @param <E>
+     *            the type of the events
+     * @param topic
+     *            the topic
+     * @param event
+     *            the event, given as is to all the subscribers
+     */
+    public <E> void publish(final Topic<E> topic, final E event) {
+        Subscription<E>[] subscriptions = topic.subscriptions;
+        for (int i = 0; i < subscriptions.length; i++) {
+            subscriptions[i].deliver(event);
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because an asynchronous
+     * subscriber was too late.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEventsCount() {
+        return droppedEventsCount.get();
+    }
+}
@@ -21,19 +21,40 @@ package net.eliosoft.elios.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import net.eliosoft.elios.main.LoggersManager;
+import net.eliosoft.elios.server.handler.BatchHttpHandler;
 import net.eliosoft.elios.server.handler.CommandLineHttpHandler;
 import net.eliosoft.elios.server.handler.CuesHttpHandler;
 import net.eliosoft.elios.server.handler.DMXTableHttpHandler;
+import net.eliosoft.elios.server.handler.DmxStreamHttpHandler;
+import net.eliosoft.elios.server.handler.HttpStatsHttpHandler;
+import net.eliosoft.elios.server.handler.InputStatsHttpHandler;
 import net.eliosoft.elios.server.handler.ParamsHttpHandler;
+import net.eliosoft.elios.server.handler.PlaybackHttpHandler;
 import net.eliosoft.elios.server.handler.ResourceHttpHandler;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 /**
- * The Manager of the Http Server.
+ * The Manager of the Http Server. The requests are handled by a bounded pool
+ * of threads : when all the threads are busy and the queue is full, the
+ * request is answered with a 503 status by a thread of its own, so that a
+ * slow client never blocks the dispatcher of the server. The requests that
+ * store or play cues may only use half of the threads, so they never stall
+ * the quick reads of the web remote.
  *
  * @author Jeremie GASTON-RAOUL
  */
@@ -42,17 +63,53 @@ public class HttpServerManager {
 
     private final ResourceHttpHandler resourceHttpHandler = new ResourceHttpHandler();
     private final CommandLineHttpHandler commanLineHttpHandler = new CommandLineHttpHandler();
+    private final BatchHttpHandler batchHttpHandler = new BatchHttpHandler();
     private final ParamsHttpHandler paramsHttpHandler = new ParamsHttpHandler();
     private final DMXTableHttpHandler dmxTableHttpHandler = new DMXTableHttpHandler();
     private final CuesHttpHandler cuesHttpHandler = new CuesHttpHandler();
+    private final PlaybackHttpHandler playbackHttpHandler = new PlaybackHttpHandler();
+    private final DmxStreamHttpHandler dmxStreamHttpHandler = new DmxStreamHttpHandler();
+    private final InputStatsHttpHandler inputStatsHttpHandler = new InputStatsHttpHandler();
+    private final HttpStatsHttpHandler httpStatsHttpHandler = new HttpStatsHttpHandler();
 
     /**
      * default value for http port.
      */
     public static final int DEFAULT_HTTP_PORT = 8080;
 
+    /**
+     * default number of threads handling the requests.
+     */
+    public static final int DEFAULT_THREADS_COUNT = 8;
+
+    /**
+     * default number of requests waiting for a thread.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+
+    /**
+     * default number of connections waiting to be accepted.
+     */
+    public static final int DEFAULT_BACKLOG = 50;
+
+    private static final int THREAD_KEEP_ALIVE_TIME = 60;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String RETRY_AFTER = "1";
+    private static final String THREAD_NAME = "Elios HTTP";
+    private static final String REJECTION_THREAD_NAME = "Elios HTTP rejections";
+
+    // set by the rejection handler on the thread answering a rejected request
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<Boolean>();
+
     private HttpServer httpServer = null;
+    private ThreadPoolExecutor executor = null;
+    private ExecutorService rejectionExecutor = null;
     private int inPort = HttpServerManager.DEFAULT_HTTP_PORT;
+    private int threadsCount = DEFAULT_THREADS_COUNT;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int backlog = DEFAULT_BACKLOG;
+
+    private final AtomicLong rejectedRequestsCount = new AtomicLong();
 
     private final transient Logger logger = LoggersManager.getInstance()
             .getLogger(HttpServerManager.class.getName());
@@ -89,8 +146,13 @@ public class HttpServerManager {
      */
     public void stopHttp() {
         if (this.httpServer != null) {
+            this.dmxStreamHttpHandler.stop();
             this.httpServer.stop(0);
             this.httpServer = null;
+            this.executor.shutdown();
+            this.executor = null;
+            this.rejectionExecutor.shutdown();
+            this.rejectionExecutor = null;
             logger.info("Http Stopped");
         }
     }
@@ -105,16 +167,210 @@ public class HttpServerManager {
         this.inPort = inPort;
     }
 
+    /**
+     * Sets the number of threads handling the requests. Applied on next
+     * start.
+     *
+     * @param threadsCount
+     *            the number of threads, at least 2
+     */
+    public void setThreadsCount(final int threadsCount) {
+        if (threadsCount < 2) {
+            throw new IllegalArgumentException("at least 2 threads needed");
+        }
+        this.threadsCount = threadsCount;
+    }
+
+    /**
+     * Returns the number of threads handling the requests.
+     *
+     * @return the number of threads
+     */
+    public int getThreadsCount() {
+        return threadsCount;
+    }
+
+    /**
+     * Sets the number of requests that can wait for a thread. Applied on next
+     * start.
+     *
+     * @param queueSize
+     *            the size of the queue, at least 1
+     */
+    public void setQueueSize(final int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queue size must be positive");
+        }
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns the number of requests that can wait for a thread.
+     *
+     * @return the size of the queue
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets the number of connections waiting to be accepted by the system.
+     * Applied on next start.
+     *
+     * @param backlog
+     *            the backlog, 0 for the system default
+     */
+    public void setBacklog(final int backlog) {
+        this.backlog = Math.max(0, backlog);
+    }
+
+    /**
+     * Returns the number of connections waiting to be accepted by the
+     * system.
+     *
+     * @return the backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Returns the number of requests answered with a 503 status because the
+     * server was busy, since Elios started.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedRequestsCount() {
+        return rejectedRequestsCount.get();
+    }
+
+    /**
+     * Returns the number of requests being handled.
+     *
+     * @return the number of active requests, 0 if the server is stopped
+     */
+    public int getActiveRequestsCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread.
+     *
+     * @return the number of queued requests, 0 if the server is stopped
+     */
+    public int getQueuedRequestsCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
     private void initHttpServer() throws IOException {
         this.httpServer = HttpServer.create(new InetSocketAddress(this.inPort),
-                0);
-        this.httpServer.createContext("/", this.resourceHttpHandler);
-        this.httpServer.createContext("/data/commandLine",
-                this.commanLineHttpHandler);
-        this.httpServer.createContext("/data/params", this.paramsHttpHandler);
-        this.httpServer.createContext("/data/dmxTable",
-                this.dmxTableHttpHandler);
-        this.httpServer.createContext("/data/cues", this.cuesHttpHandler);
+                this.backlog);
+        // the exchange reads the request line and the headers before the
+        // guard can answer, which must not happen on the dispatcher thread
+        final ExecutorService rejections = Executors
+                .newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, REJECTION_THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.rejectionExecutor = rejections;
+        this.executor = new ThreadPoolExecutor(this.threadsCount,
+                this.threadsCount, THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(this.queueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, THREAD_NAME);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(final Runnable r,
+                            final ThreadPoolExecutor pool) {
+                        rejectedRequestsCount.incrementAndGet();
+                        rejections.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                REJECTED.set(Boolean.TRUE);
+                                try {
+                                    r.run();
+                                } finally {
+                                    REJECTED.remove();
+                                }
+                            }
+                        });
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.httpServer.setExecutor(this.executor);
+
+        Semaphore heavyRequests = new Semaphore(this.threadsCount / 2);
+        this.httpServer.createContext("/", guard(this.resourceHttpHandler,
+                null));
+        this.httpServer.createContext("/data/commandLine", guard(
+                this.commanLineHttpHandler, null));
+        this.httpServer.createContext("/data/batch", guard(
+                this.batchHttpHandler, null));
+        this.httpServer.createContext("/data/params", guard(
+                this.paramsHttpHandler, null));
+        this.httpServer.createContext("/data/dmxTable", guard(
+                this.dmxTableHttpHandler, null));
+        this.httpServer.createContext("/data/dmxStream", guard(
+                this.dmxStreamHttpHandler, null));
+        this.httpServer.createContext("/data/inputStats", guard(
+                this.inputStatsHttpHandler, null));
+        this.httpServer.createContext("/data/httpStats", guard(
+                this.httpStatsHttpHandler, null));
+        this.httpServer.createContext("/data/cues", guard(
+                this.cuesHttpHandler, heavyRequests));
+        this.httpServer.createContext("/data/playback", guard(
+                this.playbackHttpHandler, heavyRequests));
+    }
+
+    /**
+     * Wraps a handler so that rejected requests, and requests over the limit
+     * of the given semaphore, are answered with a 503 status.
+     */
+    private HttpHandler guard(final HttpHandler handler,
+            final Semaphore permits) {
+        return new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange httpExchange)
+                    throws IOException {
+                if (REJECTED.get() != null) {
+                    sendServiceUnavailable(httpExchange);
+                    return;
+                }
+                if (permits == null) {
+                    handler.handle(httpExchange);
+                } else if (permits.tryAcquire()) {
+                    try {
+                        handler.handle(httpExchange);
+                    } finally {
+                        permits.release();
+                    }
+                } else {
+                    rejectedRequestsCount.incrementAndGet();
+                    sendServiceUnavailable(httpExchange);
+                }
+            }
+        };
+    }
+
+    private void sendServiceUnavailable(final HttpExchange httpExchange)
+            throws IOException {
+        String unavailable = "503 : Service unavailable !!!";
+        httpExchange.getResponseHeaders().set("Retry-After", RETRY_AFTER);
+        httpExchange.sendResponseHeaders(SERVICE_UNAVAILABLE, unavailable
+                .length());
+        httpExchange.getResponseBody().write(unavailable.getBytes());
+        httpExchange.getResponseBody().close();
     }
 
 }
@@ -0,0 +1,392 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+
+/**
+ * An ArtNet transport on a non-blocking {@link DatagramChannel}. The ArtDmx
+ * packet of each universe is built once in a direct buffer, only its
+ * sequence id and its DMX values are rewritten before a send, and the
+ * packets are received by a single thread in a reused direct buffer, so
+ * that sending and receiving the DMX does not allocate memory.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class NioArtNetTransport implements ArtNetTransport {
+
+    private static final int SUBNETS_COUNT = 16;
+    private static final int UNIVERSES_PER_SUBNET = 16;
+    private static final int DMX_CHANNELS_COUNT = 512;
+    private static final int NIBBLE_MASK = 0x0f;
+
+    private static final byte[] ID = { 'A', 'r', 't', '-', 'N', 'e', 't', 0 };
+    private static final int OP_POLL = 0x2000;
+    private static final int OP_POLL_REPLY = 0x2100;
+    private static final int OP_DMX = 0x5000;
+    private static final int PROTOCOL_VERSION = 14;
+
+    // offsets in the packets
+    private static final int OPCODE = 8;
+    private static final int PROTOCOL_VERSION_HI = 10;
+    private static final int HEADER_LENGTH = 12;
+    private static final int DMX_SEQUENCE = 12;
+    private static final int DMX_SUB_UNI = 14;
+    private static final int DMX_NET = 15;
+    private static final int DMX_LENGTH_HI = 16;
+    private static final int DMX_DATA = 18;
+    private static final int POLL_LENGTH = 14;
+    private static final int REPLY_IP_ADDRESS = 10;
+    private static final int REPLY_IP_ADDRESS_LENGTH = 4;
+    private static final int REPLY_SUB_SWITCH = 19;
+    private static final int REPLY_SHORT_NAME = 26;
+    private static final int REPLY_SHORT_NAME_LENGTH = 18;
+    private static final int REPLY_NUM_PORTS_HI = 172;
+    private static final int REPLY_SW_OUT = 190;
+    private static final int REPLY_BIND_INDEX = 211;
+    private static final int REPLY_MAX_PORTS = 4;
+    private static final int REPLY_MIN_LENGTH = REPLY_SW_OUT
+            + REPLY_MAX_PORTS;
+
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
+    private static final long STOP_TIMEOUT = 1000;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final String THREAD_NAME = "Elios ArtNet receiver";
+
+    private final int inPort;
+    private final int outPort;
+    private final Receiver receiver;
+
+    private volatile InetSocketAddress broadcastDestination;
+
+    // the unicast destination of each node, kept to send without allocation
+    private final Map<InetAddress, InetSocketAddress> unicastDestinations = new ConcurrentHashMap<InetAddress, InetSocketAddress>();
+
+    // the ArtDmx packet of each universe, built on its first use
+    private final ByteBuffer[] dmxPackets = new ByteBuffer[SUBNETS_COUNT
+            * UNIVERSES_PER_SUBNET];
+    private final ByteBuffer pollPacket;
+
+    // only used by the receive thread
+    private final ByteBuffer receiveBuffer = ByteBuffer
+            .allocateDirect(RECEIVE_BUFFER_SIZE);
+    private final byte[] receivedDmxData = new byte[DMX_CHANNELS_COUNT];
+
+    private volatile DatagramChannel channel = null;
+    private Selector selector = null;
+    private Thread receiveThread = null;
+    private volatile boolean running = false;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(NioArtNetTransport.class.getName());
+
+    /**
+     * Constructs a stopped transport.
+     *
+     * @param inPort
+     *            the port on which the packets are received
+     * @param outPort
+     *            the port to which the packets are sent
+     * @param broadcastAddress
+     *            the address on which the packets are broadcasted
+     * @param receiver
+     *            the receiver of the packets
+     */
+    public NioArtNetTransport(final int inPort, final int outPort,
+            final String broadcastAddress, final Receiver receiver) {
+        this.inPort = inPort;
+        this.outPort = outPort;
+        this.receiver = receiver;
+        setBroadcastAddress(broadcastAddress);
+
+        pollPacket = ByteBuffer.allocateDirect(POLL_LENGTH);
+        putHeader(pollPacket, OP_POLL);
+        // TalkToMe and priority left to 0 : the nodes only reply to the polls
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        DatagramChannel newChannel = DatagramChannel.open();
+        Selector newSelector = null;
+        try {
+            newChannel.socket().setBroadcast(true);
+            newChannel.socket().bind(new InetSocketAddress(inPort));
+            newChannel.configureBlocking(false);
+            newSelector = Selector.open();
+            newChannel.register(newSelector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            newChannel.close();
+            if (newSelector != null) {
+                newSelector.close();
+            }
+            throw e;
+        }
+        channel = newChannel;
+        selector = newSelector;
+        running = true;
+        receiveThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receiveLoop();
+            }
+        }, THREAD_NAME);
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (channel == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            receiveThread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "ArtNet socket not closed", e);
+        }
+        channel = null;
+        selector = null;
+        receiveThread = null;
+        unicastDestinations.clear();
+    }
+
+    @Override
+    public void setBroadcastAddress(final String broadcastAddress) {
+        InetSocketAddress destination = new InetSocketAddress(
+                broadcastAddress, outPort);
+        if (destination.isUnresolved()) {
+            logger.warning("Unknown broadcast address : " + broadcastAddress);
+        }
+        this.broadcastDestination = destination;
+    }
+
+    /**
+     * {@inheritDoc} Must always be called from the same thread, as
+     * {@link #sendDmx(int, int, InetAddress[])}.
+     */
+    @Override
+    public void setDmx(final int subnet, final int universe,
+            final int sequenceId, final byte[] dmxData) {
+        int index = subnet * UNIVERSES_PER_SUBNET + universe;
+        ByteBuffer packet = dmxPackets[index];
+        if (packet == null) {
+            packet = ByteBuffer.allocateDirect(DMX_DATA + DMX_CHANNELS_COUNT);
+            putHeader(packet, OP_DMX);
+            packet.put(DMX_SUB_UNI, (byte) (subnet << 4 | universe));
+            packet.put(DMX_LENGTH_HI, (byte) (DMX_CHANNELS_COUNT >> 8));
+            packet.put(DMX_LENGTH_HI + 1, (byte) DMX_CHANNELS_COUNT);
+            dmxPackets[index] = packet;
+        }
+        packet.put(DMX_SEQUENCE, (byte) sequenceId);
+        packet.position(DMX_DATA);
+        packet.put(dmxData, 0, DMX_CHANNELS_COUNT);
+    }
+
+    @Override
+    public void sendDmx(final int subnet, final int universe,
+            final InetAddress[] nodes) {
+        ByteBuffer packet = dmxPackets[subnet * UNIVERSES_PER_SUBNET
+                + universe];
+        if (nodes == null || nodes.length == 0) {
+            send(packet, broadcastDestination);
+        } else {
+            for (InetAddress node : nodes) {
+                InetSocketAddress destination = unicastDestinations.get(node);
+                if (destination == null) {
+                    destination = new InetSocketAddress(node, outPort);
+                    unicastDestinations.put(node, destination);
+                }
+                send(packet, destination);
+            }
+        }
+    }
+
+    @Override
+    public void broadcastPoll() {
+        synchronized (pollPacket) {
+            send(pollPacket, broadcastDestination);
+        }
+    }
+
+    private void send(final ByteBuffer packet,
+            final InetSocketAddress destination) {
+        DatagramChannel currentChannel = channel;
+        if (currentChannel == null || destination.isUnresolved()) {
+            return;
+        }
+        packet.clear();
+        try {
+            // a non-blocking channel drops the packet when the socket buffer
+            // is full
+            if (currentChannel.send(packet, destination) == 0
+                    && logger.isLoggable(Level.FINE)) {
+                logger.fine("ArtNet packet dropped, socket buffer full");
+            }
+        } catch (ClosedChannelException e) {
+            // stopped meanwhile
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "ArtNet packet not sent to "
+                    + destination, e);
+        }
+    }
+
+    private void receiveLoop() {
+        DatagramChannel currentChannel = channel;
+        Selector currentSelector = selector;
+        while (running) {
+            try {
+                currentSelector.select();
+                currentSelector.selectedKeys().clear();
+                receiveBuffer.clear();
+                SocketAddress sender = currentChannel.receive(receiveBuffer);
+                while (sender != null) {
+                    receiveBuffer.flip();
+                    packetReceived(((InetSocketAddress) sender).getAddress());
+                    receiveBuffer.clear();
+                    sender = currentChannel.receive(receiveBuffer);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    logger.log(Level.WARNING, "ArtNet receive failed", e);
+                }
+            } catch (RuntimeException e) {
+                // the thread must go on receiving
+                logger.log(Level.SEVERE, "ArtNet packet not processed", e);
+            }
+        }
+    }
+
+    private void packetReceived(final InetAddress source) {
+        ByteBuffer packet = receiveBuffer;
+        if (packet.limit() < HEADER_LENGTH) {
+            return;
+        }
+        for (int i = 0; i < ID.length; i++) {
+            if (packet.get(i) != ID[i]) {
+                return;
+            }
+        }
+        int opcode = (packet.get(OPCODE) & 0xff)
+                | (packet.get(OPCODE + 1) & 0xff) << 8;
+        if (opcode == OP_DMX) {
+            dmxReceived(source, packet);
+        } else if (opcode == OP_POLL_REPLY) {
+            pollReplyReceived(packet);
+        }
+    }
+
+    private void dmxReceived(final InetAddress source, final ByteBuffer packet) {
+        // only the universes of the first net are handled
+        if (packet.limit() < DMX_DATA || packet.get(DMX_NET) != 0) {
+            return;
+        }
+        int length = (packet.get(DMX_LENGTH_HI) & 0xff) << 8
+                | (packet.get(DMX_LENGTH_HI + 1) & 0xff);
+        length = Math.min(Math.min(length, DMX_CHANNELS_COUNT), packet
+                .limit()
+                - DMX_DATA);
+        packet.position(DMX_DATA);
+        packet.get(receivedDmxData, 0, length);
+        int subUni = packet.get(DMX_SUB_UNI);
+        receiver.dmxReceived(source, subUni >> 4 & NIBBLE_MASK, subUni
+                & NIBBLE_MASK, packet.get(DMX_SEQUENCE) & 0xff,
+                receivedDmxData, length);
+    }
+
+    private void pollReplyReceived(final ByteBuffer packet) {
+        if (packet.limit() < REPLY_MIN_LENGTH) {
+            return;
+        }
+        byte[] address = new byte[REPLY_IP_ADDRESS_LENGTH];
+        packet.position(REPLY_IP_ADDRESS);
+        packet.get(address);
+        InetAddress node;
+        try {
+            node = InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            return;
+        }
+
+        byte[] shortName = new byte[REPLY_SHORT_NAME_LENGTH];
+        packet.position(REPLY_SHORT_NAME);
+        packet.get(shortName);
+        int shortNameLength = 0;
+        while (shortNameLength < shortName.length
+                && shortName[shortNameLength] != 0) {
+            shortNameLength++;
+        }
+
+        byte[] dmxOuts = new byte[REPLY_MAX_PORTS];
+        packet.position(REPLY_SW_OUT);
+        packet.get(dmxOuts);
+
+        int portsCount = (packet.get(REPLY_NUM_PORTS_HI) & 0xff) << 8
+                | (packet.get(REPLY_NUM_PORTS_HI + 1) & 0xff);
+        // the nodes older than Art-Net 3 send no bind index, or 0
+        int bindIndex = packet.limit() > REPLY_BIND_INDEX ? packet
+                .get(REPLY_BIND_INDEX) & 0xff : 0;
+        receiver.pollReplyReceived(node, new String(shortName, 0,
+                shortNameLength, ASCII), packet.get(REPLY_SUB_SWITCH) & 0xff,
+                dmxOuts, portsCount, Math.max(1, bindIndex));
+    }
+
+    private static void putHeader(final ByteBuffer packet, final int opcode) {
+        packet.put(ID);
+        packet.put(OPCODE, (byte) opcode);
+        packet.put(OPCODE + 1, (byte) (opcode >> 8));
+        packet.put(PROTOCOL_VERSION_HI, (byte) 0);
+        packet.put(PROTOCOL_VERSION_HI + 1, (byte) PROTOCOL_VERSION);
+    }
+}
@@ -19,22 +19,37 @@
 
 package net.eliosoft.elios.server.events;
 
+import net.eliosoft.elios.server.Cue;
+
 /**
  * Event fired when a cue has been added.
  *
  * @author Jeremie GASTON-RAOUL
  */
 public class CueAddedEvent {
-    private final String cueName;
+    private final Cue cue;
+    private final int index;
 
     /**
      * Constructor method to instantiate a new event.
      *
-     * @param cueName
-     *            the name of the new cue in the cuesList
+     * @param cue
+     *            the new cue of the cuesList
+     * @param index
+     *            the position of the new cue in the sorted cuesList
+     */
+    public CueAddedEvent(final Cue cue, final int index) {
+        this.cue = cue;
+        this.index = index;
+    }
+
+    /**
+     * Returns the new cue.
+     *
+     * @return the cue
      */
-    public CueAddedEvent(final String cueName) {
-        this.cueName = cueName;
+    public Cue getCue() {
+        return cue;
     }
 
     /**
@@ -43,7 +58,16 @@ public class CueAddedEvent {
      * @return the cue name
      */
     public String getCueName() {
-        return cueName;
+        return cue.getName();
+    }
+
+    /**
+     * Returns the position of the new cue in the sorted cuesList.
+     *
+     * @return the cue position
+     */
+    public int getIndex() {
+        return index;
     }
 
 }
@@ -26,15 +26,19 @@ package net.eliosoft.elios.server.events;
  */
 public class CueRemovedEvent {
     private String cueName;
+    private final int index;
 
     /**
      * Constructor method to instantiate a new event.
      *
      * @param cueName
      *            the name of the removed cue in the cuesList
+     * @param index
+     *            the position of the removed cue in the sorted cuesList
      */
-    public CueRemovedEvent(final String cueName) {
+    public CueRemovedEvent(final String cueName, final int index) {
         this.cueName = cueName;
+        this.index = index;
     }
 
     /**
@@ -46,4 +50,13 @@ public class CueRemovedEvent {
         return cueName;
     }
 
+    /**
+     * Returns the position of the removed cue in the sorted cuesList.
+     *
+     * @return the cue position
+     */
+    public int getIndex() {
+        return index;
+    }
+
 }
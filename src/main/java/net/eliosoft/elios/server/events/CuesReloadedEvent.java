@@ -0,0 +1,55 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.server.events;
+
+import java.util.List;
+
+import net.eliosoft.elios.server.Cue;
+
+/**
+ * Event fired when all the cues have been replaced, by opening a show or
+ * importing cues.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class CuesReloadedEvent {
+    private final List<Cue> cues;
+
+    /**
+     * Constructor method to instantiate a new event.
+     *
+     * @param cues
+     *            the new cues sorted by name, not modified afterwards
+     */
+    public CuesReloadedEvent(final List<Cue> cues) {
+        this.cues = cues;
+    }
+
+    /**
+     * Returns the new cues sorted by name.
+     *
+     * @return the cues
+     */
+    public List<Cue> getCues() {
+        return cues;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.BadSyntaxException;
+import net.eliosoft.elios.server.DmxBatch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * This handler applies a batch of changes of the output sent by POST method,
+ * one change per line :
+ * <ul>
+ * <li>{@code universe=subnet/universe} selects the universe of the following
+ * lines (the one of the {@code subnet} and {@code universe} query parameters,
+ * or the current universe of the server, by default) ;</li>
+ * <li>{@code channel=value} sets a channel (starting at 1) to a DMX value ;</li>
+ * <li>any other line is a command line.</li>
+ * </ul>
+ * The whole batch is checked before anything is applied, then each universe
+ * is published as a single frame and sent once.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class BatchHttpHandler implements HttpHandler {
+
+    private static final String UNIVERSE_KEY = "universe";
+
+    private final ArtNetServerManager artNetServerManager = ArtNetServerManager
+            .getInstance();
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(BatchHttpHandler.class.getName());
+
+    @Override
+    public void handle(final HttpExchange httpExchange) throws IOException {
+        if (!httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            String badMethod = "405 : Method not allowed !!!";
+            httpExchange.sendResponseHeaders(405, badMethod.length());
+            httpExchange.getResponseBody().write(badMethod.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        }
+
+        String body;
+        try {
+            body = HttpRequestBody.readString(httpExchange);
+        } catch (HttpRequestBody.TooLargeException e) {
+            HttpRequestBody.sendTooLarge(httpExchange);
+            return;
+        }
+        DmxBatch batch = new DmxBatch();
+        boolean additive = artNetServerManager.isAdditiveModeEnabled();
+        int lineNumber = 0;
+        try {
+            HashMap<String, String> paramsMap = HttpParams.parse(httpExchange
+                    .getRequestURI().getQuery());
+            int subnet = HttpParams.getInt(paramsMap, "subnet",
+                    artNetServerManager.getSubnet());
+            int universe = HttpParams.getInt(paramsMap, "universe",
+                    artNetServerManager.getUniverse());
+
+            for (String line : body.split("\n")) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    batch.addCommandLine(subnet, universe, artNetServerManager
+                            .compileCommandLine(line), additive);
+                } else if (line.substring(0, equals).equals(UNIVERSE_KEY)) {
+                    String[] subnetUniverse = line.substring(equals + 1)
+                            .split("/");
+                    if (subnetUniverse.length != 2) {
+                        throw new BadSyntaxException();
+                    }
+                    subnet = parseInt(subnetUniverse[0]);
+                    universe = parseInt(subnetUniverse[1]);
+                    ArtNetServerManager.checkUniverse(subnet, universe);
+                } else {
+                    batch.setChannel(subnet, universe, parseInt(line.substring(
+                            0, equals)), parseInt(line.substring(equals + 1)));
+                }
+            }
+        } catch (BadSyntaxException e) {
+            logger.severe("Bad syntax in batch at line " + lineNumber);
+            String badRequest = "400 : Bad request at line " + lineNumber
+                    + " !!!";
+            httpExchange.sendResponseHeaders(400, badRequest.length());
+            httpExchange.getResponseBody().write(badRequest.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        }
+
+        artNetServerManager.applyBatch(batch);
+
+        String responseOk = "200 : OK ! (" + batch.getOperationsCount()
+                + " changes)";
+        httpExchange.sendResponseHeaders(200, responseOk.length());
+        httpExchange.getResponseBody().write(responseOk.getBytes());
+        httpExchange.getResponseBody().close();
+    }
+
+    private static int parseInt(final String value) throws BadSyntaxException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadSyntaxException();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package net.eliosoft.elios.server.handler;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.HashMap;
 import java.util.logging.Logger;
 
 import net.eliosoft.elios.main.LoggersManager;
@@ -13,14 +13,15 @@ import com.sun.net.httpserver.HttpHandler;
 
 /**
  * This handler process data requests. These request send commandLine value by
- * POST method
+ * POST method. The optional {@code subnet} and {@code universe} query
+ * parameters select the universe on which the command line applies, the
+ * current universe of the server is used by default.
  *
  * @author Jeremie GASTON-RAOUL
  *
  */
 public class CommandLineHttpHandler implements HttpHandler {
 
-    private static final int MAX_BUFFER_SIZE = 1024 * 512;
     private final ArtNetServerManager artNetServerManager = ArtNetServerManager
             .getInstance();
 
@@ -30,27 +31,32 @@ public class CommandLineHttpHandler implements HttpHandler {
     @Override
     public void handle(final HttpExchange httpExchange) throws IOException {
         if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
-            InputStream is = httpExchange.getRequestBody();
-
-            byte[] buffer = new byte[CommandLineHttpHandler.MAX_BUFFER_SIZE];
-            int bytesRead = 0;
-
-            StringBuilder commandLine = new StringBuilder();
-
-            while ((bytesRead = is.read(buffer)) != -1) {
-                commandLine.append(new String(buffer, 0, bytesRead));
+            String commandLine;
+            try {
+                commandLine = HttpRequestBody.readString(httpExchange);
+            } catch (HttpRequestBody.TooLargeException e) {
+                HttpRequestBody.sendTooLarge(httpExchange);
+                return;
             }
-            is.close();
 
             try {
-                artNetServerManager.processCommandLine(commandLine.toString());
-                artNetServerManager.sendDmxCommand();
+                HashMap<String, String> paramsMap = HttpParams
+                        .parse(httpExchange.getRequestURI().getQuery());
+                int subnet = HttpParams.getInt(paramsMap, "subnet",
+                        artNetServerManager.getSubnet());
+                int universe = HttpParams.getInt(paramsMap, "universe",
+                        artNetServerManager.getUniverse());
+                ArtNetServerManager.checkUniverse(subnet, universe);
+                artNetServerManager.processCommandLine(subnet, universe,
+                        commandLine);
+                artNetServerManager.sendDmxCommand(subnet, universe);
             } catch (BadSyntaxException e) {
                 logger.severe("Bad syntax in Command Line");
                 String badRequest = "400 : Bad request !!!";
                 httpExchange.sendResponseHeaders(400, badRequest.length());
                 httpExchange.getResponseBody().write(badRequest.getBytes());
                 httpExchange.getResponseBody().close();
+                return;
             }
 
             String responseOk = "200 : OK !";
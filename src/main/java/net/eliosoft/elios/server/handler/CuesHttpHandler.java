@@ -1,7 +1,8 @@
 package net.eliosoft.elios.server.handler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Logger;
@@ -12,19 +13,26 @@ import net.eliosoft.elios.server.BadSyntaxException;
 import net.eliosoft.elios.server.Cue;
 import net.eliosoft.elios.server.CuesManager;
 
+import com.google.gson.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 /**
  * This handler process data requests. These request send commandLine value by
- * POST method
+ * POST method. The cues are exported as JSON by {@code GET ?action=export}
+ * and imported by {@code POST ?action=import} with the JSON in the body.
  *
  * @author Jeremie GASTON-RAOUL
  *
  */
 public class CuesHttpHandler implements HttpHandler {
 
-    private static final int MAX_BUFFER_SIZE = 1024 * 512;
+    /**
+     * max size of the imported cues in bytes, far above the forms as a cue
+     * takes about 2 KB of JSON.
+     */
+    private static final int MAX_IMPORT_SIZE = 16 * 1024 * 1024;
+
     private final CuesManager cuesManager = CuesManager.getInstance();
     private final ArtNetServerManager artNetServerManager = ArtNetServerManager
             .getInstance();
@@ -36,8 +44,8 @@ public class CuesHttpHandler implements HttpHandler {
     public void handle(final HttpExchange httpExchange) throws IOException {
         if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
             try {
-                HashMap<String, String> paramsMap = extractParams(httpExchange
-                        .getRequestURI().getQuery());
+                HashMap<String, String> paramsMap = HttpParams
+                        .parse(httpExchange.getRequestURI().getQuery());
                 String actionParam = paramsMap.get("action");
                 if (actionParam != null) {
                     if (actionParam.equals("unusedCueName")) {
@@ -57,11 +65,20 @@ public class CuesHttpHandler implements HttpHandler {
                             sb.deleteCharAt(sb.length() - 1);
                         }
 
-                        String responseOk = sb.toString();
+                        byte[] responseOk = sb.toString().getBytes("UTF-8");
+                        httpExchange.getResponseHeaders().set("Content-Type",
+                                "text/plain; charset=UTF-8");
                         httpExchange.sendResponseHeaders(200,
-                                responseOk.getBytes().length);
-                        httpExchange.getResponseBody().write(
-                                responseOk.getBytes());
+                                responseOk.length);
+                        httpExchange.getResponseBody().write(responseOk);
+                        httpExchange.getResponseBody().close();
+                    } else if (actionParam.equals("export")) {
+                        ByteArrayOutputStream json = new ByteArrayOutputStream();
+                        cuesManager.persist(json);
+                        httpExchange.getResponseHeaders().set("Content-Type",
+                                "application/json; charset=UTF-8");
+                        httpExchange.sendResponseHeaders(200, json.size());
+                        json.writeTo(httpExchange.getResponseBody());
                         httpExchange.getResponseBody().close();
                     } else {
                         logger.severe("no action");
@@ -78,23 +95,56 @@ public class CuesHttpHandler implements HttpHandler {
                 httpExchange.getResponseBody().write(badRequest.getBytes());
                 httpExchange.getResponseBody().close();
             }
-        }
-        if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
+        } else if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")
+                && "action=import".equals(httpExchange.getRequestURI()
+                        .getQuery())) {
             try {
-                HashMap<String, String> paramsMap = extractPostParams(httpExchange);
+                cuesManager.load(new ByteArrayInputStream(HttpRequestBody
+                        .readBytes(httpExchange, MAX_IMPORT_SIZE)));
+                String responseOk = "200 : OK !";
+                httpExchange.sendResponseHeaders(200, responseOk.length());
+                httpExchange.getResponseBody().write(responseOk.getBytes());
+                httpExchange.getResponseBody().close();
+            } catch (JsonParseException e) {
+                logger.severe("Bad JSON in the imported cues");
+                String badRequest = "400 : Bad request !!!";
+                httpExchange.sendResponseHeaders(400, badRequest.length());
+                httpExchange.getResponseBody().write(badRequest.getBytes());
+                httpExchange.getResponseBody().close();
+            } catch (HttpRequestBody.TooLargeException e) {
+                HttpRequestBody.sendTooLarge(httpExchange);
+            }
+        } else if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            try {
+                HashMap<String, String> paramsMap = HttpRequestBody
+                        .readForm(httpExchange);
 
                 String actionParam = paramsMap.get("action");
                 String cueNameParam = paramsMap.get("cueName");
+                int subnet = HttpParams.getInt(paramsMap, "subnet",
+                        artNetServerManager.getSubnet());
+                int universe = HttpParams.getInt(paramsMap, "universe",
+                        artNetServerManager.getUniverse());
+                ArtNetServerManager.checkUniverse(subnet, universe);
                 if (actionParam != null && cueNameParam != null) {
                     if (actionParam.equals("load")) {
-                        artNetServerManager
-                                .setCurrentOutputDmxArray(cuesManager.getCue(
-                                        cueNameParam).getDmxArray());
+                        Cue cue = cuesManager.getCue(cueNameParam);
+                        if (cue == null) {
+                            throw new BadSyntaxException();
+                        }
+                        artNetServerManager.fadeOutputDmxArray(subnet,
+                                universe, cue.getDmxArray(), HttpParams
+                                        .getInt(paramsMap, "fadeIn", cue
+                                                .getFadeInTime()), HttpParams
+                                        .getInt(paramsMap, "fadeOut", cue
+                                                .getFadeOutTime()));
+                        artNetServerManager.sendDmxCommand(subnet, universe);
                     } else if (actionParam.equals("store")) {
-                        cuesManager
-                                .addCue(new Cue(cueNameParam,
-                                        artNetServerManager
-                                                .getCurrentOutputDmxArray()));
+                        cuesManager.addCue(new Cue(cueNameParam,
+                                artNetServerManager.getOutputDmxArray(subnet,
+                                        universe), HttpParams.getInt(
+                                        paramsMap, "fadeIn", 0), HttpParams
+                                        .getInt(paramsMap, "fadeOut", 0)));
                     } else if (actionParam.equals("delete")) {
                         cuesManager.removeCue(cueNameParam);
                     } else {
@@ -107,12 +157,18 @@ public class CuesHttpHandler implements HttpHandler {
                     throw new BadSyntaxException();
                 }
 
+                String responseOk = "200 : OK !";
+                httpExchange.sendResponseHeaders(200, responseOk.length());
+                httpExchange.getResponseBody().write(responseOk.getBytes());
+                httpExchange.getResponseBody().close();
             } catch (BadSyntaxException e) {
                 logger.severe("Bad syntax in params");
                 String badRequest = "400 : Bad request !!!";
                 httpExchange.sendResponseHeaders(400, badRequest.length());
                 httpExchange.getResponseBody().write(badRequest.getBytes());
                 httpExchange.getResponseBody().close();
+            } catch (HttpRequestBody.TooLargeException e) {
+                HttpRequestBody.sendTooLarge(httpExchange);
             }
 
         } else {
@@ -123,49 +179,4 @@ public class CuesHttpHandler implements HttpHandler {
         }
     }
 
-    /**
-     * @param httpExchange
-     * @return
-     * @throws IOException
-     * @throws BadSyntaxException
-     */
-    private HashMap<String, String> extractPostParams(
-            final HttpExchange httpExchange) throws IOException,
-            BadSyntaxException {
-        InputStream is = httpExchange.getRequestBody();
-
-        byte[] buffer = new byte[CuesHttpHandler.MAX_BUFFER_SIZE];
-        int bytesRead = 0;
-
-        StringBuilder query = new StringBuilder();
-
-        while ((bytesRead = is.read(buffer)) != -1) {
-            query.append(new String(buffer, 0, bytesRead));
-        }
-        is.close();
-
-        return extractParams(query.toString());
-    }
-
-    /**
-     * @param query
-     * @return
-     * @throws BadSyntaxException
-     */
-    private HashMap<String, String> extractParams(final String query)
-            throws BadSyntaxException {
-        String[] paramsList = query.split("&");
-        HashMap<String, String> paramsMap = new HashMap<String, String>();
-        for (String param : paramsList) {
-            String[] keyValue = param.split("=");
-            if (keyValue.length == 2) {
-                paramsMap.put(keyValue[0], keyValue[1]);
-            } else {
-                logger.severe("params = " + keyValue[0] + " " + keyValue.length);
-                throw new BadSyntaxException();
-            }
-        }
-        return paramsMap;
-    }
-
 }
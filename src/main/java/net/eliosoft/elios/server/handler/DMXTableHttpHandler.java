@@ -1,88 +1,237 @@
 package net.eliosoft.elios.server.handler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 import net.eliosoft.elios.main.LoggersManager;
 import net.eliosoft.elios.server.ArtNetServerManager;
 import net.eliosoft.elios.server.BadSyntaxException;
+import net.eliosoft.elios.server.DmxFrame;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 /**
- * This handler process data requests. These request send commandLine value by
- * POST method
+ * This handler returns the DMX values of a universe by GET method.
+ *
+ * Parameters : {@code type} ({@code input} or {@code output}), optional
+ * {@code subnet} and {@code universe} (the current ones by default),
+ * {@code from} and {@code to} (the range of channels, starting at 1),
+ * {@code format} ({@code text} : values separated by commas, or
+ * {@code binary} : one byte per channel) and {@code since} (the version of a
+ * frame previously returned).
+ *
+ * The version of the returned frame is set in the {@code X-Elios-Version}
+ * header. With {@code since}, only the channels changed since this version
+ * are returned ({@code X-Elios-Encoding: delta}) : {@code channel:value}
+ * pairs separated by commas in text, 3 bytes per channel (the channel on 2
+ * bytes big-endian then the value) in binary. When the version is too old,
+ * the whole range is returned ({@code X-Elios-Encoding: full}).
+ *
+ * The responses are cached per frame version, so the clients that poll the
+ * same universe share the encoding.
  *
  * @author Jeremie GASTON-RAOUL
  *
  */
 public class DMXTableHttpHandler implements HttpHandler {
 
-    // private static final int MAX_BUFFER_SIZE = 1024*512;
+    /**
+     * number of versions of each universe kept to compute the deltas.
+     */
+    static final int HISTORY_SIZE = 32;
+
+    private static final int MAX_CACHED_RESPONSES = 16;
+
+    private static final String VERSION_HEADER = "X-Elios-Version";
+    private static final String ENCODING_HEADER = "X-Elios-Encoding";
+
+    /**
+     * The responses already encoded for a frame.
+     */
+    private static final class FrameCache {
+        private final DmxFrame frame;
+        private final Map<String, byte[]> responses = new ConcurrentHashMap<String, byte[]>();
+
+        private FrameCache(final DmxFrame frame) {
+            this.frame = frame;
+        }
+    }
+
     private final ArtNetServerManager artNetServerManager = ArtNetServerManager
             .getInstance();
 
+    private final Map<String, FrameCache> caches = new ConcurrentHashMap<String, FrameCache>();
+    private final ConcurrentHashMap<String, AtomicReferenceArray<DmxFrame>> histories = new ConcurrentHashMap<String, AtomicReferenceArray<DmxFrame>>();
+
     private final transient Logger logger = LoggersManager.getInstance()
             .getLogger(DMXTableHttpHandler.class.getName());
 
     @Override
     public void handle(final HttpExchange httpExchange) throws IOException {
-        if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
-            byte[] dmxArray = null;
-            try {
-                String query = httpExchange.getRequestURI().getQuery();
-                String[] paramsList = query.split("&");
-                HashMap<String, String> paramsMap = new HashMap<String, String>();
-                for (String param : paramsList) {
-                    String[] keyValue = param.split("=");
-                    if (keyValue.length == 2) {
-                        paramsMap.put(keyValue[0], keyValue[1]);
-                    } else {
-                        throw new BadSyntaxException();
-                    }
-                }
+        if (!httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            String badMethod = "405 : Method not allowed !!!";
+            httpExchange.sendResponseHeaders(405, badMethod.length());
+            httpExchange.getResponseBody().write(badMethod.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        }
 
-                String typeParam = paramsMap.get("type");
-                if (typeParam != null) {
-                    if (typeParam.equals("input")) {
-                        dmxArray = artNetServerManager
-                                .getCurrentInputDmxArray();
-                    } else if (typeParam.equals("output")) {
-                        dmxArray = artNetServerManager
-                                .getCurrentOutputDmxArray();
-                    } else {
-                        throw new BadSyntaxException();
-                    }
-                } else {
-                    throw new BadSyntaxException();
-                }
-            } catch (BadSyntaxException e) {
-                logger.severe("Bad syntax in params");
-                String badRequest = "400 : Bad request !!!";
-                httpExchange.sendResponseHeaders(400, badRequest.length());
-                httpExchange.getResponseBody().write(badRequest.getBytes());
-                httpExchange.getResponseBody().close();
+        DmxFrame frame;
+        boolean binary;
+        boolean delta;
+        byte[] response;
+        try {
+            HashMap<String, String> paramsMap = HttpParams.parse(httpExchange
+                    .getRequestURI().getQuery());
+
+            String typeParam = paramsMap.get("type");
+            if (!"input".equals(typeParam) && !"output".equals(typeParam)) {
+                throw new BadSyntaxException();
             }
+            boolean input = typeParam.equals("input");
+            int subnet = HttpParams.getInt(paramsMap, "subnet",
+                    artNetServerManager.getSubnet());
+            int universe = HttpParams.getInt(paramsMap, "universe",
+                    artNetServerManager.getUniverse());
+            ArtNetServerManager.checkUniverse(subnet, universe);
 
-            StringBuilder sb = new StringBuilder();
-            for (Byte channelValue : dmxArray) {
-                int intValue = channelValue.intValue();
-                sb.append(intValue < 0 ? intValue + 256 : intValue).append(",");
+            int from = HttpParams.getInt(paramsMap, "from", 1);
+            int to = HttpParams.getInt(paramsMap, "to",
+                    ArtNetServerManager.DMX_CHANNELS_COUNT);
+            if (from < 1 || from > to
+                    || to > ArtNetServerManager.DMX_CHANNELS_COUNT) {
+                throw new BadSyntaxException();
             }
-            sb.deleteCharAt(sb.length() - 1);
 
-            String responseOk = sb.toString();
-            httpExchange.sendResponseHeaders(200, responseOk.getBytes().length);
-            httpExchange.getResponseBody().write(responseOk.getBytes());
-            httpExchange.getResponseBody().close();
-        } else {
-            String badMethod = "405 : Method not allowed !!!";
-            httpExchange.sendResponseHeaders(405, badMethod.length());
-            httpExchange.getResponseBody().write(badMethod.getBytes());
+            String formatParam = paramsMap.get("format");
+            if (formatParam != null && !formatParam.equals("text")
+                    && !formatParam.equals("binary")) {
+                throw new BadSyntaxException();
+            }
+            binary = "binary".equals(formatParam);
+
+            String key = typeParam + "/" + subnet + "/" + universe;
+            frame = input ? artNetServerManager.getInputFrame(subnet, universe)
+                    : artNetServerManager.getOutputFrame(subnet, universe);
+            DmxFrame base = null;
+            if (paramsMap.containsKey("since")) {
+                base = getHistoryFrame(key, HttpParams.getInt(paramsMap,
+                        "since", -1));
+            }
+            delta = base != null;
+
+            FrameCache cache = getCache(key, frame);
+            String responseKey = (binary ? "binary/" : "text/") + from + "/"
+                    + to + (delta ? "/" + base.getVersion() : "");
+            response = cache.responses.get(responseKey);
+            if (response == null) {
+                response = delta ? encodeDelta(base, frame, from, to, binary)
+                        : encodeFrame(frame, from, to, binary);
+                if (cache.responses.size() < MAX_CACHED_RESPONSES) {
+                    cache.responses.put(responseKey, response);
+                }
+            }
+        } catch (BadSyntaxException e) {
+            logger.severe("Bad syntax in params");
+            String badRequest = "400 : Bad request !!!";
+            httpExchange.sendResponseHeaders(400, badRequest.length());
+            httpExchange.getResponseBody().write(badRequest.getBytes());
             httpExchange.getResponseBody().close();
+            return;
+        }
+
+        httpExchange.getResponseHeaders().set("Content-Type",
+                binary ? "application/octet-stream" : "text/plain");
+        httpExchange.getResponseHeaders().set(VERSION_HEADER,
+                String.valueOf(frame.getVersion()));
+        httpExchange.getResponseHeaders().set(ENCODING_HEADER,
+                delta ? "delta" : "full");
+        // a length of -1 sends an empty body
+        httpExchange.sendResponseHeaders(200, response.length == 0 ? -1
+                : response.length);
+        httpExchange.getResponseBody().write(response);
+        httpExchange.getResponseBody().close();
+    }
+
+    /**
+     * Returns the cache of the given frame, recording the frame in the
+     * history of its universe.
+     */
+    private FrameCache getCache(final String key, final DmxFrame frame) {
+        FrameCache cache = caches.get(key);
+        if (cache == null || cache.frame != frame) {
+            // concurrent requests may both encode, the last cache wins
+            cache = new FrameCache(frame);
+            caches.put(key, cache);
+
+            AtomicReferenceArray<DmxFrame> history = histories.get(key);
+            if (history == null) {
+                histories.putIfAbsent(key, new AtomicReferenceArray<DmxFrame>(
+                        HISTORY_SIZE));
+                history = histories.get(key);
+            }
+            history.set((int) (frame.getVersion() % HISTORY_SIZE), frame);
         }
+        return cache;
     }
 
+    /**
+     * Returns the frame of the given version if it is still in the history,
+     * null otherwise.
+     */
+    private DmxFrame getHistoryFrame(final String key, final long version) {
+        AtomicReferenceArray<DmxFrame> history = histories.get(key);
+        if (history == null || version < 0) {
+            return null;
+        }
+        DmxFrame frame = history.get((int) (version % HISTORY_SIZE));
+        return frame != null && frame.getVersion() == version ? frame : null;
+    }
+
+    private static byte[] encodeFrame(final DmxFrame frame, final int from,
+            final int to, final boolean binary) {
+        if (binary) {
+            byte[] response = new byte[to - from + 1];
+            System.arraycopy(frame.getDmxArray(), from - 1, response, 0,
+                    response.length);
+            return response;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int channel = from - 1; channel < to; channel++) {
+            sb.append(frame.getValue(channel)).append(',');
+        }
+        sb.deleteCharAt(sb.length() - 1);
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] encodeDelta(final DmxFrame base,
+            final DmxFrame frame, final int from, final int to,
+            final boolean binary) {
+        ByteArrayOutputStream binaryDelta = new ByteArrayOutputStream();
+        StringBuilder textDelta = new StringBuilder();
+        for (int channel = from - 1; channel < to; channel++) {
+            int value = frame.getValue(channel);
+            if (value == base.getValue(channel)) {
+                continue;
+            }
+            if (binary) {
+                binaryDelta.write((channel + 1) >> 8);
+                binaryDelta.write(channel + 1);
+                binaryDelta.write(value);
+            } else {
+                if (textDelta.length() > 0) {
+                    textDelta.append(',');
+                }
+                textDelta.append(channel + 1).append(':').append(value);
+            }
+        }
+        return binary ? binaryDelta.toByteArray() : textDelta.toString()
+                .getBytes();
+    }
 }
@@ -0,0 +1,396 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.BadSyntaxException;
+import net.eliosoft.elios.server.DmxFrame;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * This handler pushes the DMX values of a universe to the web remote as
+ * Server-Sent Events. A GET request with a {@code type} ({@code input} or
+ * {@code output}) and optional {@code subnet} and {@code universe} opens a
+ * stream which first receives a {@code frame} event with the 512 values,
+ * then a {@code diff} event with the changed channels
+ * ({@code channel:value,...}, channels starting at 1) each time the universe
+ * changes. Without {@code subnet} and {@code universe}, the stream follows
+ * the current universe of the server and receives a new {@code frame} event
+ * when the current universe is changed.
+ *
+ * The universes are checked at the refresh rate of the ArtNet server by a
+ * single thread which encodes each event once and queues it to every
+ * subscriber of the universe. Each subscriber is written by a pool thread, so
+ * a slow client never delays the others ; when too many events are pending
+ * for a client, the next diffs are dropped and a full frame is sent instead.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class DmxStreamHttpHandler implements HttpHandler {
+
+    /**
+     * number of events pending for a client over which the client is resent
+     * a full frame instead of the diffs.
+     */
+    static final int MAX_PENDING_EVENTS = 64;
+
+    private static final int KEEP_ALIVE_INTERVAL = 15000;
+    private static final int RECONNECT_DELAY = 2000;
+
+    private static final String CHARSET = "UTF-8";
+    private static final String THREAD_NAME = "Elios DMX stream";
+
+    private static final byte[] KEEP_ALIVE_EVENT = toBytes(": keep-alive\n\n");
+
+    /**
+     * A client of a stream.
+     */
+    private final class Subscriber implements Runnable {
+        private final HttpExchange httpExchange;
+        private final OutputStream out;
+        private final ConcurrentLinkedQueue<byte[]> events = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicInteger pendingEvents = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // only used by the publisher thread
+        private boolean needsFrame = true;
+        private volatile boolean closed = false;
+
+        private Subscriber(final HttpExchange httpExchange) {
+            this.httpExchange = httpExchange;
+            this.out = httpExchange.getResponseBody();
+        }
+
+        /**
+         * Queues an event, returns false if too many events are pending.
+         */
+        private boolean send(final byte[] event) {
+            if (pendingEvents.get() >= MAX_PENDING_EVENTS) {
+                return false;
+            }
+            pendingEvents.incrementAndGet();
+            events.add(event);
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RuntimeException e) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] event;
+                while ((event = events.poll()) != null) {
+                    pendingEvents.decrementAndGet();
+                    out.write(event);
+                }
+                out.flush();
+            } catch (IOException e) {
+                close();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!events.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            events.clear();
+            httpExchange.close();
+        }
+    }
+
+    /**
+     * The subscribers of a universe.
+     */
+    private static final class Stream {
+        private final boolean input;
+        // -1 to follow the current universe of the server
+        private final int subnet;
+        private final int universe;
+        private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+        // only used by the publisher thread
+        private DmxFrame lastFrame;
+        private int lastSubnet = -1;
+        private int lastUniverse = -1;
+
+        private Stream(final boolean input, final int subnet,
+                final int universe) {
+            this.input = input;
+            this.subnet = subnet;
+            this.universe = universe;
+        }
+
+        private boolean isFollowing() {
+            return subnet < 0;
+        }
+    }
+
+    private final ArtNetServerManager artNetServerManager = ArtNetServerManager
+            .getInstance();
+
+    private final Map<String, Stream> streams = new ConcurrentHashMap<String, Stream>();
+
+    private ScheduledExecutorService publisher = null;
+    private ExecutorService writers = null;
+
+    // only used by the publisher thread
+    private final StringBuilder eventBuilder = new StringBuilder();
+    private long lastKeepAliveTime;
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(DmxStreamHttpHandler.class.getName());
+
+    @Override
+    public void handle(final HttpExchange httpExchange) throws IOException {
+        if (!httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            String badMethod = "405 : Method not allowed !!!";
+            httpExchange.sendResponseHeaders(405, badMethod.length());
+            httpExchange.getResponseBody().write(badMethod.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        }
+
+        Stream stream;
+        try {
+            HashMap<String, String> paramsMap = HttpParams.parse(httpExchange
+                    .getRequestURI().getQuery());
+            String typeParam = paramsMap.get("type");
+            if (!"input".equals(typeParam) && !"output".equals(typeParam)) {
+                throw new BadSyntaxException();
+            }
+            if (paramsMap.containsKey("subnet")
+                    || paramsMap.containsKey("universe")) {
+                int subnet = HttpParams.getInt(paramsMap, "subnet",
+                        artNetServerManager.getSubnet());
+                int universe = HttpParams.getInt(paramsMap, "universe",
+                        artNetServerManager.getUniverse());
+                ArtNetServerManager.checkUniverse(subnet, universe);
+                stream = getStream(typeParam.equals("input"), subnet,
+                        universe);
+            } else {
+                stream = getStream(typeParam.equals("input"), -1, -1);
+            }
+        } catch (BadSyntaxException e) {
+            logger.severe("Bad syntax in params");
+            String badRequest = "400 : Bad request !!!";
+            httpExchange.sendResponseHeaders(400, badRequest.length());
+            httpExchange.getResponseBody().write(badRequest.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        }
+
+        httpExchange.getResponseHeaders().set("Content-Type",
+                "text/event-stream");
+        httpExchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        // a length of 0 sends a chunked response which stays open
+        httpExchange.sendResponseHeaders(200, 0);
+        startPublisher();
+        Subscriber subscriber = new Subscriber(httpExchange);
+        subscriber.send(toBytes("retry: " + RECONNECT_DELAY + "\n\n"));
+        stream.subscribers.add(subscriber);
+    }
+
+    /**
+     * Closes all the streams. Called when the http server is stopped.
+     */
+    public synchronized void stop() {
+        if (publisher == null) {
+            return;
+        }
+        publisher.shutdownNow();
+        publisher = null;
+        writers.shutdownNow();
+        writers = null;
+        for (Stream stream : streams.values()) {
+            for (Subscriber subscriber : stream.subscribers) {
+                subscriber.close();
+            }
+        }
+        streams.clear();
+    }
+
+    private synchronized Stream getStream(final boolean input,
+            final int subnet, final int universe) {
+        String key = (input ? "input/" : "output/")
+                + (subnet < 0 ? "current" : subnet + "/" + universe);
+        Stream stream = streams.get(key);
+        if (stream == null) {
+            stream = new Stream(input, subnet, universe);
+            streams.put(key, stream);
+        }
+        return stream;
+    }
+
+    private synchronized void startPublisher() {
+        if (publisher != null) {
+            return;
+        }
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        writers = Executors.newCachedThreadPool(threadFactory);
+        publisher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long period = Math.max(1, 1000 / Math.max(1, artNetServerManager
+                .getRefreshRate()));
+        publisher.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publish(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "DMX stream failed", e);
+                }
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void publish(final long now) {
+        boolean keepAlive = now - lastKeepAliveTime >= KEEP_ALIVE_INTERVAL;
+        if (keepAlive) {
+            lastKeepAliveTime = now;
+        }
+        for (Stream stream : streams.values()) {
+            for (Subscriber subscriber : stream.subscribers) {
+                if (subscriber.closed) {
+                    stream.subscribers.remove(subscriber);
+                }
+            }
+            if (stream.subscribers.isEmpty()) {
+                stream.lastFrame = null;
+                continue;
+            }
+
+            int subnet = stream.subnet;
+            int universe = stream.universe;
+            if (stream.isFollowing()) {
+                subnet = artNetServerManager.getSubnet();
+                universe = artNetServerManager.getUniverse();
+                if (subnet != stream.lastSubnet
+                        || universe != stream.lastUniverse) {
+                    // the clients show another universe, resend it whole
+                    stream.lastSubnet = subnet;
+                    stream.lastUniverse = universe;
+                    stream.lastFrame = null;
+                    for (Subscriber subscriber : stream.subscribers) {
+                        subscriber.needsFrame = true;
+                    }
+                }
+            }
+
+            DmxFrame frame = stream.input ? artNetServerManager.getInputFrame(
+                    subnet, universe) : artNetServerManager.getOutputFrame(
+                    subnet, universe);
+            byte[] diffEvent = null;
+            if (stream.lastFrame != null && frame != stream.lastFrame) {
+                diffEvent = encodeDiff(stream.lastFrame, frame);
+            }
+            stream.lastFrame = frame;
+
+            byte[] frameEvent = null;
+            for (Subscriber subscriber : stream.subscribers) {
+                if (subscriber.needsFrame) {
+                    if (frameEvent == null) {
+                        frameEvent = encodeFrame(frame);
+                    }
+                    subscriber.needsFrame = !subscriber.send(frameEvent);
+                } else if (diffEvent != null) {
+                    subscriber.needsFrame = !subscriber.send(diffEvent);
+                } else if (keepAlive) {
+                    subscriber.send(KEEP_ALIVE_EVENT);
+                }
+            }
+        }
+    }
+
+    private byte[] encodeFrame(final DmxFrame frame) {
+        eventBuilder.setLength(0);
+        eventBuilder.append("event: frame\ndata: ");
+        for (int channel = 0; channel < ArtNetServerManager.DMX_CHANNELS_COUNT; channel++) {
+            eventBuilder.append(frame.getValue(channel)).append(',');
+        }
+        eventBuilder.setLength(eventBuilder.length() - 1);
+        eventBuilder.append("\n\n");
+        return toBytes(eventBuilder.toString());
+    }
+
+    private byte[] encodeDiff(final DmxFrame previous, final DmxFrame frame) {
+        eventBuilder.setLength(0);
+        eventBuilder.append("event: diff\ndata: ");
+        int start = eventBuilder.length();
+        for (int channel = 0; channel < ArtNetServerManager.DMX_CHANNELS_COUNT; channel++) {
+            int value = frame.getValue(channel);
+            if (value != previous.getValue(channel)) {
+                eventBuilder.append(channel + 1).append(':').append(value)
+                        .append(',');
+            }
+        }
+        if (eventBuilder.length() == start) {
+            return null;
+        }
+        eventBuilder.setLength(eventBuilder.length() - 1);
+        eventBuilder.append("\n\n");
+        return toBytes(eventBuilder.toString());
+    }
+
+    private static byte[] toBytes(final String event) {
+        try {
+            return event.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.eliosoft.elios.server.BadSyntaxException;
+
+/**
+ * Helper methods used by the handlers to read request parameters.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+final class HttpParams {
+
+    /**
+     * Ensure that this class will not be instantiate.
+     */
+    private HttpParams() {
+    }
+
+    /**
+     * Parses a query string of the form {@code key1=value1&key2=value2}.
+     *
+     * @param query
+     *            the query to parse, may be null
+     * @return a map of the parameters
+     * @throws BadSyntaxException
+     *             if a parameter is not a key/value pair
+     */
+    static HashMap<String, String> parse(final String query)
+            throws BadSyntaxException {
+        HashMap<String, String> paramsMap = new HashMap<String, String>();
+        if (query == null || query.length() == 0) {
+            return paramsMap;
+        }
+        for (String param : query.split("&")) {
+            String[] keyValue = param.split("=");
+            if (keyValue.length == 2) {
+                paramsMap.put(keyValue[0], keyValue[1]);
+            } else {
+                throw new BadSyntaxException();
+            }
+        }
+        return paramsMap;
+    }
+
+    /**
+     * Returns the value of an integer parameter.
+     *
+     * @param paramsMap
+     *            the parameters
+     * @param name
+     *            the name of the parameter
+     * @param defaultValue
+     *            the value returned if the parameter is not set
+     * @return the value of the parameter
+     * @throws BadSyntaxException
+     *             if the parameter is not an integer
+     */
+    static int getInt(final Map<String, String> paramsMap, final String name,
+            final int defaultValue) throws BadSyntaxException {
+        String value = paramsMap.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadSyntaxException();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+import net.eliosoft.elios.server.BadSyntaxException;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Reads the bodies of the requests. The body is read in a buffer owned by the
+ * handling thread, which grows up to {@link #MAX_BODY_SIZE} and is reused by
+ * the next requests, then decoded as UTF-8. URL-encoded forms are decoded
+ * straight from the buffer : only the keys and values are allocated.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+final class HttpRequestBody {
+
+    /**
+     * max size of a request body in bytes.
+     */
+    static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int REQUEST_TOO_LARGE = 413;
+    private static final int HEX_RADIX = 16;
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Thrown when a request body is over {@link HttpRequestBody#MAX_BODY_SIZE}.
+     */
+    static final class TooLargeException extends Exception {
+        private static final long serialVersionUID = 4409813297432012471L;
+    }
+
+    /**
+     * The buffers of a thread : the body and the decoded key or value.
+     */
+    private static final class Buffers {
+        private byte[] body = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] token = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+    }
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * Ensure that this class will not be instantiate.
+     */
+    private HttpRequestBody() {
+    }
+
+    /**
+     * Reads the body of a request as an UTF-8 string.
+     *
+     * @param httpExchange
+     *            the request
+     * @return the body
+     * @throws IOException
+     *             if the body can not be read
+     * @throws TooLargeException
+     *             if the body is too large
+     */
+    static String readString(final HttpExchange httpExchange)
+            throws IOException, TooLargeException {
+        Buffers buffers = read(httpExchange);
+        return new String(buffers.body, 0, buffers.length, CHARSET);
+    }
+
+    /**
+     * Reads the body of a request that may be larger than
+     * {@link #MAX_BODY_SIZE}, such as imported cues, in an array of its own.
+     *
+     * @param httpExchange
+     *            the request
+     * @param maxSize
+     *            the max size of the body in bytes
+     * @return the body
+     * @throws IOException
+     *             if the body can not be read
+     * @throws TooLargeException
+     *             if the body is over maxSize
+     */
+    static byte[] readBytes(final HttpExchange httpExchange, final int maxSize)
+            throws IOException, TooLargeException {
+        checkContentLength(httpExchange, maxSize);
+        InputStream is = httpExchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(
+                INITIAL_BUFFER_SIZE);
+        try {
+            byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                if (body.size() + bytesRead > maxSize) {
+                    throw new TooLargeException();
+                }
+                body.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            is.close();
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Reads the body of a request as an URL-encoded form of the form
+     * {@code key1=value1&key2=value2}.
+     *
+     * @param httpExchange
+     *            the request
+     * @return a map of the parameters
+     * @throws IOException
+     *             if the body can not be read
+     * @throws TooLargeException
+     *             if the body is too large
+     * @throws BadSyntaxException
+     *             if a parameter is not a key/value pair
+     */
+    static HashMap<String, String> readForm(final HttpExchange httpExchange)
+            throws IOException, TooLargeException, BadSyntaxException {
+        Buffers buffers = read(httpExchange);
+        HashMap<String, String> paramsMap = new HashMap<String, String>();
+        byte[] body = buffers.body;
+        int start = 0;
+        while (start < buffers.length) {
+            int end = start;
+            int equals = -1;
+            while (end < buffers.length && body[end] != '&') {
+                if (body[end] == '=' && equals < 0) {
+                    equals = end;
+                }
+                end++;
+            }
+            // like the query strings, a parameter must have a value
+            if (equals <= start || equals == end - 1) {
+                throw new BadSyntaxException();
+            }
+            paramsMap.put(decode(buffers, start, equals), decode(buffers,
+                    equals + 1, end));
+            start = end + 1;
+        }
+        return paramsMap;
+    }
+
+    /**
+     * Answers a request whose body is too large.
+     *
+     * @param httpExchange
+     *            the request
+     * @throws IOException
+     *             if the response can not be sent
+     */
+    static void sendTooLarge(final HttpExchange httpExchange)
+            throws IOException {
+        String tooLarge = "413 : Request too large !!!";
+        httpExchange.sendResponseHeaders(REQUEST_TOO_LARGE, tooLarge
+                .length());
+        httpExchange.getResponseBody().write(tooLarge.getBytes());
+        httpExchange.getResponseBody().close();
+    }
+
+    private static void checkContentLength(final HttpExchange httpExchange,
+            final int maxSize) throws TooLargeException {
+        try {
+            String contentLength = httpExchange.getRequestHeaders().getFirst(
+                    "Content-Length");
+            if (contentLength != null
+                    && Long.parseLong(contentLength.trim()) > maxSize) {
+                throw new TooLargeException();
+            }
+        } catch (NumberFormatException e) {
+            // the body is checked while it is read
+        }
+    }
+
+    private static Buffers read(final HttpExchange httpExchange)
+            throws IOException, TooLargeException {
+        checkContentLength(httpExchange, MAX_BODY_SIZE);
+        InputStream is = httpExchange.getRequestBody();
+
+        Buffers buffers = BUFFERS.get();
+        buffers.length = 0;
+        try {
+            while (true) {
+                if (buffers.length == buffers.body.length) {
+                    if (buffers.length >= MAX_BODY_SIZE) {
+                        if (is.read() == -1) {
+                            break;
+                        }
+                        throw new TooLargeException();
+                    }
+                    byte[] larger = new byte[Math.min(MAX_BODY_SIZE,
+                            buffers.body.length * 2)];
+                    System.arraycopy(buffers.body, 0, larger, 0,
+                            buffers.length);
+                    buffers.body = larger;
+                    buffers.token = new byte[larger.length];
+                }
+                int bytesRead = is.read(buffers.body, buffers.length,
+                        buffers.body.length - buffers.length);
+                if (bytesRead == -1) {
+                    break;
+                }
+                buffers.length += bytesRead;
+            }
+        } finally {
+            is.close();
+        }
+        return buffers;
+    }
+
+    private static String decode(final Buffers buffers, final int start,
+            final int end) throws BadSyntaxException, IOException {
+        byte[] body = buffers.body;
+        byte[] token = buffers.token;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = body[i];
+            if (b == '+') {
+                token[length++] = ' ';
+            } else if (b == '%') {
+                if (i + 2 >= end) {
+                    throw new BadSyntaxException();
+                }
+                int high = Character.digit(body[i + 1], HEX_RADIX);
+                int low = Character.digit(body[i + 2], HEX_RADIX);
+                if (high < 0 || low < 0) {
+                    throw new BadSyntaxException();
+                }
+                token[length++] = (byte) ((high << 4) + low);
+                i += 2;
+            } else {
+                token[length++] = b;
+            }
+        }
+        return new String(token, 0, length, CHARSET);
+    }
+}
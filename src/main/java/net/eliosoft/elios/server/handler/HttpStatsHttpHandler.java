@@ -0,0 +1,68 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.IOException;
+
+import net.eliosoft.elios.server.HttpServerManager;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * This handler gives the load of the http server. GET returns a JSON object
+ * with {@code active} (the requests being handled), {@code queued} (the
+ * requests waiting for a thread) and {@code rejected} (the requests answered
+ * with a 503 status since Elios started).
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class HttpStatsHttpHandler implements HttpHandler {
+
+    @Override
+    public void handle(final HttpExchange httpExchange) throws IOException {
+        if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            HttpServerManager httpServerManager = HttpServerManager
+                    .getInstance();
+            JsonObject json = new JsonObject();
+            json.addProperty("active", httpServerManager
+                    .getActiveRequestsCount());
+            json.addProperty("queued", httpServerManager
+                    .getQueuedRequestsCount());
+            json.addProperty("rejected", httpServerManager
+                    .getRejectedRequestsCount());
+
+            byte[] responseOk = json.toString().getBytes("UTF-8");
+            httpExchange.getResponseHeaders().set("Content-Type",
+                    "application/json");
+            httpExchange.sendResponseHeaders(200, responseOk.length);
+            httpExchange.getResponseBody().write(responseOk);
+            httpExchange.getResponseBody().close();
+        } else {
+            String badMethod = "405 : Method not allowed !!!";
+            httpExchange.sendResponseHeaders(405, badMethod.length());
+            httpExchange.getResponseBody().write(badMethod.getBytes());
+            httpExchange.getResponseBody().close();
+        }
+    }
+
+}
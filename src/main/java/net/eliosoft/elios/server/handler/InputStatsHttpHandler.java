@@ -0,0 +1,116 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+import net.eliosoft.elios.server.ArtNetInputMonitor;
+import net.eliosoft.elios.server.ArtNetInputMonitor.SourceStats;
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.BadSyntaxException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * This handler gives the statistics of the ArtDmx packets received by the
+ * server. GET returns a JSON array with an object per source and universe :
+ * {@code source} (the address of the sender, null if unknown),
+ * {@code subnet}, {@code universe}, {@code packets}, {@code lost},
+ * {@code outOfOrder}, {@code rate} (in Hz), {@code jitter} (in milliseconds)
+ * and {@code lastSeen} (in milliseconds since the epoch). POST with
+ * {@code action=reset} forgets the statistics.
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class InputStatsHttpHandler implements HttpHandler {
+
+    private final ArtNetInputMonitor inputMonitor = ArtNetServerManager
+            .getInstance().getInputMonitor();
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(InputStatsHttpHandler.class.getName());
+
+    @Override
+    public void handle(final HttpExchange httpExchange) throws IOException {
+        if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            JsonArray json = new JsonArray();
+            for (SourceStats stats : inputMonitor.getSourcesStats()) {
+                JsonObject source = new JsonObject();
+                source.addProperty("source", stats.getSource() == null ? null
+                        : stats.getSource().getHostAddress());
+                source.addProperty("subnet", stats.getSubnet());
+                source.addProperty("universe", stats.getUniverse());
+                source.addProperty("packets", stats.getPacketsCount());
+                source.addProperty("lost", stats.getLostPacketsCount());
+                source.addProperty("outOfOrder", stats
+                        .getOutOfOrderPacketsCount());
+                source.addProperty("rate", stats.getPacketRate());
+                source.addProperty("jitter", stats.getJitter());
+                source.addProperty("lastSeen", stats.getLastSeen());
+                json.add(source);
+            }
+
+            byte[] responseOk = json.toString().getBytes("UTF-8");
+            httpExchange.getResponseHeaders().set("Content-Type",
+                    "application/json");
+            httpExchange.sendResponseHeaders(200, responseOk.length);
+            httpExchange.getResponseBody().write(responseOk);
+            httpExchange.getResponseBody().close();
+        } else if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            try {
+                HashMap<String, String> paramsMap = HttpRequestBody
+                        .readForm(httpExchange);
+                if (!"reset".equals(paramsMap.get("action"))) {
+                    logger.severe("actionParam=" + paramsMap.get("action"));
+                    throw new BadSyntaxException();
+                }
+            } catch (BadSyntaxException e) {
+                logger.severe("Bad syntax in params");
+                String badRequest = "400 : Bad request !!!";
+                httpExchange.sendResponseHeaders(400, badRequest.length());
+                httpExchange.getResponseBody().write(badRequest.getBytes());
+                httpExchange.getResponseBody().close();
+                return;
+            } catch (HttpRequestBody.TooLargeException e) {
+                HttpRequestBody.sendTooLarge(httpExchange);
+                return;
+            }
+            inputMonitor.reset();
+
+            String responseOk = "200 : OK !";
+            httpExchange.sendResponseHeaders(200, responseOk.length());
+            httpExchange.getResponseBody().write(responseOk.getBytes());
+            httpExchange.getResponseBody().close();
+        } else {
+            String badMethod = "405 : Method not allowed !!!";
+            httpExchange.sendResponseHeaders(405, badMethod.length());
+            httpExchange.getResponseBody().write(badMethod.getBytes());
+            httpExchange.getResponseBody().close();
+        }
+    }
+
+}
@@ -1,7 +1,6 @@
 package net.eliosoft.elios.server.handler;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.logging.Logger;
 
@@ -21,7 +20,6 @@ import com.sun.net.httpserver.HttpHandler;
  */
 public class ParamsHttpHandler implements HttpHandler {
 
-    private static final int MAX_BUFFER_SIZE = 1024 * 512;
     private final ArtNetServerManager artNetServerManager = ArtNetServerManager
             .getInstance();
 
@@ -31,39 +29,19 @@ public class ParamsHttpHandler implements HttpHandler {
     @Override
     public void handle(final HttpExchange httpExchange) throws IOException {
         if (httpExchange.getRequestMethod().equalsIgnoreCase("POST")) {
-            InputStream is = httpExchange.getRequestBody();
-
-            byte[] buffer = new byte[ParamsHttpHandler.MAX_BUFFER_SIZE];
-            int bytesRead = 0;
-
-            StringBuilder paramsLine = new StringBuilder();
-
-            while ((bytesRead = is.read(buffer)) != -1) {
-                paramsLine.append(new String(buffer, 0, bytesRead));
-            }
-            is.close();
             try {
-                String[] paramsList = paramsLine.toString().split("&");
-
-                HashMap<String, String> paramsMap = new HashMap<String, String>();
-                for (String param : paramsList) {
-                    String[] keyValue = param.split("=");
-                    if (keyValue.length == 2) {
-                        paramsMap.put(keyValue[0], keyValue[1]);
-                    } else {
-                        throw new BadSyntaxException();
-                    }
-                }
-
-                String subnetParam = paramsMap.get("subnet");
-                if (subnetParam != null) {
-                    int subnet = Integer.parseInt(subnetParam);
+                HashMap<String, String> paramsMap = HttpRequestBody
+                        .readForm(httpExchange);
+
+                int subnet = HttpParams.getInt(paramsMap, "subnet",
+                        artNetServerManager.getSubnet());
+                int universe = HttpParams.getInt(paramsMap, "universe",
+                        artNetServerManager.getUniverse());
+                ArtNetServerManager.checkUniverse(subnet, universe);
+                if (paramsMap.containsKey("subnet")) {
                     artNetServerManager.setSubnet(subnet);
                 }
-
-                String universeParam = paramsMap.get("universe");
-                if (universeParam != null) {
-                    int universe = Integer.parseInt(universeParam);
+                if (paramsMap.containsKey("universe")) {
                     artNetServerManager.setUniverse(universe);
                 }
 
@@ -80,6 +58,10 @@ public class ParamsHttpHandler implements HttpHandler {
                 httpExchange.sendResponseHeaders(400, badRequest.length());
                 httpExchange.getResponseBody().write(badRequest.getBytes());
                 httpExchange.getResponseBody().close();
+                return;
+            } catch (HttpRequestBody.TooLargeException e) {
+                HttpRequestBody.sendTooLarge(httpExchange);
+                return;
             }
 
             String responseOk = "200 : OK !";
@@ -0,0 +1,191 @@
+/*
+ * This file is part of Elios.
+ *
+ * Copyright 2010 Jeremie GASTON-RAOUL & Alexandre COLLIGNON
+ *
+ * Elios is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Elios is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Elios. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.eliosoft.elios.server.handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+import net.eliosoft.elios.main.LoggersManager;
+import net.eliosoft.elios.server.ArtNetServerManager;
+import net.eliosoft.elios.server.BadSyntaxException;
+import net.eliosoft.elios.server.CueList;
+import net.eliosoft.elios.server.CueListEntry;
+import net.eliosoft.elios.server.CueListsManager;
+import net.eliosoft.elios.server.CuePlayback;
+import net.eliosoft.elios.server.CuesManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * This handler manages the cue lists and their playback.
+ *
+ * GET actions : {@code status} returns the loaded list, the position of the
+ * last started cue (-1 before the first cue) and the number of cues ;
+ * {@code cueLists} returns the names of the cue lists.
+ *
+ * POST actions : {@code go}, {@code back}, {@code goto} (with a
+ * {@code position}), {@code load} (with a {@code cueList} and optional
+ * {@code subnet} and {@code universe}), {@code store} (with a {@code cueList}
+ * and its {@code entries} : a comma separated list of
+ * {@code cueName[:waitTime[:followTime]]}, times in milliseconds) and
+ * {@code delete} (with a {@code cueList}).
+ *
+ * @author Jeremie GASTON-RAOUL
+ */
+public class PlaybackHttpHandler implements HttpHandler {
+
+    private final CuesManager cuesManager = CuesManager.getInstance();
+    private final CueListsManager cueListsManager = CueListsManager
+            .getInstance();
+    private final ArtNetServerManager artNetServerManager = ArtNetServerManager
+            .getInstance();
+
+    private final transient Logger logger = LoggersManager.getInstance()
+            .getLogger(PlaybackHttpHandler.class.getName());
+
+    @Override
+    public void handle(final HttpExchange httpExchange) throws IOException {
+        String response;
+        try {
+            if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                response = handleGet(HttpParams.parse(httpExchange
+                        .getRequestURI().getQuery()));
+            } else if (httpExchange.getRequestMethod().equalsIgnoreCase(
+                    "POST")) {
+                response = handlePost(HttpRequestBody.readForm(httpExchange));
+            } else {
+                String badMethod = "405 : Method not allowed !!!";
+                httpExchange.sendResponseHeaders(405, badMethod.length());
+                httpExchange.getResponseBody().write(badMethod.getBytes());
+                httpExchange.getResponseBody().close();
+                return;
+            }
+        } catch (BadSyntaxException e) {
+            logger.severe("Bad syntax in params");
+            String badRequest = "400 : Bad request !!!";
+            httpExchange.sendResponseHeaders(400, badRequest.length());
+            httpExchange.getResponseBody().write(badRequest.getBytes());
+            httpExchange.getResponseBody().close();
+            return;
+        } catch (HttpRequestBody.TooLargeException e) {
+            HttpRequestBody.sendTooLarge(httpExchange);
+            return;
+        }
+
+        byte[] responseBytes = response.getBytes();
+        httpExchange.sendResponseHeaders(200, responseBytes.length);
+        httpExchange.getResponseBody().write(responseBytes);
+        httpExchange.getResponseBody().close();
+    }
+
+    private String handleGet(final HashMap<String, String> paramsMap)
+            throws BadSyntaxException {
+        String actionParam = paramsMap.get("action");
+        if ("status".equals(actionParam)) {
+            CuePlayback playback = artNetServerManager.getCuePlayback();
+            String name = playback.getCueListName();
+            return (name == null ? "" : name) + "," + playback.getPosition()
+                    + "," + playback.getSize();
+        } else if ("cueLists".equals(actionParam)) {
+            StringBuilder sb = new StringBuilder();
+            for (CueList cueList : cueListsManager.getCueLists()) {
+                sb.append(cueList.getName()).append(",");
+            }
+            if (sb.length() > 0) {
+                sb.deleteCharAt(sb.length() - 1);
+            }
+            return sb.toString();
+        }
+        logger.severe("actionParam=" + actionParam);
+        throw new BadSyntaxException();
+    }
+
+    private String handlePost(final HashMap<String, String> paramsMap)
+            throws BadSyntaxException {
+        String actionParam = paramsMap.get("action");
+        CuePlayback playback = artNetServerManager.getCuePlayback();
+        if ("go".equals(actionParam)) {
+            playback.go();
+        } else if ("back".equals(actionParam)) {
+            playback.back();
+        } else if ("goto".equals(actionParam)) {
+            int position = HttpParams.getInt(paramsMap, "position", -1);
+            if (position < 0) {
+                throw new BadSyntaxException();
+            }
+            playback.goTo(position);
+        } else if ("load".equals(actionParam)) {
+            CueList cueList = cueListsManager.getCueList(getCueListName(paramsMap));
+            if (cueList == null) {
+                throw new BadSyntaxException();
+            }
+            playback.load(cueList, cuesManager, HttpParams.getInt(paramsMap,
+                    "subnet", artNetServerManager.getSubnet()), HttpParams
+                    .getInt(paramsMap, "universe", artNetServerManager
+                            .getUniverse()));
+        } else if ("store".equals(actionParam)) {
+            cueListsManager.putCueList(new CueList(getCueListName(paramsMap),
+                    parseEntries(paramsMap.get("entries"))));
+        } else if ("delete".equals(actionParam)) {
+            cueListsManager.removeCueList(getCueListName(paramsMap));
+        } else {
+            logger.severe("actionParam=" + actionParam);
+            throw new BadSyntaxException();
+        }
+        return "200 : OK !";
+    }
+
+    private static String getCueListName(final HashMap<String, String> paramsMap)
+            throws BadSyntaxException {
+        String name = paramsMap.get("cueList");
+        if (name == null) {
+            throw new BadSyntaxException();
+        }
+        return name;
+    }
+
+    private List<CueListEntry> parseEntries(final String entriesParam)
+            throws BadSyntaxException {
+        if (entriesParam == null) {
+            throw new BadSyntaxException();
+        }
+        List<CueListEntry> entries = new ArrayList<CueListEntry>();
+        for (String entry : entriesParam.split(",")) {
+            String[] fields = entry.split(":");
+            if (fields.length > 3 || !cuesManager.containsCue(fields[0])) {
+                throw new BadSyntaxException();
+            }
+            try {
+                int waitTime = fields.length > 1 ? Integer.parseInt(fields[1])
+                        : 0;
+                int followTime = fields.length > 2 ? Integer
+                        .parseInt(fields[2]) : CueListEntry.NO_FOLLOW;
+                entries.add(new CueListEntry(fields[0], waitTime, followTime));
+            } catch (NumberFormatException e) {
+                throw new BadSyntaxException();
+            }
+        }
+        return entries;
+    }
+}
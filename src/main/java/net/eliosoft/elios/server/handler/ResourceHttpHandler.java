@@ -1,52 +1,105 @@
 package net.eliosoft.elios.server.handler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 /**
+ * This handler serves the static files of the web remote. Each file is read
+ * once from the classpath and kept in memory with its gzip compressed version
+ * and its ETag, so a reload of the remote is answered with a 304 status when
+ * the file has not changed.
+ *
  * @author jeremie
  *
  */
 public class ResourceHttpHandler implements HttpHandler {
 
-    private static final int MAX_BUFFER_SIZE = 1024 * 512;
+    private static final String RESOURCES_FOLDER = "/net/eliosoft/elios/server/handler/files";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int NOT_MODIFIED = 304;
+
+    // the pages are revalidated on each load, the other files kept a day
+    private static final String PAGE_CACHE_CONTROL = "no-cache";
+    private static final String FILE_CACHE_CONTROL = "max-age=86400";
+
+    /**
+     * A file loaded in memory.
+     */
+    private static final class Resource {
+        private final byte[] content;
+        private final byte[] gzippedContent;
+        private final String etag;
+        private final String contentType;
+        private final String cacheControl;
+
+        private Resource(final byte[] content, final byte[] gzippedContent,
+                final String etag, final String contentType,
+                final String cacheControl) {
+            this.content = content;
+            this.gzippedContent = gzippedContent;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+        }
+    }
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<String, Resource>();
 
     @Override
     public void handle(final HttpExchange httpExchange) throws IOException {
-        URI u = httpExchange.getRequestURI();
-        String path = u.getPath();
+        String path = httpExchange.getRequestURI().getPath();
 
         if (httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
             if (path.equals("/")) {
                 path = "/index.htm";
             }
 
-            // TODO : move resources to a dedicated folder
-            InputStream resourceInputStream = this.getClass()
-                    .getResourceAsStream(
-                            "/net/eliosoft/elios/server/handler/files" + path);
+            Resource resource = getResource(path);
+            if (resource != null) {
+                boolean gzip = resource.gzippedContent != null
+                        && acceptsGzip(httpExchange);
+                String etag = gzip ? "\"" + resource.etag + "-gz\"" : "\""
+                        + resource.etag + "\"";
 
-            if (resourceInputStream != null) {
-                // TODO : find another solution to know the file size...
-                httpExchange.sendResponseHeaders(200,
-                        resourceInputStream.available());
-                OutputStream os = httpExchange.getResponseBody();
+                httpExchange.getResponseHeaders().set("ETag", etag);
+                httpExchange.getResponseHeaders().set("Cache-Control",
+                        resource.cacheControl);
+                if (resource.gzippedContent != null) {
+                    httpExchange.getResponseHeaders().set("Vary",
+                            "Accept-Encoding");
+                }
 
-                byte[] buffer = new byte[Math.min(
-                        ResourceHttpHandler.MAX_BUFFER_SIZE,
-                        resourceInputStream.available())];
-                int bytesRead = 0;
+                String ifNoneMatch = httpExchange.getRequestHeaders()
+                        .getFirst("If-None-Match");
+                if (ifNoneMatch != null
+                        && (ifNoneMatch.contains(etag) || ifNoneMatch
+                                .trim().equals("*"))) {
+                    httpExchange.sendResponseHeaders(NOT_MODIFIED, -1);
+                    httpExchange.close();
+                    return;
+                }
 
-                while ((bytesRead = resourceInputStream.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
+                byte[] content = gzip ? resource.gzippedContent
+                        : resource.content;
+                httpExchange.getResponseHeaders().set("Content-Type",
+                        resource.contentType);
+                if (gzip) {
+                    httpExchange.getResponseHeaders().set("Content-Encoding",
+                            "gzip");
                 }
-                resourceInputStream.close();
-                os.close();
+                httpExchange.sendResponseHeaders(200, content.length);
+                httpExchange.getResponseBody().write(content);
+                httpExchange.getResponseBody().close();
             } else {
                 String pageNotFound = "404 : Page not found !!!";
                 httpExchange.sendResponseHeaders(404, pageNotFound.length());
@@ -60,4 +113,85 @@ public class ResourceHttpHandler implements HttpHandler {
             httpExchange.getResponseBody().close();
         }
     }
+
+    /**
+     * Returns the file of the given path, loading it on first access.
+     */
+    private Resource getResource(final String path) throws IOException {
+        Resource resource = resources.get(path);
+        if (resource != null || path.contains("..")) {
+            return resource;
+        }
+
+        // TODO : move resources to a dedicated folder
+        InputStream resourceInputStream = this.getClass().getResourceAsStream(
+                RESOURCES_FOLDER + path);
+        if (resourceInputStream == null) {
+            return null;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead = 0;
+            while ((bytesRead = resourceInputStream.read(buffer)) != -1) {
+                content.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            resourceInputStream.close();
+        }
+
+        String contentType = getContentType(path);
+        byte[] bytes = content.toByteArray();
+        byte[] gzippedBytes = null;
+        if (contentType.startsWith("text/")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            GZIPOutputStream gzipStream = new GZIPOutputStream(gzipped);
+            gzipStream.write(bytes);
+            gzipStream.close();
+            if (gzipped.size() < bytes.length) {
+                gzippedBytes = gzipped.toByteArray();
+            }
+        }
+        resource = new Resource(bytes, gzippedBytes, digest(bytes),
+                contentType, contentType.startsWith("text/html")
+                        ? PAGE_CACHE_CONTROL : FILE_CACHE_CONTROL);
+        resources.put(path, resource);
+        return resource;
+    }
+
+    private static boolean acceptsGzip(final HttpExchange httpExchange) {
+        String acceptEncoding = httpExchange.getRequestHeaders().getFirst(
+                "Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private static String getContentType(final String path) {
+        if (path.endsWith(".htm") || path.endsWith(".html")) {
+            return "text/html";
+        } else if (path.endsWith(".css")) {
+            return "text/css";
+        } else if (path.endsWith(".js")) {
+            return "text/javascript";
+        } else if (path.endsWith(".ico")) {
+            return "image/x-icon";
+        } else if (path.endsWith(".png")) {
+            return "image/png";
+        }
+        return "application/octet-stream";
+    }
+
+    private static String digest(final byte[] bytes) {
+        try {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md5) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+                        Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -21,6 +21,7 @@ package net.eliosoft.elios.server.listeners;
 
 import net.eliosoft.elios.server.events.CueAddedEvent;
 import net.eliosoft.elios.server.events.CueRemovedEvent;
+import net.eliosoft.elios.server.events.CuesReloadedEvent;
 
 /**
  * This interface describes the methods that must be implemented by classes
@@ -44,4 +45,12 @@ public interface CuesManagerListener {
      *            the event corresponding to the remove of a cue
      */
     void cueRemoved(CueRemovedEvent event);
+
+    /**
+     * This method is called when all the cues of the list have been replaced.
+     *
+     * @param event
+     *            the event corresponding to the new cues
+     */
+    void cuesReloaded(CuesReloadedEvent event);
 }